@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.benchmark;
+
+import java.awt.image.Raster;
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.dcm4che3.data.UID;
+import org.dcm4che3.imageio.codec.ImageReaderFactory;
+import org.dcm4che3.util.UIDUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.weasis.dicom.codec.DicomMediaIO;
+
+/**
+ * Decoding of a frame with the raw reader (uncompressed) and with the native codec (JPEG Baseline). The persistent
+ * cache of decoded frames is disabled. The time includes the parsing of the header, see {@link DicomHeaderBenchmark}.
+ * <p>
+ * The JPEG decoder requires the native library of the ImageIO codec in java.library.path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DicomDecodeBenchmark {
+
+    @Param({ "512", "2048" })
+    public int size;
+
+    private File uncompressed;
+    private File jpegBaseline;
+
+    @Setup
+    public void setup() throws Exception {
+        File dir = SyntheticDicom.createTempDirectory();
+        String seriesUID = UIDUtils.createUID();
+        uncompressed = SyntheticDicom.writeUncompressed(dir, seriesUID, 0, size);
+        jpegBaseline = SyntheticDicom.writeJpegBaseline(dir, seriesUID, 1, size);
+    }
+
+    @Benchmark
+    public Raster decodeUncompressed() throws Exception {
+        return decode(uncompressed);
+    }
+
+    @Benchmark
+    public Raster decodeJpegBaseline() throws Exception {
+        if (ImageReaderFactory.getImageReader(UID.JPEGBaseline1) == null) {
+            throw new IllegalStateException("No JPEG decoder, check the native library of the ImageIO codec"); //$NON-NLS-1$
+        }
+        return decode(jpegBaseline);
+    }
+
+    private static Raster decode(File file) throws Exception {
+        DicomMediaIO reader = new DicomMediaIO(file);
+        try {
+            // Force the computation of the pixels of the deferred image
+            return reader.readAsRenderedImage(0, null).getData();
+        } finally {
+            reader.dispose();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.benchmark;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.dcm4che3.util.UIDUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.weasis.dicom.codec.DicomMediaIO;
+
+/**
+ * Parsing of the DICOM header and building of the Weasis tags, as done by the DICOM explorer when loading a file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DicomHeaderBenchmark {
+
+    @Param({ "512" })
+    public int size;
+
+    private File file;
+
+    @Setup
+    public void setup() throws Exception {
+        file = SyntheticDicom.writeUncompressed(SyntheticDicom.createTempDirectory(), UIDUtils.createUID(), 0, size);
+    }
+
+    @Benchmark
+    public void parseHeader(Blackhole bh) {
+        DicomMediaIO reader = new DicomMediaIO(file);
+        bh.consume(reader.isReadableDicom());
+        bh.consume(reader.getMediaElement());
+        reader.dispose();
+    }
+}
@@ -0,0 +1,102 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.benchmark;
+
+import java.awt.image.Raster;
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.dcm4che3.util.UIDUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.weasis.core.api.gui.util.ActionW;
+import org.weasis.core.api.image.FilterOp;
+import org.weasis.core.api.image.FlipOp;
+import org.weasis.core.api.image.ImageOpEvent;
+import org.weasis.core.api.image.ImageOpEvent.OpEvent;
+import org.weasis.core.api.image.PseudoColorOp;
+import org.weasis.core.api.image.RotationOp;
+import org.weasis.core.api.image.SimpleOpManager;
+import org.weasis.core.api.image.WindowOp;
+import org.weasis.core.api.image.ZoomOp;
+import org.weasis.core.api.image.util.JAIUtil;
+import org.weasis.dicom.codec.DicomImageElement;
+import org.weasis.dicom.codec.display.OverlayOp;
+import org.weasis.dicom.codec.display.ShutterOp;
+import org.weasis.dicom.codec.display.WindowAndPresetsOp;
+
+/**
+ * Display chain of the DICOM 2D viewer (same operations and same order as in View2d), recomputed when the
+ * window/level changes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DisplayChainBenchmark {
+
+    @Param({ "512", "2048" })
+    public int size;
+
+    @Param({ "1.0", "0.5" })
+    public double zoom;
+
+    private SimpleOpManager manager;
+    private double window = 400.0;
+
+    @Setup
+    public void setup() throws Exception {
+        File file = SyntheticDicom.writeUncompressed(SyntheticDicom.createTempDirectory(), UIDUtils.createUID(), 0, size);
+        DicomImageElement image = SyntheticDicom.readImageElement(file);
+
+        manager = new SimpleOpManager();
+        manager.addImageOperationAction(new WindowAndPresetsOp());
+        manager.addImageOperationAction(new FilterOp());
+        manager.addImageOperationAction(new PseudoColorOp());
+        manager.addImageOperationAction(new ShutterOp());
+        manager.addImageOperationAction(new OverlayOp());
+        manager.addImageOperationAction(new ZoomOp());
+        manager.addImageOperationAction(new RotationOp());
+        manager.addImageOperationAction(new FlipOp());
+
+        manager.setFirstNode(image.getImage());
+        manager.handleImageOpEvent(new ImageOpEvent(OpEvent.ResetDisplay, null, image, null));
+        manager.setParamValue(ShutterOp.OP_NAME, ShutterOp.P_SHOW, true);
+        manager.setParamValue(OverlayOp.OP_NAME, OverlayOp.P_SHOW, true);
+        manager.setParamValue(ZoomOp.OP_NAME, ZoomOp.P_RATIO_X, zoom);
+        manager.setParamValue(ZoomOp.OP_NAME, ZoomOp.P_RATIO_Y, zoom);
+    }
+
+    @Setup(Level.Iteration)
+    public void flushTileCache() {
+        JAIUtil.getJAI().getTileCache().flush();
+    }
+
+    @Benchmark
+    public Raster windowLevel() {
+        // Change the window like when dragging the mouse
+        window = window > 2000.0 ? 400.0 : window + 1.0;
+        manager.setParamValue(WindowOp.OP_NAME, ActionW.WINDOW.cmd(), window);
+        return manager.process().getData();
+    }
+}
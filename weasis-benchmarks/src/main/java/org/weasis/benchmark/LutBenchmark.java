@@ -0,0 +1,73 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.media.jai.LookupTableJAI;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.weasis.core.api.image.LutShape;
+import org.weasis.dicom.codec.display.VoiLutCache;
+import org.weasis.dicom.codec.utils.DicomImageUtils;
+
+/**
+ * Building of the lookup tables applied when the window/level changes (VOI) and when a new image is displayed
+ * (modality).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LutBenchmark {
+
+    @Param({ "LINEAR", "SIGMOID", "LOG" })
+    public String shape;
+
+    @Param({ "12", "16" })
+    public int bitsStored;
+
+    private double window = 400.0;
+    private final VoiLutCache lutCache = new VoiLutCache();
+
+    @Benchmark
+    public LookupTableJAI windowLevelLut() {
+        int max = (1 << bitsStored) - 1;
+        // Change the window like when dragging the mouse
+        window = window > 2000.0 ? 400.0 : window + 1.0;
+        return DicomImageUtils.createWindowLevelLut(LutShape.getLutShape(shape), window, max / 2.0, 0, max,
+            bitsStored, false, false);
+    }
+
+    @Benchmark
+    public LookupTableJAI windowLevelLutInPlace() {
+        int max = (1 << bitsStored) - 1;
+        window = window > 2000.0 ? 400.0 : window + 1.0;
+        return lutCache.getWindowLevelLut(LutShape.getLutShape(shape), window, max / 2.0, 0, max, bitsStored, false,
+            false);
+    }
+
+    @Benchmark
+    public LookupTableJAI rescaleRampLut() {
+        return DicomImageUtils.createRescaleRampLut(-1024.0, 1.0, bitsStored, false, true, bitsStored);
+    }
+}
@@ -0,0 +1,227 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.benchmark;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.Fragments;
+import org.dcm4che3.data.Sequence;
+import org.dcm4che3.data.Tag;
+import org.dcm4che3.data.UID;
+import org.dcm4che3.data.VR;
+import org.dcm4che3.io.DicomOutputStream;
+import org.dcm4che3.util.UIDUtils;
+import org.weasis.core.api.service.BundleTools;
+import org.weasis.dicom.codec.DecodedFrameCache;
+import org.weasis.dicom.codec.DicomImageElement;
+import org.weasis.dicom.codec.DicomMediaIO;
+
+/**
+ * Builds reproducible DICOM files for the benchmarks: CT-like images (a body disk with some structures and noise)
+ * written in Explicit VR Little Endian or in JPEG Baseline.
+ */
+public final class SyntheticDicom {
+
+    static {
+        // Run outside the Weasis directory and always measure the decoding, not the persistent cache of frames
+        System.setProperty("weasis.path", //$NON-NLS-1$
+            System.getProperty("java.io.tmpdir") + File.separator + "weasis-benchmarks"); //$NON-NLS-1$ //$NON-NLS-2$
+        BundleTools.SYSTEM_PREFERENCES.setProperty(DecodedFrameCache.FRAME_CACHE_SIZE, "0"); //$NON-NLS-1$
+        ImageIO.scanForPlugins();
+    }
+
+    private SyntheticDicom() {
+    }
+
+    public static File createTempDirectory() throws IOException {
+        File dir = Files.createTempDirectory("weasis-bench").toFile(); //$NON-NLS-1$
+        dir.deleteOnExit();
+        return dir;
+    }
+
+    /**
+     * Writes a 16-bit CT slice (12 bits stored) in Explicit VR Little Endian.
+     */
+    public static File writeUncompressed(File dir, String seriesUID, int index, int size) throws IOException {
+        Attributes ds = createHeader(seriesUID, index, size, 16, 12);
+        short[] pixels = createPixels(size, index, 4095);
+        byte[] data = new byte[pixels.length * 2];
+        for (int i = 0; i < pixels.length; i++) {
+            data[2 * i] = (byte) pixels[i];
+            data[2 * i + 1] = (byte) (pixels[i] >> 8);
+        }
+        ds.setBytes(Tag.PixelData, VR.OW, data);
+        return write(dir, ds, UID.ExplicitVRLittleEndian);
+    }
+
+    /**
+     * Writes an 8-bit slice encoded in JPEG Baseline (decoded by the native codec in Weasis).
+     */
+    public static File writeJpegBaseline(File dir, String seriesUID, int index, int size) throws IOException {
+        Attributes ds = createHeader(seriesUID, index, size, 8, 8);
+        ds.remove(Tag.RescaleIntercept);
+        ds.remove(Tag.RescaleSlope);
+        short[] pixels = createPixels(size, index, 255);
+        BufferedImage img = new BufferedImage(size, size, BufferedImage.TYPE_BYTE_GRAY);
+        byte[] data = ((DataBufferByte) img.getRaster().getDataBuffer()).getData();
+        for (int i = 0; i < pixels.length; i++) {
+            data[i] = (byte) pixels[i];
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg"); //$NON-NLS-1$
+        ImageWriter writer = writers.next();
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(ios);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(0.9f);
+            writer.write(null, new IIOImage(img, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        byte[] jpeg = out.toByteArray();
+        if ((jpeg.length & 1) != 0) {
+            jpeg = Arrays.copyOf(jpeg, jpeg.length + 1);
+        }
+
+        Fragments frags = ds.newFragments(Tag.PixelData, VR.OB, 2);
+        frags.add(new byte[0]); // Empty basic offset table
+        frags.add(jpeg);
+        return write(dir, ds, UID.JPEGBaseline1);
+    }
+
+    public static List<File> writeUncompressedSeries(File dir, int nbSlices, int size) throws IOException {
+        String seriesUID = UIDUtils.createUID();
+        List<File> files = new ArrayList<>(nbSlices);
+        for (int i = 0; i < nbSlices; i++) {
+            files.add(writeUncompressed(dir, seriesUID, i, size));
+        }
+        return files;
+    }
+
+    /**
+     * Reads the header and returns the image of the first frame, as built by the DICOM explorer.
+     */
+    public static DicomImageElement readImageElement(File file) {
+        DicomMediaIO reader = new DicomMediaIO(file);
+        if (!reader.isReadableDicom()) {
+            throw new IllegalStateException("Cannot read " + file); //$NON-NLS-1$
+        }
+        return (DicomImageElement) reader.getMediaElement()[0];
+    }
+
+    private static Attributes createHeader(String seriesUID, int index, int size, int bitsAllocated,
+        int bitsStored) {
+        Attributes ds = new Attributes();
+        ds.setString(Tag.SOPClassUID, VR.UI, UID.CTImageStorage);
+        ds.setString(Tag.SOPInstanceUID, VR.UI, UIDUtils.createUID());
+        ds.setString(Tag.StudyInstanceUID, VR.UI, "1.2.826.0.1.3680043.2.1143.1"); //$NON-NLS-1$
+        ds.setString(Tag.SeriesInstanceUID, VR.UI, seriesUID);
+        ds.setString(Tag.FrameOfReferenceUID, VR.UI, "1.2.826.0.1.3680043.2.1143.2"); //$NON-NLS-1$
+        ds.setString(Tag.PatientID, VR.LO, "BENCH-001"); //$NON-NLS-1$
+        ds.setString(Tag.PatientName, VR.PN, "Benchmark^Synthetic"); //$NON-NLS-1$
+        ds.setString(Tag.PatientBirthDate, VR.DA, "19700101"); //$NON-NLS-1$
+        ds.setString(Tag.PatientSex, VR.CS, "O"); //$NON-NLS-1$
+        ds.setString(Tag.StudyDate, VR.DA, "20170101"); //$NON-NLS-1$
+        ds.setString(Tag.StudyTime, VR.TM, "120000"); //$NON-NLS-1$
+        ds.setString(Tag.StudyDescription, VR.LO, "Synthetic study"); //$NON-NLS-1$
+        ds.setString(Tag.AccessionNumber, VR.SH, "0001"); //$NON-NLS-1$
+        ds.setString(Tag.Modality, VR.CS, "CT"); //$NON-NLS-1$
+        ds.setString(Tag.Manufacturer, VR.LO, "Weasis"); //$NON-NLS-1$
+        ds.setString(Tag.SeriesDescription, VR.LO, "Synthetic series"); //$NON-NLS-1$
+        ds.setInt(Tag.SeriesNumber, VR.IS, 1);
+        ds.setInt(Tag.InstanceNumber, VR.IS, index + 1);
+        ds.setDouble(Tag.SliceThickness, VR.DS, 1.0);
+        ds.setDouble(Tag.SliceLocation, VR.DS, index);
+        ds.setDouble(Tag.ImagePositionPatient, VR.DS, -size / 2.0, -size / 2.0, index);
+        ds.setDouble(Tag.ImageOrientationPatient, VR.DS, 1.0, 0.0, 0.0, 0.0, 1.0, 0.0);
+        ds.setDouble(Tag.PixelSpacing, VR.DS, 0.7, 0.7);
+        ds.setDouble(Tag.WindowCenter, VR.DS, 40.0);
+        ds.setDouble(Tag.WindowWidth, VR.DS, 400.0);
+        ds.setString(Tag.RescaleIntercept, VR.DS, "-1024"); //$NON-NLS-1$
+        ds.setString(Tag.RescaleSlope, VR.DS, "1"); //$NON-NLS-1$
+        ds.setString(Tag.RescaleType, VR.LO, "HU"); //$NON-NLS-1$
+
+        // Some nested items like in the headers of the modalities
+        Sequence refs = ds.newSequence(Tag.ReferencedImageSequence, 8);
+        for (int i = 0; i < 8; i++) {
+            Attributes item = new Attributes(2);
+            item.setString(Tag.ReferencedSOPClassUID, VR.UI, UID.CTImageStorage);
+            item.setString(Tag.ReferencedSOPInstanceUID, VR.UI, UIDUtils.createUID());
+            refs.add(item);
+        }
+
+        ds.setInt(Tag.SamplesPerPixel, VR.US, 1);
+        ds.setString(Tag.PhotometricInterpretation, VR.CS, "MONOCHROME2"); //$NON-NLS-1$
+        ds.setInt(Tag.Rows, VR.US, size);
+        ds.setInt(Tag.Columns, VR.US, size);
+        ds.setInt(Tag.BitsAllocated, VR.US, bitsAllocated);
+        ds.setInt(Tag.BitsStored, VR.US, bitsStored);
+        ds.setInt(Tag.HighBit, VR.US, bitsStored - 1);
+        ds.setInt(Tag.PixelRepresentation, VR.US, 0);
+        return ds;
+    }
+
+    private static short[] createPixels(int size, int index, int maxValue) {
+        Random random = new Random(index);
+        short[] pixels = new short[size * size];
+        double center = size / 2.0;
+        double radius = size * 0.45;
+        double organ = size * 0.12;
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                double dx = x - center;
+                double dy = y - center;
+                double dist = Math.sqrt(dx * dx + dy * dy);
+                double value;
+                if (dist > radius) {
+                    value = 0.02; // Air
+                } else if (Math.hypot(dx + size * 0.15, dy) < organ || Math.hypot(dx - size * 0.15, dy) < organ) {
+                    value = 0.2; // Lungs
+                } else if (dist > radius - size * 0.03) {
+                    value = 0.6; // Bone
+                } else {
+                    value = 0.26; // Soft tissue
+                }
+                value += (index % 16) * 0.002 + random.nextGaussian() * 0.01;
+                pixels[y * size + x] = (short) Math.max(0, Math.min(maxValue, Math.round(value * maxValue)));
+            }
+        }
+        return pixels;
+    }
+
+    private static File write(File dir, Attributes ds, String tsuid) throws IOException {
+        File file = new File(dir, ds.getString(Tag.SOPInstanceUID) + ".dcm"); //$NON-NLS-1$
+        file.deleteOnExit();
+        try (DicomOutputStream dos = new DicomOutputStream(file)) {
+            dos.writeDataset(ds.createFileMetaInformation(tsuid), ds);
+        }
+        return file;
+    }
+}
@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.benchmark;
+
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import javax.media.jai.PlanarImage;
+
+import org.dcm4che3.util.UIDUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.weasis.core.api.image.ImageOpNode;
+import org.weasis.core.api.image.ZoomOp;
+import org.weasis.dicom.codec.DicomImageElement;
+
+/**
+ * Scaling of the 8-bit image produced by the window/level, with the interpolations available in the viewer (0:
+ * nearest, 1: bilinear, 2: bicubic, 3: bicubic2).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ZoomBenchmark {
+
+    @Param({ "512" })
+    public int size;
+
+    @Param({ "0.5", "1.7" })
+    public double ratio;
+
+    @Param({ "0", "1", "2" })
+    public int interpolation;
+
+    private ZoomOp zoomOp;
+
+    @Setup
+    public void setup() throws Exception {
+        File file = SyntheticDicom.writeUncompressed(SyntheticDicom.createTempDirectory(), UIDUtils.createUID(), 0, size);
+        DicomImageElement image = SyntheticDicom.readImageElement(file);
+        RenderedImage windowed = image.getRenderedImage(image.getImage());
+
+        zoomOp = new ZoomOp();
+        // Materialize the source to measure only the scaling
+        zoomOp.setParam(ImageOpNode.Param.INPUT_IMG, PlanarImage.wrapRenderedImage(windowed).getAsBufferedImage());
+        zoomOp.setParam(ZoomOp.P_RATIO_X, ratio);
+        zoomOp.setParam(ZoomOp.P_RATIO_Y, ratio);
+        zoomOp.setParam(ZoomOp.P_INTERPOLATION, interpolation);
+    }
+
+    @Benchmark
+    public Raster zoom() throws Exception {
+        zoomOp.process();
+        return ((RenderedImage) zoomOp.getParam(ImageOpNode.Param.OUTPUT_IMG)).getData();
+    }
+}
@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.benchmark;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.media.jai.PlanarImage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.weasis.core.api.image.op.MaxCollectionZprojection;
+import org.weasis.core.api.image.op.MeanCollectionZprojection;
+import org.weasis.core.api.image.op.MinCollectionZprojection;
+import org.weasis.core.api.media.data.ImageElement;
+
+/**
+ * Projections of a stack of slices (MIP, MinIP and mean) with the images already decoded in the cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ZprojectionBenchmark {
+
+    @Param({ "256" })
+    public int size;
+
+    @Param({ "16", "64" })
+    public int nbSlices;
+
+    private final List<ImageElement> sources = new ArrayList<>();
+
+    @Setup
+    public void setup() throws Exception {
+        for (File file : SyntheticDicom.writeUncompressedSeries(SyntheticDicom.createTempDirectory(), nbSlices, size)) {
+            ImageElement image = SyntheticDicom.readImageElement(file);
+            image.getImage();
+            sources.add(image);
+        }
+    }
+
+    @Benchmark
+    public PlanarImage maxProjection() {
+        return new MaxCollectionZprojection(sources, null).computeMaxCollectionOpImage();
+    }
+
+    @Benchmark
+    public PlanarImage minProjection() {
+        return new MinCollectionZprojection(sources, null).computeMinCollectionOpImage();
+    }
+
+    @Benchmark
+    public PlanarImage meanProjection() {
+        return new MeanCollectionZprojection(sources, null).computeMeanCollectionOpImage();
+    }
+}
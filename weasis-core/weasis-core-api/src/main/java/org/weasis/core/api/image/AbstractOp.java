@@ -10,14 +10,19 @@
  *******************************************************************************/
 package org.weasis.core.api.image;
 
+import java.awt.image.RenderedImage;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
 import org.weasis.core.api.gui.util.JMVUtils;
 
 public abstract class AbstractOp implements ImageOpNode {
 
     protected HashMap<String, Object> params;
+    private long paramVersion;
 
     public AbstractOp() {
         params = new HashMap<>();
@@ -31,12 +36,13 @@ public abstract class AbstractOp implements ImageOpNode {
     @Override
     public void clearParams() {
         params.clear();
+        paramVersion++;
     }
 
     @Override
     public void clearIOCache() {
         for (String key : params.keySet()) {
-            if (key.startsWith("op.input") || key.startsWith("op.output")) { //$NON-NLS-1$ //$NON-NLS-2$
+            if (isIOParam(key)) {
                 params.put(key, null);
             }
         }
@@ -53,22 +59,72 @@ public abstract class AbstractOp implements ImageOpNode {
     @Override
     public void setParam(String key, Object value) {
         if (key != null) {
-            params.put(key, value);
+            Object old = params.put(key, value);
+            if (!isIOParam(key) && !isSameValue(old, value)) {
+                paramVersion++;
+            }
         }
     }
 
     @Override
     public void setAllParameters(Map<String, Object> map) {
         if (map != null) {
-            params.putAll(map);
+            for (Map.Entry<String, Object> entry : map.entrySet()) {
+                setParam(entry.getKey(), entry.getValue());
+            }
         }
     }
 
     @Override
     public void removeParam(String key) {
-        if (key != null) {
+        if (key != null && params.containsKey(key)) {
             params.remove(key);
+            if (!isIOParam(key)) {
+                paramVersion++;
+            }
+        }
+    }
+
+    @Override
+    public long getParamVersion() {
+        return paramVersion;
+    }
+
+    private static boolean isIOParam(String key) {
+        return key.startsWith("op.input") || key.startsWith("op.output"); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    /**
+     * The same instance of a mutable object is considered as a new value because it may have been modified.
+     */
+    private static boolean isSameValue(Object old, Object value) {
+        if (old == null || value == null) {
+            return old == value;
+        }
+        if (old == value) {
+            return value instanceof String || value instanceof Number || value instanceof Boolean
+                || value instanceof Character || value instanceof Enum;
         }
+        return old.equals(value);
+    }
+
+    /**
+     * Builds an output key from the class, the input image and all the parameters except the input and output images.
+     *
+     * @param excludedParams
+     *            the parameters which have no effect on the output (e.g. a cache of the view)
+     * @return the key for {@link #getOutputKey()}
+     */
+    protected Object buildOutputKey(String... excludedParams) {
+        List<String> excluded = Arrays.asList(excludedParams);
+        Map<String, Object> values = new HashMap<>(params.size());
+        for (Map.Entry<String, Object> entry : params.entrySet()) {
+            String key = entry.getKey();
+            if (!isIOParam(key) && !excluded.contains(key)) {
+                values.put(key, entry.getValue());
+            }
+        }
+        return new OutputKey(getClass(), (RenderedImage) params.get(Param.INPUT_IMG), values);
     }
 
     @Override
@@ -78,7 +134,7 @@ public abstract class AbstractOp implements ImageOpNode {
 
     @Override
     public void setEnabled(boolean enabled) {
-        params.put(Param.ENABLE, enabled);
+        setParam(Param.ENABLE, enabled);
     }
 
     @Override
@@ -89,7 +145,7 @@ public abstract class AbstractOp implements ImageOpNode {
     @Override
     public void setName(String name) {
         if (name != null) {
-            params.put(Param.NAME, name);
+            setParam(Param.NAME, name);
         }
     }
 
@@ -97,4 +153,36 @@ public abstract class AbstractOp implements ImageOpNode {
     public void handleImageOpEvent(ImageOpEvent event) {
     }
 
+    private static final class OutputKey {
+        private final Class<?> type;
+        private final RenderedImage input;
+        private final Map<String, Object> values;
+        private final int hash;
+
+        OutputKey(Class<?> type, RenderedImage input, Map<String, Object> values) {
+            this.type = type;
+            this.input = input;
+            this.values = values;
+            this.hash = Objects.hash(type, System.identityHashCode(input), values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof OutputKey)) {
+                return false;
+            }
+            OutputKey other = (OutputKey) obj;
+            // The same instance of input image, the images do not implement equals()
+            return type == other.type && input == other.input && values.equals(other.values);
+        }
+    }
+
 }
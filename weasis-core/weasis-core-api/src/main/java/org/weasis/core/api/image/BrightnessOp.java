@@ -62,4 +62,9 @@ public class BrightnessOp extends AbstractOp {
         params.put(Param.OUTPUT_IMG, result);
     }
 
+    @Override
+    public boolean isResolutionIndependent() {
+        // Point operation
+        return true;
+    }
 }
@@ -59,4 +59,14 @@ public class FilterOp extends AbstractOp {
         params.put(Param.OUTPUT_IMG, result);
     }
 
+    @Override
+    public Object getOutputKey() {
+        return buildOutputKey();
+    }
+
+    @Override
+    public boolean isResolutionIndependent() {
+        KernelData kernel = (KernelData) params.get(P_KERNEL_DATA);
+        return kernel == null || kernel.equals(KernelData.NONE);
+    }
 }
@@ -48,6 +48,12 @@ public interface ImageOpNode extends Copyable<ImageOpNode> {
 
     void clearParams();
 
+    /**
+     * @return a number which changes each time a parameter is modified, except the input and the output images. It
+     *         allows to know whether the node must be processed again.
+     */
+    long getParamVersion();
+
     /**
      * Clear all the parameter values starting by "op.input" or "op.output"
      */
@@ -55,4 +61,20 @@ public interface ImageOpNode extends Copyable<ImageOpNode> {
 
     void handleImageOpEvent(ImageOpEvent event);
 
+    /**
+     * @return true when the operation can be applied to a reduction of the input image instead of the original image
+     *         (e.g. a point operation or an operation without effect with the current parameters)
+     */
+    default boolean isResolutionIndependent() {
+        return false;
+    }
+
+    /**
+     * @return the key of the output for the current input image and parameters when the output can be shared with the
+     *         pipelines of other views (see {@link SharedOpOutputs}), or null when the output must not be shared
+     */
+    default Object getOutputKey() {
+        return null;
+    }
+
 }
@@ -94,4 +94,9 @@ public class PseudoColorOp extends AbstractOp {
         return image;
     }
 
+    @Override
+    public boolean isResolutionIndependent() {
+        // Point operation
+        return true;
+    }
 }
@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.core.api.image;
+
+import java.awt.image.RenderedImage;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.weasis.core.api.util.metrics.MetricsRegistry;
+
+/**
+ * Outputs of the operations shared between the pipelines of several views displaying the same image (e.g. comparison
+ * layouts or synchronized views). The outputs are identified by the key of the operation (see
+ * {@link ImageOpNode#getOutputKey()}) and are kept while at least one pipeline uses them.
+ * <p>
+ * When the leading operations of two pipelines have the same parameters, the second pipeline reuses the output images
+ * of the first one, so the tiles in cache are computed once.
+ */
+public final class SharedOpOutputs {
+
+    private static final Map<Object, Entry> OUTPUTS = new HashMap<>();
+
+    private SharedOpOutputs() {
+    }
+
+    /**
+     * @param key
+     *            the key of the output
+     * @return the output image registered with the same key, or null. When not null, the output must be released.
+     */
+    static synchronized RenderedImage acquire(Object key) {
+        Entry entry = OUTPUTS.get(key);
+        if (entry == null) {
+            return null;
+        }
+        entry.references++;
+        MetricsRegistry.counter("pipeline.shared.hit").increment(); //$NON-NLS-1$
+        return entry.output;
+    }
+
+    /**
+     * Registers a new output. If another pipeline has registered an output with the same key in the meantime, its
+     * output is returned instead.
+     *
+     * @return the output image to use, which must be released
+     */
+    static synchronized RenderedImage register(Object key, RenderedImage output) {
+        Entry entry = OUTPUTS.get(key);
+        if (entry == null) {
+            OUTPUTS.put(key, new Entry(output));
+            return output;
+        }
+        entry.references++;
+        return entry.output;
+    }
+
+    static synchronized void release(Object key) {
+        Entry entry = OUTPUTS.get(key);
+        if (entry != null && --entry.references <= 0) {
+            OUTPUTS.remove(key);
+        }
+    }
+
+    /**
+     * @return the number of outputs currently shared
+     */
+    public static synchronized int size() {
+        return OUTPUTS.size();
+    }
+
+    private static final class Entry {
+        private final RenderedImage output;
+        private int references;
+
+        Entry(RenderedImage output) {
+            this.output = output;
+            this.references = 1;
+        }
+    }
+}
@@ -13,7 +13,9 @@ package org.weasis.core.api.image;
 import java.awt.image.RenderedImage;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
 
@@ -21,6 +23,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.weasis.core.api.Messages;
 import org.weasis.core.api.image.ImageOpNode.Param;
+import org.weasis.core.api.util.metrics.MetricsRegistry;
+import org.weasis.core.api.util.metrics.Timer;
 
 public class SimpleOpManager implements OpManager {
     private static final Logger LOGGER = LoggerFactory.getLogger(SimpleOpManager.class);
@@ -33,6 +37,12 @@ public class SimpleOpManager implements OpManager {
 
     private final HashMap<String, ImageOpNode> nodes;
     private final List<ImageOpNode> operations;
+    // State of the nodes at their last execution, used to process only the nodes which have changed
+    private final Map<ImageOpNode, ProcessedState> processedStates = new IdentityHashMap<>();
+    // Keys of the outputs shared with other pipelines
+    private final Map<ImageOpNode, Object> sharedKeys = new IdentityHashMap<>();
+    private boolean sharedOutputs;
+    private int skippedNodes;
     private String name;
 
     public SimpleOpManager() {
@@ -59,6 +69,22 @@ public class SimpleOpManager implements OpManager {
         });
     }
 
+    public boolean isSharedOutputs() {
+        return sharedOutputs;
+    }
+
+    /**
+     * When true, the outputs of the operations providing a key (see {@link ImageOpNode#getOutputKey()}) are shared with
+     * the other pipelines having the same option. The shared outputs must be released with
+     * {@link #clearNodeIOCache()} when the pipeline is not used anymore.
+     */
+    public void setSharedOutputs(boolean sharedOutputs) {
+        if (!sharedOutputs) {
+            releaseSharedOutputs();
+        }
+        this.sharedOutputs = sharedOutputs;
+    }
+
     public synchronized String getName() {
         return name;
     }
@@ -113,6 +139,8 @@ public class SimpleOpManager implements OpManager {
     public void removeImageOperationAction(ImageOpNode action) {
         if (action != null) {
             boolean remove = operations.remove(action);
+            processedStates.remove(action);
+            Optional.ofNullable(sharedKeys.remove(action)).ifPresent(SharedOpOutputs::release);
             if (nodes.remove(action.getName()) == null && remove) {
                 for (Entry<String, ImageOpNode> entry : nodes.entrySet()) {
                     if (entry.getValue() == action) {
@@ -129,6 +157,8 @@ public class SimpleOpManager implements OpManager {
         clearNodeParams();
         operations.clear();
         nodes.clear();
+        processedStates.clear();
+        releaseSharedOutputs();
     }
 
     @Override
@@ -143,6 +173,13 @@ public class SimpleOpManager implements OpManager {
         for (ImageOpNode node : operations) {
             node.clearIOCache();
         }
+        processedStates.clear();
+        releaseSharedOutputs();
+    }
+
+    private void releaseSharedOutputs() {
+        sharedKeys.values().forEach(SharedOpOutputs::release);
+        sharedKeys.clear();
     }
 
     @Override
@@ -209,33 +246,87 @@ public class SimpleOpManager implements OpManager {
         }
     }
 
+    /**
+     * Processes the operations from the first node which has changed (parameters or input image). The output of the
+     * previous nodes is reused, see {@link #getSkippedNodeCount()}.
+     */
     @Override
     public RenderedImage process() {
         RenderedImage source = getFirstNodeInputImage();
+        int skipped = 0;
         if (source != null) {
+            Timer timer = MetricsRegistry.timer("pipeline.process"); //$NON-NLS-1$
+            long start = timer.start();
             for (int i = 0; i < operations.size(); i++) {
                 ImageOpNode op = operations.get(i);
+                Object oldKey = null;
                 try {
                     if (i > 0) {
                         op.setParam(Param.INPUT_IMG, operations.get(i - 1).getParam(Param.OUTPUT_IMG));
                     }
+                    if (isUpToDate(op)) {
+                        skipped++;
+                        continue;
+                    }
+                    oldKey = sharedKeys.remove(op);
                     if (op.isEnabled()) {
-                        op.process();
+                        processNode(op);
                     } else {
                         // Skip this operation
                         op.setParam(Param.OUTPUT_IMG, op.getParam(Param.INPUT_IMG));
                     }
+                    processedStates.put(op,
+                        new ProcessedState(op.getParamVersion(), (RenderedImage) op.getParam(Param.INPUT_IMG)));
                 } catch (Exception e) {
                     LOGGER.error("Image {} failed: {}", op.getParam(Param.NAME), e); //$NON-NLS-1$
                     op.setParam(Param.OUTPUT_IMG, op.getParam(Param.INPUT_IMG));
+                    processedStates.remove(op);
+                } finally {
+                    // Release after acquiring the new output, which can have the same key
+                    if (oldKey != null) {
+                        SharedOpOutputs.release(oldKey);
+                    }
                 }
             }
+            timer.stop(start);
+            MetricsRegistry.counter("pipeline.nodes.skipped").add(skipped); //$NON-NLS-1$
+            MetricsRegistry.counter("pipeline.nodes.processed").add(operations.size() - (long) skipped); //$NON-NLS-1$
+            LOGGER.trace("{}: {}/{} nodes skipped", name, skipped, operations.size()); //$NON-NLS-1$
         } else {
             clearNodeIOCache();
         }
+        skippedNodes = skipped;
         return getLastNodeOutputImage();
     }
 
+    private void processNode(ImageOpNode op) throws Exception {
+        Object key = sharedOutputs ? op.getOutputKey() : null;
+        if (key == null) {
+            op.process();
+            return;
+        }
+        RenderedImage output = SharedOpOutputs.acquire(key);
+        if (output == null) {
+            op.process();
+            output = SharedOpOutputs.register(key, (RenderedImage) op.getParam(Param.OUTPUT_IMG));
+        }
+        op.setParam(Param.OUTPUT_IMG, output);
+        sharedKeys.put(op, key);
+    }
+
+    private boolean isUpToDate(ImageOpNode op) {
+        ProcessedState state = processedStates.get(op);
+        return state != null && state.paramVersion == op.getParamVersion()
+            && state.input == op.getParam(Param.INPUT_IMG) && op.getParam(Param.OUTPUT_IMG) != null;
+    }
+
+    /**
+     * @return the number of nodes which have not been processed again during the last call of {@link #process()}
+     */
+    public int getSkippedNodeCount() {
+        return skippedNodes;
+    }
+
     @Override
     public Object getParamValue(String opName, String param) {
         if (opName != null && param != null) {
@@ -281,4 +372,14 @@ public class SimpleOpManager implements OpManager {
         return new SimpleOpManager(this);
     }
 
+
+    private static class ProcessedState {
+        private final long paramVersion;
+        private final RenderedImage input;
+
+        ProcessedState(long paramVersion, RenderedImage input) {
+            this.paramVersion = paramVersion;
+            this.input = input;
+        }
+    }
 }
@@ -75,4 +75,14 @@ public class WindowOp extends AbstractOp {
         params.put(Param.OUTPUT_IMG, result);
     }
 
+    @Override
+    public Object getOutputKey() {
+        return buildOutputKey();
+    }
+
+    @Override
+    public boolean isResolutionIndependent() {
+        // Point operation
+        return true;
+    }
 }
@@ -49,6 +49,21 @@ public class ZoomOp extends AbstractOp {
      */
     public static final String P_INTERPOLATION = "interpolation"; //$NON-NLS-1$
 
+    /**
+     * Set the size ratio in x-axis between the original image and the input image, when the input is a reduction of
+     * the original image (Optional parameter). The input is scaled by the zoom factor multiplied by this value.
+     *
+     * Double value. Default value is 1.0.
+     */
+    public static final String P_INPUT_REDUCTION_X = "input.reduction.x"; //$NON-NLS-1$
+
+    /**
+     * Set the size ratio in y-axis between the original image and the input image (Optional parameter).
+     *
+     * Double value. Default value is 1.0.
+     */
+    public static final String P_INPUT_REDUCTION_Y = "input.reduction.y"; //$NON-NLS-1$
+
     public ZoomOp() {
         setName(OP_NAME);
     }
@@ -66,8 +81,8 @@ public class ZoomOp extends AbstractOp {
     public void process() throws Exception {
         RenderedImage source = (RenderedImage) params.get(Param.INPUT_IMG);
         RenderedImage result = source;
-        Double zoomFactorX = (Double) params.get(P_RATIO_X);
-        Double zoomFactorY = (Double) params.get(P_RATIO_Y);
+        Double zoomFactorX = getScale(P_RATIO_X, P_INPUT_REDUCTION_X);
+        Double zoomFactorY = getScale(P_RATIO_Y, P_INPUT_REDUCTION_Y);
 
         if (zoomFactorX != null && zoomFactorY != null && (MathUtil.isDifferent(zoomFactorX, 1.0) || MathUtil.isDifferent(zoomFactorY, 1.0))) {
             ParameterBlock pb = new ParameterBlock();
@@ -84,6 +99,26 @@ public class ZoomOp extends AbstractOp {
         params.put(Param.OUTPUT_IMG, result);
     }
 
+    /**
+     * @return the scale factor applied to the input image, or null if the zoom factor is not set
+     */
+    public Double getScaleX() {
+        return getScale(P_RATIO_X, P_INPUT_REDUCTION_X);
+    }
+
+    public Double getScaleY() {
+        return getScale(P_RATIO_Y, P_INPUT_REDUCTION_Y);
+    }
+
+    private Double getScale(String ratioKey, String reductionKey) {
+        Double ratio = (Double) params.get(ratioKey);
+        Double reduction = (Double) params.get(reductionKey);
+        if (ratio == null || reduction == null) {
+            return ratio;
+        }
+        return ratio * reduction;
+    }
+
     public Interpolation getInterpolation() {
         Integer interpolation = (Integer) params.get(P_INTERPOLATION);
         if (interpolation == null || interpolation < 0 || interpolation > 3) {
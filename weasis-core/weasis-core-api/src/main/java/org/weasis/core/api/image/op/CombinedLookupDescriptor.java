@@ -0,0 +1,176 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.core.api.image.op;
+
+import java.awt.RenderingHints;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.renderable.ParameterBlock;
+import java.awt.image.renderable.RenderedImageFactory;
+
+import javax.media.jai.ImageLayout;
+import javax.media.jai.JAI;
+import javax.media.jai.LookupTableJAI;
+import javax.media.jai.OperationDescriptorImpl;
+import javax.media.jai.ParameterBlockJAI;
+import javax.media.jai.PlanarImage;
+import javax.media.jai.RasterFactory;
+import javax.media.jai.RenderedOp;
+import javax.media.jai.registry.RenderedRegistryMode;
+
+import org.weasis.core.api.image.util.JAIUtil;
+
+/**
+ * Applies a sequence of lookup tables (e.g. modality, VOI and presentation LUTs) in a single pass. The tables are
+ * composed into one table covering the input range of the first table, so each pixel is read and written only once.
+ * The values outside the range of a table are clamped to its first or last entry.
+ */
+public class CombinedLookupDescriptor extends OperationDescriptorImpl implements RenderedImageFactory {
+
+    /**
+     * The resource strings that provide the general documentation and specify the parameter list for this operation.
+     */
+    private static final String[][] resources = { { "GlobalName", "CombinedLookup" }, //$NON-NLS-1$ //$NON-NLS-2$
+
+        { "LocalName", "CombinedLookup" }, //$NON-NLS-1$ //$NON-NLS-2$
+
+        { "Vendor", "" }, //$NON-NLS-1$ //$NON-NLS-2$
+
+        { "Description", "Applies a sequence of lookup tables in a single pass" }, //$NON-NLS-1$ //$NON-NLS-2$
+
+        { "DocURL", "" }, //$NON-NLS-1$ //$NON-NLS-2$
+
+        { "Version", "1.0" }, //$NON-NLS-1$ //$NON-NLS-2$
+
+        { "arg0Desc", "The lookup tables in the order of application" } }; //$NON-NLS-1$ //$NON-NLS-2$
+
+    private static final Class[] paramClasses = { LookupTableJAI[].class };
+
+    /** The parameter name list for this operation. */
+    private static final String[] paramNames = { "tables" }; //$NON-NLS-1$
+
+    /** The parameter default value list for this operation. */
+    private static final Object[] paramDefaults = { NO_PARAMETER_DEFAULT };
+
+    private static final String[] supportedModes = { "rendered" }; //$NON-NLS-1$
+
+    /** Constructor. */
+    public CombinedLookupDescriptor() {
+        super(resources, supportedModes, 1, paramNames, paramClasses, paramDefaults, null);
+    }
+
+    /**
+     * Validates the input source and parameter.
+     *
+     * <p>
+     * In addition to the standard checks performed by the superclass method, this method checks that the source image
+     * has one band with an integral data type and that there is at least one table.
+     */
+    @Override
+    public boolean validateArguments(String modeName, ParameterBlock args, StringBuffer message) {
+        if (!super.validateArguments(modeName, args, message)) {
+            return false;
+        }
+
+        RenderedImage src = args.getRenderedSource(0);
+        SampleModel sampleModel = src.getSampleModel();
+        int dtype = sampleModel.getDataType();
+        if (sampleModel.getNumBands() != 1 || dtype > DataBuffer.TYPE_INT) {
+            message.append("CombinedLookup requires a source with one band and integral data"); //$NON-NLS-1$
+            return false;
+        }
+
+        LookupTableJAI[] tables = (LookupTableJAI[]) args.getObjectParameter(0);
+        if (tables.length == 0) {
+            message.append("CombinedLookup requires at least one table"); //$NON-NLS-1$
+            return false;
+        }
+        for (LookupTableJAI table : tables) {
+            if (table == null || table.getDataType() > DataBuffer.TYPE_INT) {
+                message.append("CombinedLookup requires integral tables"); //$NON-NLS-1$
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public RenderedImage create(ParameterBlock args, RenderingHints renderHints) {
+        RenderedImage src = args.getRenderedSource(0);
+        LookupTableJAI[] tables = (LookupTableJAI[]) args.getObjectParameter(0);
+        int dataType = tables[tables.length - 1].getDataType();
+
+        ImageLayout hint = JAIUtil.getImageLayoutHint(renderHints);
+        ImageLayout layout = hint == null ? new ImageLayout() : (ImageLayout) hint.clone();
+        SampleModel sampleModel = layout.getSampleModel(null);
+        if (sampleModel == null || sampleModel.getDataType() != dataType || sampleModel.getNumBands() != 1) {
+            sampleModel = RasterFactory.createComponentSampleModel(src.getSampleModel(), dataType,
+                src.getTileWidth(), src.getTileHeight(), 1);
+            layout.setSampleModel(sampleModel);
+        }
+        ColorModel colorModel = layout.getColorModel(null);
+        if (colorModel == null || !colorModel.isCompatibleSampleModel(sampleModel)) {
+            layout.setColorModel(PlanarImage.createColorModel(sampleModel));
+        }
+        return new CombinedLookupOpImage(src, renderHints, layout, tables);
+    }
+
+    /**
+     * Composes the tables into a new table. The input range is the range of the first table, the values outside the
+     * range of a table take the value of its nearest entry.
+     *
+     * @param tables
+     *            the lookup tables in the order of application
+     * @return the new table with the data type of the last table
+     */
+    public static LookupTableJAI compose(LookupTableJAI... tables) {
+        LookupTableJAI first = tables[0];
+        int offset = first.getOffset(0);
+        int numEntries = first.getNumEntries();
+        int dataType = tables[tables.length - 1].getDataType();
+        byte[] bytes = dataType == DataBuffer.TYPE_BYTE ? new byte[numEntries] : null;
+        short[] shorts =
+            dataType == DataBuffer.TYPE_USHORT || dataType == DataBuffer.TYPE_SHORT ? new short[numEntries] : null;
+        int[] ints = bytes == null && shorts == null ? new int[numEntries] : null;
+        for (int i = 0; i < numEntries; i++) {
+            int val = offset + i;
+            for (LookupTableJAI table : tables) {
+                int min = table.getOffset(0);
+                int max = min + table.getNumEntries() - 1;
+                val = table.lookup(0, val < min ? min : val > max ? max : val);
+            }
+            if (bytes != null) {
+                bytes[i] = (byte) val;
+            } else if (shorts != null) {
+                shorts[i] = (short) val;
+            } else {
+                ints[i] = val;
+            }
+        }
+        if (bytes != null) {
+            return new LookupTableJAI(bytes, offset);
+        } else if (shorts != null) {
+            return new LookupTableJAI(shorts, offset, dataType == DataBuffer.TYPE_USHORT);
+        }
+        return new LookupTableJAI(ints, offset);
+    }
+
+    public static RenderedOp create(RenderedImage source0, LookupTableJAI[] tables, RenderingHints hints) {
+        ParameterBlockJAI pb = new ParameterBlockJAI("CombinedLookup", RenderedRegistryMode.MODE_NAME); //$NON-NLS-1$
+
+        pb.setSource("source0", source0); //$NON-NLS-1$
+        pb.setParameter("tables", tables); //$NON-NLS-1$
+
+        return JAI.create("CombinedLookup", pb, hints); //$NON-NLS-1$
+    }
+}
@@ -0,0 +1,193 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.core.api.image.op;
+
+import java.awt.Rectangle;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Map;
+
+import javax.media.jai.ImageLayout;
+import javax.media.jai.LookupTableJAI;
+import javax.media.jai.PointOpImage;
+import javax.media.jai.RasterAccessor;
+import javax.media.jai.RasterFormatTag;
+
+final class CombinedLookupOpImage extends PointOpImage {
+
+    private final int offset;
+    private final int maxIndex;
+    private final byte[] byteTable;
+    private final short[] shortTable;
+    private final int[] intTable;
+    private final RasterFormatTag srcTag;
+    private final RasterFormatTag dstTag;
+
+    /**
+     * Constructor.
+     *
+     * @param source
+     *            The source image.
+     * @param layout
+     *            The destination image layout.
+     * @param tables
+     *            The lookup tables in the order of application. A single table is used as is and must not be modified
+     *            afterwards.
+     */
+    public CombinedLookupOpImage(RenderedImage source, Map config, ImageLayout layout, LookupTableJAI[] tables) {
+        super(source, layout, config, true);
+
+        // The data type of the composed table is the data type of the destination. A single table (e.g. already
+        // composed by the caller) is not copied.
+        LookupTableJAI table = tables.length == 1 ? tables[0] : CombinedLookupDescriptor.compose(tables);
+        this.offset = table.getOffset(0);
+        this.maxIndex = table.getNumEntries() - 1;
+        int dataType = table.getDataType();
+        this.byteTable = dataType == DataBuffer.TYPE_BYTE ? table.getByteData(0) : null;
+        this.shortTable =
+            dataType == DataBuffer.TYPE_USHORT || dataType == DataBuffer.TYPE_SHORT ? table.getShortData(0) : null;
+        this.intTable = dataType == DataBuffer.TYPE_INT ? table.getIntData(0) : null;
+
+        SampleModel srcModel = source.getSampleModel();
+        SampleModel dstModel = getSampleModel();
+        this.srcTag = new RasterFormatTag(srcModel, RasterAccessor.findCompatibleTag(null, srcModel));
+        this.dstTag = new RasterFormatTag(dstModel, RasterAccessor.findCompatibleTag(null, dstModel));
+    }
+
+    /**
+     * Maps the source pixels through the composed table.
+     *
+     * @param sources
+     *            Cobbled sources, guaranteed to provide all the source data necessary for computing the rectangle.
+     * @param dest
+     *            The tile containing the rectangle to be computed.
+     * @param destRect
+     *            The rectangle within the tile to be computed.
+     */
+    @Override
+    protected void computeRect(Raster[] sources, WritableRaster dest, Rectangle destRect) {
+        Rectangle srcRect = mapDestRect(destRect, 0);
+        // Keep the native data type of each raster (no conversion to a common type)
+        RasterAccessor src = new RasterAccessor(sources[0], srcRect, srcTag, getSourceImage(0).getColorModel());
+        RasterAccessor dst = new RasterAccessor(dest, destRect, dstTag, getColorModel());
+
+        if (byteTable != null) {
+            switch (src.getDataType()) {
+                case DataBuffer.TYPE_BYTE:
+                    computeByteToByte(src, dst);
+                    break;
+                case DataBuffer.TYPE_USHORT:
+                    computeShortToByte(src, dst, 0xFFFF);
+                    break;
+                case DataBuffer.TYPE_SHORT:
+                    computeShortToByte(src, dst, 0xFFFFFFFF);
+                    break;
+                default:
+                    computeAny(src, dst);
+                    break;
+            }
+        } else {
+            computeAny(src, dst);
+        }
+
+        if (dst.isDataCopy()) {
+            dst.copyDataToRaster();
+        }
+    }
+
+    private void computeByteToByte(RasterAccessor src, RasterAccessor dst) {
+        byte[] s = src.getByteDataArray(0);
+        byte[] d = dst.getByteDataArray(0);
+        int srcLineOffset = src.getBandOffset(0);
+        int dstLineOffset = dst.getBandOffset(0);
+        for (int h = 0; h < dst.getHeight(); h++) {
+            int srcPixelOffset = srcLineOffset;
+            int dstPixelOffset = dstLineOffset;
+            srcLineOffset += src.getScanlineStride();
+            dstLineOffset += dst.getScanlineStride();
+            for (int w = 0; w < dst.getWidth(); w++) {
+                int index = (s[srcPixelOffset] & 0xFF) - offset;
+                d[dstPixelOffset] = byteTable[index < 0 ? 0 : index > maxIndex ? maxIndex : index];
+                srcPixelOffset += src.getPixelStride();
+                dstPixelOffset += dst.getPixelStride();
+            }
+        }
+    }
+
+    private void computeShortToByte(RasterAccessor src, RasterAccessor dst, int mask) {
+        short[] s = src.getShortDataArray(0);
+        byte[] d = dst.getByteDataArray(0);
+        int srcLineOffset = src.getBandOffset(0);
+        int dstLineOffset = dst.getBandOffset(0);
+        int srcPixelStride = src.getPixelStride();
+        int dstPixelStride = dst.getPixelStride();
+        int width = dst.getWidth();
+        for (int h = 0; h < dst.getHeight(); h++) {
+            int srcPixelOffset = srcLineOffset;
+            int dstPixelOffset = dstLineOffset;
+            srcLineOffset += src.getScanlineStride();
+            dstLineOffset += dst.getScanlineStride();
+            for (int w = 0; w < width; w++) {
+                int index = (s[srcPixelOffset] & mask) - offset;
+                d[dstPixelOffset] = byteTable[index < 0 ? 0 : index > maxIndex ? maxIndex : index];
+                srcPixelOffset += srcPixelStride;
+                dstPixelOffset += dstPixelStride;
+            }
+        }
+    }
+
+    private void computeAny(RasterAccessor src, RasterAccessor dst) {
+        int srcType = src.getDataType();
+        byte[] sByte = srcType == DataBuffer.TYPE_BYTE ? src.getByteDataArray(0) : null;
+        short[] sShort =
+            srcType == DataBuffer.TYPE_USHORT || srcType == DataBuffer.TYPE_SHORT ? src.getShortDataArray(0) : null;
+        int[] sInt = srcType == DataBuffer.TYPE_INT ? src.getIntDataArray(0) : null;
+        // Only the signed short data keeps the sign
+        int shortMask = srcType == DataBuffer.TYPE_USHORT ? 0xFFFF : 0xFFFFFFFF;
+
+        byte[] dByte = byteTable == null ? null : dst.getByteDataArray(0);
+        short[] dShort = shortTable == null ? null : dst.getShortDataArray(0);
+        int[] dInt = intTable == null ? null : dst.getIntDataArray(0);
+
+        int srcLineOffset = src.getBandOffset(0);
+        int dstLineOffset = dst.getBandOffset(0);
+        for (int h = 0; h < dst.getHeight(); h++) {
+            int srcPixelOffset = srcLineOffset;
+            int dstPixelOffset = dstLineOffset;
+            srcLineOffset += src.getScanlineStride();
+            dstLineOffset += dst.getScanlineStride();
+            for (int w = 0; w < dst.getWidth(); w++) {
+                int val;
+                if (sShort != null) {
+                    val = sShort[srcPixelOffset] & shortMask;
+                } else if (sByte != null) {
+                    val = sByte[srcPixelOffset] & 0xFF;
+                } else {
+                    val = sInt[srcPixelOffset];
+                }
+                int index = val - offset;
+                index = index < 0 ? 0 : index > maxIndex ? maxIndex : index;
+                if (dByte != null) {
+                    dByte[dstPixelOffset] = byteTable[index];
+                } else if (dShort != null) {
+                    dShort[dstPixelOffset] = shortTable[index];
+                } else {
+                    dInt[dstPixelOffset] = intTable[index];
+                }
+                srcPixelOffset += src.getPixelStride();
+                dstPixelOffset += dst.getPixelStride();
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.core.api.image.util;
+
+import java.awt.RenderingHints;
+import java.awt.image.RenderedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.media.jai.ImageLayout;
+import javax.media.jai.JAI;
+import javax.media.jai.PlanarImage;
+import javax.media.jai.operator.SubsampleAverageDescriptor;
+
+import org.weasis.core.api.service.BundleTools;
+
+/**
+ * Power of two reductions of a large image (e.g. DX, CR, MG or secondary capture). The level 0 is the original image
+ * and each level is the average subsampling by 2 of the previous one.
+ * <p>
+ * The levels are built on the first request. Their tiles are computed from the tiles of the previous level and are kept
+ * in the JAI tile cache, so the memory of the levels is bounded by the capacity of the tile cache (the tiles evicted
+ * are computed again when required).
+ */
+public final class ImagePyramid {
+
+    /**
+     * Minimum size in pixels of the largest side of an image to build its pyramid.
+     */
+    public static final String PYRAMID_MIN_SIZE = "weasis.image.pyramid.min.size"; //$NON-NLS-1$
+    private static final int MIN_SIZE = BundleTools.SYSTEM_PREFERENCES.getIntProperty(PYRAMID_MIN_SIZE, 2048);
+    // Do not reduce the levels under this size
+    private static final int MIN_LEVEL_SIZE = 256;
+    private static final int TILE_SIZE = 512;
+
+    private final PlanarImage base;
+    private final List<PlanarImage> levels;
+    private final int maxLevel;
+
+    public ImagePyramid(PlanarImage base) {
+        this.base = base;
+        this.levels = new ArrayList<>();
+        this.levels.add(base);
+        int size = Math.max(base.getWidth(), base.getHeight());
+        int level = 0;
+        while (size / 2 >= MIN_LEVEL_SIZE) {
+            size /= 2;
+            level++;
+        }
+        this.maxLevel = level;
+    }
+
+    public static boolean isPyramidRequired(RenderedImage image) {
+        return image != null && MIN_SIZE > 0 && Math.max(image.getWidth(), image.getHeight()) >= MIN_SIZE;
+    }
+
+    public PlanarImage getBase() {
+        return base;
+    }
+
+    public int getMaxLevel() {
+        return maxLevel;
+    }
+
+    /**
+     * @param scale
+     *            the scale factor applied to the original image
+     * @return the smallest level which has at least the resolution required by the scale factor
+     */
+    public int getLevelIndex(double scale) {
+        int index = 0;
+        double s = Math.abs(scale);
+        while (index < maxLevel && s <= 0.5) {
+            s *= 2.0;
+            index++;
+        }
+        return index;
+    }
+
+    public synchronized PlanarImage getLevel(int index) {
+        int idx = Math.max(0, Math.min(maxLevel, index));
+        for (int i = levels.size(); i <= idx; i++) {
+            PlanarImage previous = levels.get(i - 1);
+            ImageLayout layout = new ImageLayout();
+            layout.setTileWidth(Math.min(TILE_SIZE, Math.max(1, previous.getWidth() / 2)));
+            layout.setTileHeight(Math.min(TILE_SIZE, Math.max(1, previous.getHeight() / 2)));
+            // Default tile cache of JAI
+            levels.add(SubsampleAverageDescriptor.create(previous, 0.5, 0.5,
+                new RenderingHints(JAI.KEY_IMAGE_LAYOUT, layout)));
+        }
+        return levels.get(idx);
+    }
+
+    /**
+     * Removes the tiles of the levels from the tile cache.
+     */
+    public synchronized void dispose() {
+        for (int i = 1; i < levels.size(); i++) {
+            levels.get(i).dispose();
+        }
+        levels.subList(1, levels.size()).clear();
+    }
+
+    /**
+     * @return true if the image is the original image or one of the levels already built
+     */
+    public synchronized boolean contains(RenderedImage image) {
+        for (PlanarImage level : levels) {
+            if (level == image) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,440 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.core.api.image.util;
+
+import java.awt.Point;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+import javax.media.jai.TileCache;
+
+import org.weasis.core.api.command.Option;
+import org.weasis.core.api.command.Options;
+import org.weasis.core.api.util.FileUtil;
+
+/**
+ * Tile cache of JAI with a least recently used policy, recording the hits, the misses, the evictions and the memory
+ * used by each operator.
+ *
+ * The capacity can be adapted to the memory left by the decoded image cache (see
+ * {@link #setCapacityProvider(LongSupplier)}), so the two caches do not compete for the same heap.
+ */
+public class InstrumentedTileCache implements TileCache {
+
+    public static final String[] functions = { "tilecache" }; //$NON-NLS-1$
+
+    private static final String[] KNOWN_OPERATORS = { "scale", "lookup", "convolve", "composite", "affine" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+    private static final Map<Class<?>, String> OPERATOR_NAMES = new ConcurrentHashMap<>();
+    // Minimum delay between two evaluations of the capacity
+    private static final long CAPACITY_UPDATE_NANOS = 500_000_000L;
+
+    // Access order: the first entry is the least recently used tile
+    private final Map<TileKey, CachedTile> tiles = new LinkedHashMap<>(256, 0.75f, true);
+    private final Map<String, Long> operatorBytes = new TreeMap<>();
+
+    private long memoryCapacity;
+    private float memoryThreshold = 0.75f;
+    private long memoryUsed;
+
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    private LongSupplier capacityProvider;
+    private long minCapacity;
+    private long maxCapacity;
+    private long lastCapacityUpdate;
+
+    public InstrumentedTileCache(long memoryCapacity) {
+        setMemoryCapacity(memoryCapacity);
+    }
+
+    /**
+     * Adapts the capacity of the cache to the value given by the provider, bounded by the minimum and the maximum
+     * capacity. The provider is called at most twice a second when tiles are added.
+     *
+     * @param provider
+     *            the function giving the memory available for the tiles (null to keep a fixed capacity)
+     * @param minCapacity
+     *            the minimum capacity in bytes
+     * @param maxCapacity
+     *            the maximum capacity in bytes
+     */
+    public synchronized void setCapacityProvider(LongSupplier provider, long minCapacity, long maxCapacity) {
+        this.capacityProvider = provider;
+        this.minCapacity = Math.max(0L, minCapacity);
+        this.maxCapacity = Math.max(this.minCapacity, maxCapacity);
+        this.lastCapacityUpdate = 0L;
+        updateCapacity();
+    }
+
+    private void updateCapacity() {
+        if (capacityProvider != null) {
+            long now = System.nanoTime();
+            if (now - lastCapacityUpdate > CAPACITY_UPDATE_NANOS) {
+                lastCapacityUpdate = now;
+                long capacity = Math.max(minCapacity, Math.min(maxCapacity, capacityProvider.getAsLong()));
+                if (capacity != memoryCapacity) {
+                    memoryCapacity = capacity;
+                    if (memoryUsed > memoryCapacity) {
+                        memoryControl();
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void add(RenderedImage owner, int tileX, int tileY, Raster data) {
+        add(owner, tileX, tileY, data, null);
+    }
+
+    @Override
+    public synchronized void add(RenderedImage owner, int tileX, int tileY, Raster data, Object tileCacheMetric) {
+        if (owner == null || data == null || memoryCapacity <= 0) {
+            return;
+        }
+        updateCapacity();
+        long size = getTileSize(data);
+        if (size > memoryCapacity) {
+            return;
+        }
+        TileKey key = new TileKey(owner, tileX, tileY);
+        CachedTile old = tiles.get(key);
+        if (old != null) {
+            if (old.owner.get() == owner && old.tile == data) {
+                return;
+            }
+            removeEntry(key, old);
+        }
+        CachedTile tile = new CachedTile(owner, data, size, getOperatorName(owner));
+        tiles.put(key, tile);
+        memoryUsed += size;
+        operatorBytes.merge(tile.operator, size, Long::sum);
+        if (memoryUsed > memoryCapacity) {
+            memoryControl();
+        }
+    }
+
+    @Override
+    public synchronized void remove(RenderedImage owner, int tileX, int tileY) {
+        TileKey key = new TileKey(owner, tileX, tileY);
+        CachedTile tile = tiles.get(key);
+        if (tile != null && tile.owner.get() == owner) {
+            removeEntry(key, tile);
+        }
+    }
+
+    @Override
+    public synchronized Raster getTile(RenderedImage owner, int tileX, int tileY) {
+        CachedTile tile = tiles.get(new TileKey(owner, tileX, tileY));
+        if (tile != null && tile.owner.get() == owner) {
+            hitCount++;
+            return tile.tile;
+        }
+        missCount++;
+        return null;
+    }
+
+    @Override
+    public synchronized Raster[] getTiles(RenderedImage owner) {
+        List<Raster> list = new ArrayList<>();
+        for (int ty = owner.getMinTileY(); ty < owner.getMinTileY() + owner.getNumYTiles(); ty++) {
+            for (int tx = owner.getMinTileX(); tx < owner.getMinTileX() + owner.getNumXTiles(); tx++) {
+                CachedTile tile = tiles.get(new TileKey(owner, tx, ty));
+                if (tile != null && tile.owner.get() == owner) {
+                    list.add(tile.tile);
+                }
+            }
+        }
+        return list.isEmpty() ? null : list.toArray(new Raster[list.size()]);
+    }
+
+    @Override
+    public synchronized void removeTiles(RenderedImage owner) {
+        for (int ty = owner.getMinTileY(); ty < owner.getMinTileY() + owner.getNumYTiles(); ty++) {
+            for (int tx = owner.getMinTileX(); tx < owner.getMinTileX() + owner.getNumXTiles(); tx++) {
+                remove(owner, tx, ty);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void addTiles(RenderedImage owner, Point[] tileIndices, Raster[] data,
+        Object tileCacheMetric) {
+        for (int i = 0; i < tileIndices.length; i++) {
+            add(owner, tileIndices[i].x, tileIndices[i].y, data[i], tileCacheMetric);
+        }
+    }
+
+    @Override
+    public synchronized Raster[] getTiles(RenderedImage owner, Point[] tileIndices) {
+        Raster[] result = new Raster[tileIndices.length];
+        for (int i = 0; i < tileIndices.length; i++) {
+            result[i] = getTile(owner, tileIndices[i].x, tileIndices[i].y);
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized void flush() {
+        tiles.clear();
+        operatorBytes.clear();
+        memoryUsed = 0L;
+    }
+
+    /**
+     * Removes the least recently used tiles until the memory used is below the threshold of the capacity.
+     */
+    @Override
+    public synchronized void memoryControl() {
+        long target = (long) (memoryCapacity * memoryThreshold);
+        Iterator<Entry<TileKey, CachedTile>> iter = tiles.entrySet().iterator();
+        while (memoryUsed > target && iter.hasNext()) {
+            CachedTile tile = iter.next().getValue();
+            iter.remove();
+            released(tile);
+            evictionCount++;
+        }
+    }
+
+    /**
+     * Removes the least recently used tiles.
+     *
+     * @param bytes
+     *            the amount of memory to release
+     * @return the amount of memory released
+     */
+    public synchronized long release(long bytes) {
+        long before = memoryUsed;
+        Iterator<Entry<TileKey, CachedTile>> iter = tiles.entrySet().iterator();
+        while (before - memoryUsed < bytes && iter.hasNext()) {
+            CachedTile tile = iter.next().getValue();
+            iter.remove();
+            released(tile);
+            evictionCount++;
+        }
+        return before - memoryUsed;
+    }
+
+    private void removeEntry(TileKey key, CachedTile tile) {
+        tiles.remove(key);
+        released(tile);
+    }
+
+    private void released(CachedTile tile) {
+        memoryUsed -= tile.size;
+        operatorBytes.computeIfPresent(tile.operator, (k, v) -> v - tile.size <= 0 ? null : v - tile.size);
+    }
+
+    @Override
+    public void setTileCapacity(int tileCapacity) {
+        // Deprecated in JAI, the capacity is defined only by the memory
+    }
+
+    @Override
+    public int getTileCapacity() {
+        return 0;
+    }
+
+    @Override
+    public synchronized void setMemoryCapacity(long memoryCapacity) {
+        if (memoryCapacity < 0) {
+            throw new IllegalArgumentException("The capacity cannot be negative"); //$NON-NLS-1$
+        }
+        this.memoryCapacity = memoryCapacity;
+        if (memoryUsed > memoryCapacity) {
+            memoryControl();
+        }
+    }
+
+    @Override
+    public synchronized long getMemoryCapacity() {
+        return memoryCapacity;
+    }
+
+    @Override
+    public synchronized void setMemoryThreshold(float memoryThreshold) {
+        if (memoryThreshold < 0.0f || memoryThreshold > 1.0f) {
+            throw new IllegalArgumentException("The threshold must be between 0 and 1"); //$NON-NLS-1$
+        }
+        this.memoryThreshold = memoryThreshold;
+    }
+
+    @Override
+    public synchronized float getMemoryThreshold() {
+        return memoryThreshold;
+    }
+
+    @Override
+    public void setTileComparator(Comparator comparator) {
+        // Always the least recently used policy
+    }
+
+    @Override
+    public Comparator getTileComparator() {
+        return null;
+    }
+
+    public synchronized long getMemoryUsed() {
+        return memoryUsed;
+    }
+
+    public synchronized int getTileCount() {
+        return tiles.size();
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * @return a copy of the memory used by each operator
+     */
+    public synchronized Map<String, Long> getOperatorBytes() {
+        return new TreeMap<>(operatorBytes);
+    }
+
+    public synchronized void resetStatistics() {
+        hitCount = 0L;
+        missCount = 0L;
+        evictionCount = 0L;
+    }
+
+    public void tilecache(String[] argv) throws IOException {
+        final String[] usage = { "Show the statistics of the JAI tile cache", //$NON-NLS-1$
+            "Usage: weasis:tilecache [Options]", //$NON-NLS-1$
+            "  -r --reset		reset the statistics", //$NON-NLS-1$
+            "  -f --flush		remove all the tiles", //$NON-NLS-1$
+            "  -? --help		show help" }; //$NON-NLS-1$
+
+        Option opt = Options.compile(usage).parse(argv);
+        if (opt.isSet("help")) { //$NON-NLS-1$
+            opt.usage();
+            return;
+        }
+        if (opt.isSet("flush")) { //$NON-NLS-1$
+            flush();
+        }
+        System.out.println(toString());
+        if (opt.isSet("reset")) { //$NON-NLS-1$
+            resetStatistics();
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder buf = new StringBuilder();
+        long requests = hitCount + missCount;
+        buf.append("Tiles: ").append(tiles.size()); //$NON-NLS-1$
+        buf.append(", used: ").append(FileUtil.formatSize(memoryUsed)); //$NON-NLS-1$
+        buf.append(" / ").append(FileUtil.formatSize(memoryCapacity)); //$NON-NLS-1$
+        buf.append("\nHits: ").append(hitCount); //$NON-NLS-1$
+        buf.append(", misses: ").append(missCount); //$NON-NLS-1$
+        buf.append(", hit ratio: ") //$NON-NLS-1$
+            .append(requests == 0 ? 0 : Math.round(hitCount * 100.0 / requests)).append('%');
+        buf.append(", evictions: ").append(evictionCount); //$NON-NLS-1$
+        for (Entry<String, Long> entry : operatorBytes.entrySet()) {
+            buf.append("\n  ").append(entry.getKey()).append(": ").append(FileUtil.formatSize(entry.getValue())); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+        return buf.toString();
+    }
+
+    static long getTileSize(Raster tile) {
+        DataBuffer db = tile.getDataBuffer();
+        return (long) db.getSize() * db.getNumBanks() * DataBuffer.getDataTypeSize(db.getDataType()) / 8;
+    }
+
+    /**
+     * @return the name of the operator which has computed the image (e.g. "scale" for ScaleBilinearOpImage)
+     */
+    static String getOperatorName(RenderedImage owner) {
+        return OPERATOR_NAMES.computeIfAbsent(owner.getClass(), c -> {
+            String name = c.getSimpleName();
+            if (name.endsWith("OpImage")) { //$NON-NLS-1$
+                name = name.substring(0, name.length() - 7);
+            }
+            name = name.toLowerCase(Locale.ENGLISH);
+            for (String op : KNOWN_OPERATORS) {
+                if (name.contains(op)) {
+                    return op;
+                }
+            }
+            return name.isEmpty() ? "unknown" : name; //$NON-NLS-1$
+        });
+    }
+
+    private static final class TileKey {
+        private final int ownerId;
+        private final int tileX;
+        private final int tileY;
+
+        TileKey(RenderedImage owner, int tileX, int tileY) {
+            this.ownerId = System.identityHashCode(owner);
+            this.tileX = tileX;
+            this.tileY = tileY;
+        }
+
+        @Override
+        public int hashCode() {
+            return (ownerId * 31 + tileX) * 31 + tileY;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof TileKey)) {
+                return false;
+            }
+            TileKey other = (TileKey) obj;
+            return ownerId == other.ownerId && tileX == other.tileX && tileY == other.tileY;
+        }
+    }
+
+    private static final class CachedTile {
+        // Do not prevent the image to be garbage collected
+        private final WeakReference<RenderedImage> owner;
+        private final Raster tile;
+        private final long size;
+        private final String operator;
+
+        CachedTile(RenderedImage owner, Raster tile, long size, String operator) {
+            this.owner = new WeakReference<>(owner);
+            this.tile = tile;
+            this.size = size;
+            this.operator = operator;
+        }
+    }
+}
@@ -28,6 +28,8 @@ import javax.media.jai.registry.RIFRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.sun.media.jai.util.SunTileCache;
+
 public class JAIUtil {
     private static final Logger LOGGER = LoggerFactory.getLogger(JAIUtil.class);
 
@@ -67,6 +69,35 @@ public class JAIUtil {
         getJAI().getTileCache().setMemoryCapacity(tileCacheMB * 1024L * 1024L);
     }
 
+    /**
+     * Removes the least recently used tiles of the Tile Cache.
+     *
+     * @param bytes
+     *            the amount of memory to release
+     * @return the amount of memory released
+     */
+    public static long releaseCacheMemory(long bytes) {
+        TileCache cache = getJAI().getTileCache();
+        if (cache instanceof InstrumentedTileCache) {
+            return ((InstrumentedTileCache) cache).release(bytes);
+        }
+        if (cache instanceof SunTileCache) {
+            SunTileCache tileCache = (SunTileCache) cache;
+            long used = tileCache.getCacheMemoryUsed();
+            if (bytes >= used) {
+                tileCache.flush();
+                return used;
+            }
+            long capacity = tileCache.getMemoryCapacity();
+            // Reducing the capacity removes the least recently used tiles
+            tileCache.setMemoryCapacity(used - bytes);
+            tileCache.setMemoryCapacity(capacity);
+            return used - tileCache.getCacheMemoryUsed();
+        }
+        cache.flush();
+        return 0L;
+    }
+
     public static void removeCacheTiles(PlanarImage img) {
         if (img != null) {
             getJAI().getTileCache().removeTiles(img);
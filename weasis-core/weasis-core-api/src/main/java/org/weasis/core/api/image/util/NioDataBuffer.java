@@ -0,0 +1,81 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.core.api.image.util;
+
+import java.awt.image.DataBuffer;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.Objects;
+
+/**
+ * DataBuffer with a single bank backed by a NIO buffer (direct or memory-mapped). The data are read directly in the
+ * buffer, so a Raster built with this DataBuffer does not hold the pixels in the Java heap. The elements are read one by
+ * one: the consumers expecting a standard DataBuffer (JAI operations, Java2D) copy or convert the data.
+ *
+ * Supported data types: TYPE_BYTE, TYPE_USHORT, TYPE_SHORT and TYPE_INT.
+ */
+public class NioDataBuffer extends DataBuffer {
+
+    private final ByteBuffer buffer;
+    private final ShortBuffer shortBuffer;
+    private final IntBuffer intBuffer;
+
+    public NioDataBuffer(int dataType, ByteBuffer buffer, int size) {
+        super(dataType, size);
+        this.buffer = Objects.requireNonNull(buffer);
+        if (!isDataTypeSupported(dataType)) {
+            throw new IllegalArgumentException("Unsupported data type: " + dataType); //$NON-NLS-1$
+        }
+        if ((long) size * getDataTypeSize(dataType) / 8 > buffer.capacity()) {
+            throw new IllegalArgumentException("The buffer is too small for " + size + " elements"); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+        this.shortBuffer = dataType == TYPE_USHORT || dataType == TYPE_SHORT ? buffer.asShortBuffer() : null;
+        this.intBuffer = dataType == TYPE_INT ? buffer.asIntBuffer() : null;
+    }
+
+    public static boolean isDataTypeSupported(int dataType) {
+        return dataType == TYPE_BYTE || dataType == TYPE_USHORT || dataType == TYPE_SHORT || dataType == TYPE_INT;
+    }
+
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    @Override
+    public int getElem(int bank, int i) {
+        switch (dataType) {
+            case TYPE_BYTE:
+                return buffer.get(i) & 0xff;
+            case TYPE_USHORT:
+                return shortBuffer.get(i) & 0xffff;
+            case TYPE_SHORT:
+                return shortBuffer.get(i);
+            default:
+                return intBuffer.get(i);
+        }
+    }
+
+    @Override
+    public void setElem(int bank, int i, int val) {
+        switch (dataType) {
+            case TYPE_BYTE:
+                buffer.put(i, (byte) val);
+                break;
+            case TYPE_USHORT:
+            case TYPE_SHORT:
+                shortBuffer.put(i, (short) val);
+                break;
+            default:
+                intBuffer.put(i, val);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.core.api.image.util;
+
+import java.awt.Rectangle;
+import java.awt.image.ColorModel;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.media.jai.ImageLayout;
+import javax.media.jai.PlanarImage;
+
+/**
+ * Image whose pixels are stored outside the Java heap in a {@link NioDataBuffer}. The tiles are child rasters of a
+ * single raster sharing the same buffer, so the image held in cache does not occupy the heap.
+ * <p>
+ * The buffer is never exposed: {@link #getTile(int, int)} and {@link #getData(Rectangle)} copy the region into a heap
+ * raster, so the buffer can be released when the image is disposed (e.g. evicted from the cache) even if the image is
+ * still referenced. Each tile displayed is therefore copied, the computed tiles are kept by the JAI tile cache.
+ * After the disposal, the image returns empty rasters.
+ */
+public class OffHeapImage extends PlanarImage {
+
+    private final WritableRaster raster;
+    private final File scratchFile;
+    // Guards the buffer against its release while it is copied
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private boolean disposed = false;
+
+    /**
+     * @param raster
+     *            the raster backed by a NioDataBuffer
+     * @param colorModel
+     *            the color model (can be null)
+     * @param scratchFile
+     *            the memory-mapped file of the buffer or null when the buffer is a direct buffer
+     */
+    public OffHeapImage(WritableRaster raster, ColorModel colorModel, File scratchFile) {
+        super(buildLayout(raster, colorModel), null, null);
+        this.raster = raster;
+        this.scratchFile = scratchFile;
+    }
+
+    private static ImageLayout buildLayout(Raster raster, ColorModel colorModel) {
+        int tileWidth = Math.min(raster.getWidth(), ImageFiler.TILESIZE);
+        int tileHeight = Math.min(raster.getHeight(), ImageFiler.TILESIZE);
+        SampleModel sm = raster.getSampleModel().createCompatibleSampleModel(tileWidth, tileHeight);
+        return new ImageLayout(raster.getMinX(), raster.getMinY(), raster.getWidth(), raster.getHeight(),
+            raster.getMinX(), raster.getMinY(), tileWidth, tileHeight, sm, colorModel);
+    }
+
+    @Override
+    public Raster getTile(int tileX, int tileY) {
+        Rectangle rect = new Rectangle(tileXToX(tileX), tileYToY(tileY), getTileWidth(), getTileHeight())
+            .intersection(getBounds());
+        if (rect.isEmpty()) {
+            return null;
+        }
+        return copy(rect);
+    }
+
+    @Override
+    public Raster getData() {
+        return getData(getBounds());
+    }
+
+    @Override
+    public Raster getData(Rectangle region) {
+        Rectangle rect = region.intersection(getBounds());
+        if (rect.isEmpty()) {
+            throw new IllegalArgumentException("The region is outside of the image"); //$NON-NLS-1$
+        }
+        return copy(rect);
+    }
+
+    private Raster copy(Rectangle rect) {
+        // Copy only the requested region into the heap
+        WritableRaster dst = raster.createCompatibleWritableRaster(rect.x, rect.y, rect.width, rect.height);
+        lock.readLock().lock();
+        try {
+            if (!disposed) {
+                dst.setRect(raster.createChild(rect.x, rect.y, rect.width, rect.height, rect.x, rect.y, null));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return dst;
+    }
+
+    public long getByteSize() {
+        return ((NioDataBuffer) raster.getDataBuffer()).getBuffer().capacity();
+    }
+
+    public boolean isDisposed() {
+        lock.readLock().lock();
+        try {
+            return disposed;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Releases the direct or mapped buffer and the scratch file.
+     */
+    @Override
+    public void dispose() {
+        lock.writeLock().lock();
+        try {
+            if (disposed) {
+                return;
+            }
+            disposed = true;
+            OffHeapImageStore.released(this);
+            OffHeapImageStore.free(((NioDataBuffer) raster.getDataBuffer()).getBuffer());
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (scratchFile != null && !scratchFile.delete()) {
+            // Cannot delete a mapped file on some systems
+            scratchFile.deleteOnExit();
+        }
+    }
+}
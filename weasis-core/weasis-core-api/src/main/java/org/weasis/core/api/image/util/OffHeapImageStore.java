@@ -0,0 +1,360 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.core.api.image.util;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.media.jai.JAI;
+import javax.media.jai.PlanarImage;
+import javax.media.jai.RenderedOp;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.weasis.core.api.gui.util.AppProperties;
+import org.weasis.core.api.service.BundleTools;
+import org.weasis.core.api.util.FileUtil;
+
+/**
+ * Store of the decoded pixels outside the Java heap. The mode is defined by the property "weasis.image.offheap":
+ * <ul>
+ * <li>none: the pixels remain in the heap (default)</li>
+ * <li>direct: the pixels are copied into direct ByteBuffers</li>
+ * <li>mapped: the pixels are copied into memory-mapped scratch files in the cache directory</li>
+ * </ul>
+ * This reduces the heap used by the images in cache, not the cost of the display which copies the tiles into the heap
+ * (see {@link OffHeapImage}).
+ * <p>
+ * The images stored outside the heap have their own budget (the property "weasis.image.offheap.size" in MB), by default
+ * three quarters of the maximum direct memory of the JVM (-XX:MaxDirectMemorySize, or the maximum heap size when it is
+ * not set). The buffers are released explicitly when the images are disposed.
+ */
+public class OffHeapImageStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger(OffHeapImageStore.class);
+
+    public static final String OFF_HEAP_MODE = "weasis.image.offheap"; //$NON-NLS-1$
+    public static final String OFF_HEAP_SIZE = "weasis.image.offheap.size"; //$NON-NLS-1$
+
+    public enum Mode {
+        NONE, DIRECT, MAPPED
+    }
+
+    private static final Mode MODE = getMode(BundleTools.SYSTEM_PREFERENCES.getProperty(OFF_HEAP_MODE));
+    private static final long MAX_BYTES = computeMaxBytes();
+    private static final AtomicLong allocatedBytes = new AtomicLong();
+
+    private static final String SCRATCH_DIR = "pixels"; //$NON-NLS-1$
+    private static File scratchDir;
+
+    private OffHeapImageStore() {
+    }
+
+    private static Mode getMode(String value) {
+        if (value != null) {
+            try {
+                return Mode.valueOf(value.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                LOGGER.error("Unknown off-heap mode: {}", value); //$NON-NLS-1$
+            }
+        }
+        return Mode.NONE;
+    }
+
+    public static Mode getMode() {
+        return MODE;
+    }
+
+    public static boolean isEnabled() {
+        return MODE != Mode.NONE;
+    }
+
+    /**
+     * @return the memory budget (in bytes) of the images stored outside the heap
+     */
+    public static long getMaxBytes() {
+        return MAX_BYTES;
+    }
+
+    private static long computeMaxBytes() {
+        long size = BundleTools.SYSTEM_PREFERENCES.getLongProperty(OFF_HEAP_SIZE, -1L);
+        if (size > 0) {
+            return size * 1024L * 1024L;
+        }
+        // Keep a margin for the other direct buffers (NIO channels, native decoders...)
+        return getMaxDirectMemory() / 4 * 3;
+    }
+
+    private static long getMaxDirectMemory() {
+        String prefix = "-XX:MaxDirectMemorySize="; //$NON-NLS-1$
+        try {
+            for (String arg : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+                if (arg.startsWith(prefix)) {
+                    return parseSize(arg.substring(prefix.length()).trim());
+                }
+            }
+        } catch (RuntimeException e) {
+            LOGGER.error("Cannot read the maximum direct memory", e); //$NON-NLS-1$
+        }
+        // Default value of the JVM
+        return Runtime.getRuntime().maxMemory();
+    }
+
+    private static long parseSize(String value) {
+        long unit = 1L;
+        String number = value;
+        char last = Character.toLowerCase(value.charAt(value.length() - 1));
+        if (last == 'k' || last == 'm' || last == 'g' || last == 't') {
+            unit = last == 'k' ? 1L << 10 : last == 'm' ? 1L << 20 : last == 'g' ? 1L << 30 : 1L << 40;
+            number = value.substring(0, value.length() - 1);
+        }
+        return Long.parseLong(number) * unit;
+    }
+
+    /**
+     * Releases the memory of a direct or memory-mapped buffer without waiting for the garbage collector. The buffer
+     * must not be read anymore.
+     *
+     * @param buffer
+     *            the buffer returned by ByteBuffer.allocateDirect() or FileChannel.map()
+     */
+    static void free(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect()) {
+            return;
+        }
+        try {
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner"); //$NON-NLS-1$
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner != null) {
+                cleaner.getClass().getMethod("clean").invoke(cleaner); //$NON-NLS-1$
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Released later by the garbage collector
+            LOGGER.debug("Cannot release the buffer: {}", e.getMessage()); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * @return the amount of pixel data (in bytes) stored outside the heap and not yet released
+     */
+    public static long getAllocatedBytes() {
+        return allocatedBytes.get();
+    }
+
+    static void released(OffHeapImage image) {
+        allocatedBytes.addAndGet(-image.getByteSize());
+    }
+
+    /**
+     * Copies the pixels of the image outside the heap. The source image is returned when the off-heap store is
+     * disabled, when the layout of the image is not supported or when the allocation fails.
+     *
+     * @param image
+     *            the decoded image
+     * @return the image backed by an off-heap buffer or the source image
+     */
+    public static PlanarImage store(PlanarImage image) {
+        if (MODE == Mode.NONE || isOffHeap(image) || !isSupported(image)) {
+            return image;
+        }
+
+        int bands = image.getSampleModel().getNumBands();
+        int dataType = image.getSampleModel().getDataType();
+        long byteLength = getByteLength(image);
+
+        File file = null;
+        try {
+            ByteBuffer buffer;
+            if (MODE == Mode.MAPPED) {
+                file = File.createTempFile("frame_", ".raw", getScratchDir()); //$NON-NLS-1$ //$NON-NLS-2$
+                try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); //$NON-NLS-1$
+                                FileChannel channel = raf.getChannel()) {
+                    // The mapping remains valid after closing the channel
+                    buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, byteLength);
+                }
+            } else {
+                buffer = ByteBuffer.allocateDirect((int) byteLength);
+            }
+            writePixels(image, buffer);
+            // The decoded tiles are now useless
+            JAI.getDefaultInstance().getTileCache().removeTiles(image);
+            return wrap(buffer, dataType, image.getBounds(), bands, image.getColorModel(), file);
+        } catch (IOException | OutOfMemoryError e) {
+            LOGGER.warn("Cannot store the image outside the heap: {}", e.getMessage()); //$NON-NLS-1$
+            if (file != null && !file.delete()) {
+                file.deleteOnExit();
+            }
+        }
+        return image;
+    }
+
+    /**
+     * @return true if the pixels of the image can be stored in a NioDataBuffer
+     */
+    public static boolean isSupported(RenderedImage image) {
+        if (image == null) {
+            return false;
+        }
+        SampleModel sm = image.getSampleModel();
+        return sm instanceof ComponentSampleModel && NioDataBuffer.isDataTypeSupported(sm.getDataType())
+            && getByteLength(image) <= Integer.MAX_VALUE;
+    }
+
+    /**
+     * @return true if the image is an OffHeapImage or a tiled view of an OffHeapImage
+     */
+    public static boolean isOffHeap(PlanarImage image) {
+        if (image instanceof OffHeapImage) {
+            return true;
+        }
+        return image instanceof RenderedOp && "Null".equalsIgnoreCase(((RenderedOp) image).getOperationName()) //$NON-NLS-1$
+            && image.getNumSources() > 0 && image.getSourceImage(0) instanceof OffHeapImage;
+    }
+
+    /**
+     * @return the size in bytes of the pixels of the image stored without padding
+     */
+    public static long getByteLength(RenderedImage image) {
+        SampleModel sm = image.getSampleModel();
+        return (long) image.getWidth() * image.getHeight() * sm.getNumBands()
+            * DataBuffer.getDataTypeSize(sm.getDataType()) / 8;
+    }
+
+    /**
+     * Builds an image backed by the buffer. The pixels must be stored in the native byte order, pixel interleaved
+     * and without padding.
+     *
+     * @param buffer
+     *            the direct or memory-mapped buffer
+     * @param dataType
+     *            the data type of the DataBuffer
+     * @param bounds
+     *            the bounds of the image
+     * @param bands
+     *            the number of bands
+     * @param colorModel
+     *            the color model (can be null)
+     * @param scratchFile
+     *            the file deleted when the image is disposed (can be null)
+     * @return the image
+     */
+    public static OffHeapImage wrap(ByteBuffer buffer, int dataType, Rectangle bounds, int bands,
+        ColorModel colorModel, File scratchFile) {
+        int[] bandOffsets = new int[bands];
+        for (int i = 0; i < bands; i++) {
+            bandOffsets[i] = i;
+        }
+        buffer.order(ByteOrder.nativeOrder());
+        SampleModel sm = new PixelInterleavedSampleModel(dataType, bounds.width, bounds.height, bands,
+            bounds.width * bands, bandOffsets);
+        NioDataBuffer dataBuffer = new NioDataBuffer(dataType, buffer, bounds.width * bounds.height * bands);
+        WritableRaster raster = Raster.createWritableRaster(sm, dataBuffer, new Point(bounds.x, bounds.y));
+        ColorModel cm = colorModel;
+        if (cm != null && !cm.isCompatibleSampleModel(sm)) {
+            cm = null;
+        }
+        allocatedBytes.addAndGet(buffer.capacity());
+        return new OffHeapImage(raster, cm, scratchFile);
+    }
+
+    /**
+     * Copies the pixels of the image into the buffer in the native byte order, pixel interleaved and without padding.
+     *
+     * @param image
+     *            the image (must be supported)
+     * @param buffer
+     *            the destination buffer
+     * @see #isSupported(RenderedImage)
+     */
+    public static void writePixels(RenderedImage image, ByteBuffer buffer) {
+        buffer.order(ByteOrder.nativeOrder());
+        ByteBuffer byteBuffer = buffer.duplicate();
+        ShortBuffer shortBuffer = null;
+        IntBuffer intBuffer = null;
+        Object row;
+        int width = image.getWidth();
+        int bands = image.getSampleModel().getNumBands();
+        int maxRowLength = Math.min(image.getTileWidth(), width) * bands;
+        int dataType = image.getSampleModel().getDataType();
+        if (dataType == DataBuffer.TYPE_USHORT || dataType == DataBuffer.TYPE_SHORT) {
+            shortBuffer = buffer.asShortBuffer();
+            row = new short[maxRowLength];
+        } else if (dataType == DataBuffer.TYPE_INT) {
+            intBuffer = buffer.asIntBuffer();
+            row = new int[maxRowLength];
+        } else {
+            row = new byte[maxRowLength];
+        }
+
+        Rectangle bounds = new Rectangle(image.getMinX(), image.getMinY(), width, image.getHeight());
+        int maxTileX = image.getMinTileX() + image.getNumXTiles() - 1;
+        int maxTileY = image.getMinTileY() + image.getNumYTiles() - 1;
+        for (int ty = image.getMinTileY(); ty <= maxTileY; ty++) {
+            for (int tx = image.getMinTileX(); tx <= maxTileX; tx++) {
+                Raster tile = image.getTile(tx, ty);
+                Rectangle rect = tile.getBounds().intersection(bounds);
+                if (rect.isEmpty()) {
+                    continue;
+                }
+                int rowLength = rect.width * bands;
+                for (int y = rect.y; y < rect.y + rect.height; y++) {
+                    row = tile.getDataElements(rect.x, y, rect.width, 1, row);
+                    int index = ((y - bounds.y) * width + (rect.x - bounds.x)) * bands;
+                    if (shortBuffer != null) {
+                        shortBuffer.position(index);
+                        shortBuffer.put((short[]) row, 0, rowLength);
+                    } else if (intBuffer != null) {
+                        intBuffer.position(index);
+                        intBuffer.put((int[]) row, 0, rowLength);
+                    } else {
+                        byteBuffer.position(index);
+                        byteBuffer.put((byte[]) row, 0, rowLength);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Deletes the scratch files left by a previous session which has crashed. Must be called at startup, before storing
+     * any image.
+     */
+    public static void deleteScratchFiles() {
+        FileUtil.deleteDirectoryContents(new File(AppProperties.FILE_CACHE_DIR, SCRATCH_DIR), 1, 0);
+    }
+
+    private static synchronized File getScratchDir() {
+        if (scratchDir == null) {
+            scratchDir = new File(AppProperties.FILE_CACHE_DIR, SCRATCH_DIR);
+            scratchDir.mkdirs();
+        }
+        return scratchDir;
+    }
+}
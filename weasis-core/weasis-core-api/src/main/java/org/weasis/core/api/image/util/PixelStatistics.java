@@ -0,0 +1,208 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.core.api.image.util;
+
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+
+import org.weasis.core.api.util.metrics.MetricsRegistry;
+import org.weasis.core.api.util.metrics.Timer;
+
+/**
+ * Minimum, maximum and coarse histogram of the pixel values of an image, computed in a single pass over the tiles.
+ * <p>
+ * The histogram is computed only for the integer data types. Its bins cover the range of the possible values given by
+ * the caller (e.g. the range of the bits stored), at most {@link #MAX_BINS} bins of the same width.
+ */
+public final class PixelStatistics {
+
+    public static final int MAX_BINS = 1024;
+
+    private final double min;
+    private final double max;
+    private final int[] bins;
+    private final int binLow;
+    private final int binWidth;
+
+    private PixelStatistics(double min, double max, int[] bins, int binLow, int binWidth) {
+        this.min = min;
+        this.max = max;
+        this.bins = bins;
+        this.binLow = binLow;
+        this.binWidth = binWidth;
+    }
+
+    /**
+     * @return the minimum value or NaN when all the values are excluded
+     */
+    public double getMin() {
+        return min;
+    }
+
+    /**
+     * @return the maximum value or NaN when all the values are excluded
+     */
+    public double getMax() {
+        return max;
+    }
+
+    public boolean hasHistogram() {
+        return bins != null;
+    }
+
+    /**
+     * @return the counts of the bins (not a copy) or null when there is no histogram
+     */
+    public int[] getBins() {
+        return bins;
+    }
+
+    /**
+     * @return the lowest value of the first bin
+     */
+    public int getBinLow() {
+        return binLow;
+    }
+
+    /**
+     * @return the number of consecutive values in a bin
+     */
+    public int getBinWidth() {
+        return binWidth;
+    }
+
+    /**
+     * Computes the statistics of all the bands of the image.
+     *
+     * @param image
+     *            the image
+     * @param excludedMin
+     *            the lowest value of the range of excluded values (e.g. pixel padding), null when no exclusion
+     * @param excludedMax
+     *            the highest value of the range of excluded values
+     * @param lowest
+     *            the lowest value of the histogram, the lower values are counted in the first bin
+     * @param highest
+     *            the highest value of the histogram, the higher values are counted in the last bin
+     * @return the statistics
+     */
+    public static PixelStatistics compute(RenderedImage image, Double excludedMin, Double excludedMax, int lowest,
+        int highest) {
+        Timer timer = MetricsRegistry.timer("image.statistics"); //$NON-NLS-1$
+        long start = timer.start();
+        try {
+            int dataType = image.getSampleModel().getDataType();
+            boolean integral = dataType == DataBuffer.TYPE_BYTE || dataType == DataBuffer.TYPE_USHORT
+                || dataType == DataBuffer.TYPE_SHORT || dataType == DataBuffer.TYPE_INT;
+            if (!integral) {
+                return computeFloat(image, excludedMin, excludedMax);
+            }
+
+            long range = (long) highest - lowest + 1;
+            int width = (int) Math.max(1L, (range + MAX_BINS - 1) / MAX_BINS);
+            int[] histo = range > 0 ? new int[(int) ((range + width - 1) / width)] : null;
+            int lastBin = histo == null ? 0 : histo.length - 1;
+            int exMin = excludedMin == null ? Integer.MAX_VALUE : (int) Math.ceil(excludedMin);
+            int exMax = excludedMax == null ? Integer.MIN_VALUE : (int) Math.floor(excludedMax);
+
+            int min = Integer.MAX_VALUE;
+            int max = Integer.MIN_VALUE;
+            int numBands = image.getSampleModel().getNumBands();
+            int[] row = null;
+            for (int ty = image.getMinTileY(); ty < image.getMinTileY() + image.getNumYTiles(); ty++) {
+                for (int tx = image.getMinTileX(); tx < image.getMinTileX() + image.getNumXTiles(); tx++) {
+                    Raster tile = image.getTile(tx, ty);
+                    int x0 = Math.max(tile.getMinX(), image.getMinX());
+                    int y0 = Math.max(tile.getMinY(), image.getMinY());
+                    int x1 = Math.min(tile.getMinX() + tile.getWidth(), image.getMinX() + image.getWidth());
+                    int y1 = Math.min(tile.getMinY() + tile.getHeight(), image.getMinY() + image.getHeight());
+                    int w = x1 - x0;
+                    if (w <= 0) {
+                        continue;
+                    }
+                    if (row == null || row.length < w) {
+                        row = new int[w];
+                    }
+                    for (int b = 0; b < numBands; b++) {
+                        for (int y = y0; y < y1; y++) {
+                            tile.getSamples(x0, y, w, 1, b, row);
+                            for (int i = 0; i < w; i++) {
+                                int val = row[i];
+                                if (val >= exMin && val <= exMax) {
+                                    continue;
+                                }
+                                if (val < min) {
+                                    min = val;
+                                }
+                                if (val > max) {
+                                    max = val;
+                                }
+                                if (histo != null) {
+                                    int index = (int) (((long) val - lowest) / width);
+                                    histo[index < 0 ? 0 : index > lastBin ? lastBin : index]++;
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+            if (min > max) {
+                return new PixelStatistics(Double.NaN, Double.NaN, histo, lowest, width);
+            }
+            return new PixelStatistics(min, max, histo, lowest, width);
+        } finally {
+            timer.stop(start);
+        }
+    }
+
+    private static PixelStatistics computeFloat(RenderedImage image, Double excludedMin, Double excludedMax) {
+        double exMin = excludedMin == null ? Double.POSITIVE_INFINITY : excludedMin;
+        double exMax = excludedMax == null ? Double.NEGATIVE_INFINITY : excludedMax;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        int numBands = image.getSampleModel().getNumBands();
+        double[] row = null;
+        for (int ty = image.getMinTileY(); ty < image.getMinTileY() + image.getNumYTiles(); ty++) {
+            for (int tx = image.getMinTileX(); tx < image.getMinTileX() + image.getNumXTiles(); tx++) {
+                Raster tile = image.getTile(tx, ty);
+                int x0 = Math.max(tile.getMinX(), image.getMinX());
+                int y0 = Math.max(tile.getMinY(), image.getMinY());
+                int x1 = Math.min(tile.getMinX() + tile.getWidth(), image.getMinX() + image.getWidth());
+                int y1 = Math.min(tile.getMinY() + tile.getHeight(), image.getMinY() + image.getHeight());
+                int w = x1 - x0;
+                if (w <= 0) {
+                    continue;
+                }
+                if (row == null || row.length < w) {
+                    row = new double[w];
+                }
+                for (int b = 0; b < numBands; b++) {
+                    for (int y = y0; y < y1; y++) {
+                        tile.getSamples(x0, y, w, 1, b, row);
+                        for (int i = 0; i < w; i++) {
+                            double val = row[i];
+                            if (Double.isNaN(val) || (val >= exMin && val <= exMax)) {
+                                continue;
+                            }
+                            min = Math.min(min, val);
+                            max = Math.max(max, val);
+                        }
+                    }
+                }
+            }
+        }
+        if (min > max) {
+            return new PixelStatistics(Double.NaN, Double.NaN, null, 0, 1);
+        }
+        return new PixelStatistics(min, max, null, 0, 1);
+    }
+}
@@ -0,0 +1,23 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.core.api.image.util;
+
+import java.awt.image.RenderedImage;
+
+/**
+ * An image reading its tiles lazily from a file whose {@link RenderedImage#getTile(int, int)} can be called by several
+ * threads, the reads sharing the stream of the reader being serialized by the implementation.
+ *
+ * @see TilePrefetcher
+ */
+public interface ThreadSafeTileSource extends RenderedImage {
+
+}
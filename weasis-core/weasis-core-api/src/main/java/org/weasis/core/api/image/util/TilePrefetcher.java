@@ -0,0 +1,215 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.core.api.image.util;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.RenderedImage;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.media.jai.OpImage;
+import javax.media.jai.PlanarImage;
+import javax.media.jai.RenderedImageAdapter;
+import javax.media.jai.RenderedOp;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.weasis.core.api.service.BundleTools;
+import org.weasis.core.api.util.ThreadUtil;
+import org.weasis.core.api.util.metrics.MetricsRegistry;
+import org.weasis.core.api.util.metrics.Timer;
+
+/**
+ * Computes concurrently the tiles of a region of an image before drawing it. Without prefetching, the tiles of the
+ * display operations (filters, LUTs, statistics...) are computed one by one in the thread which paints the image.
+ * <p>
+ * All the instances share the same work-stealing pool. Each view has its own instance: a new request cancels the tiles
+ * not yet started of the previous one.
+ * <p>
+ * Only the operations having a tile cache and computed from images in memory or from images read lazily implementing
+ * {@link ThreadSafeTileSource} (e.g. the uncompressed DICOM frames) are prefetched. The other images read lazily from a
+ * file (e.g. ImageRead) share the stream of their reader and cannot be read by several threads.
+ */
+public final class TilePrefetcher {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TilePrefetcher.class);
+
+    /**
+     * Number of threads computing the tiles, with 0 or 1 the tiles are computed in the calling thread. The default value
+     * is the number of processors.
+     */
+    public static final String P_PREFETCH_THREADS = "weasis.image.prefetch.threads"; //$NON-NLS-1$
+    private static final int NB_THREADS = BundleTools.SYSTEM_PREFERENCES.getIntProperty(P_PREFETCH_THREADS,
+        Runtime.getRuntime().availableProcessors());
+
+    private static ForkJoinPool pool;
+
+    // Maximum depth of the operation chain checked for sources read from a file
+    private static final int MAX_DEPTH = 32;
+
+    private final AtomicReference<AtomicBoolean> current = new AtomicReference<>();
+
+    public static boolean isEnabled() {
+        return NB_THREADS > 1;
+    }
+
+    private static synchronized ForkJoinPool getPool() {
+        if (pool == null) {
+            pool = ThreadUtil.buildNewForkJoinPool(NB_THREADS, "Tile Prefetch"); //$NON-NLS-1$
+        }
+        return pool;
+    }
+
+    /**
+     * Computes the tiles of the image intersecting the region and waits until they are all computed or the request is
+     * cancelled. When the image is not in the tile cache, the region is mapped to its first source in the cache. Does
+     * nothing when the region contains less than two tiles, when no operation has a tile cache or when the pixels are
+     * read from a file by a reader which is not thread safe.
+     * <p>
+     * Must be called before drawing only when {@link #isEnabled()}, otherwise the tiles are computed serially.
+     *
+     * @param image
+     *            the image to draw
+     * @param region
+     *            the region in the image coordinates
+     * @return false if the request has been cancelled
+     */
+    public boolean prefetch(RenderedImage image, Rectangle region) {
+        if (image == null || region == null) {
+            return true;
+        }
+        PlanarImage img = PlanarImage.wrapRenderedImage(image);
+        Rectangle rect = region;
+        // The tiles of the operations which are not in the tile cache would be computed again when drawing, so
+        // prefetch the region of the first source which keeps its tiles.
+        while (img instanceof RenderedOp || img instanceof OpImage) {
+            PlanarImage rendering = img instanceof RenderedOp ? ((RenderedOp) img).getRendering() : img;
+            if (!(rendering instanceof OpImage) || ((OpImage) rendering).getTileCache() != null
+                || rendering.getNumSources() == 0) {
+                img = rendering;
+                break;
+            }
+            Rectangle visible = rect.intersection(rendering.getBounds());
+            if (visible.isEmpty()) {
+                return true;
+            }
+            rect = ((OpImage) rendering).mapDestRect(visible, 0);
+            img = rendering.getSourceImage(0);
+        }
+        if (!(img instanceof OpImage) || ((OpImage) img).getTileCache() == null || !isInMemory(img, 0)) {
+            // The tiles would be computed from the reader of the file by several threads
+            return true;
+        }
+        Point[] tiles = rect == null || rect.isEmpty() ? null : img.getTileIndices(rect);
+        if (tiles == null || tiles.length < 2) {
+            return true;
+        }
+
+        AtomicBoolean cancelled = new AtomicBoolean();
+        AtomicBoolean previous = current.getAndSet(cancelled);
+        if (previous != null) {
+            previous.set(true);
+        }
+
+        Timer timer = MetricsRegistry.timer("render.prefetch"); //$NON-NLS-1$
+        long start = timer.start();
+        try {
+            if (isEnabled()) {
+                getPool().invoke(new TileAction(img, tiles, 0, tiles.length, cancelled));
+            } else {
+                for (int i = 0; i < tiles.length && !cancelled.get(); i++) {
+                    img.getTile(tiles[i].x, tiles[i].y);
+                }
+            }
+        } catch (Exception | OutOfMemoryError e) {
+            LOGGER.error("Computing the tiles of {}", region, e); //$NON-NLS-1$
+        } finally {
+            timer.stop(start);
+            current.compareAndSet(cancelled, null);
+        }
+        return !cancelled.get();
+    }
+
+    /**
+     * @return true if the pixels of the image are computed only from images in memory or read by a thread safe source
+     */
+    private static boolean isInMemory(RenderedImage image, int depth) {
+        if (image instanceof BufferedImage || image instanceof OffHeapImage || image instanceof ThreadSafeTileSource) {
+            return true;
+        }
+        if (depth > MAX_DEPTH) {
+            return false;
+        }
+        if (image instanceof RenderedOp) {
+            return isInMemory(((RenderedOp) image).getRendering(), depth + 1);
+        }
+        if (image instanceof RenderedImageAdapter) {
+            return isInMemory(((RenderedImageAdapter) image).getWrappedImage(), depth + 1);
+        }
+        if (image instanceof OpImage) {
+            OpImage op = (OpImage) image;
+            // An operation without source reads the pixels elsewhere (e.g. ImageRead)
+            if (op.getNumSources() == 0) {
+                return false;
+            }
+            for (int i = 0; i < op.getNumSources(); i++) {
+                if (!isInMemory(op.getSourceImage(i), depth + 1)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Cancels the tiles not yet started of the current request.
+     */
+    public void cancel() {
+        AtomicBoolean previous = current.getAndSet(null);
+        if (previous != null) {
+            previous.set(true);
+        }
+    }
+
+    private static final class TileAction extends RecursiveAction {
+        private static final long serialVersionUID = -2311537213961270478L;
+
+        private final transient PlanarImage image;
+        private final transient Point[] tiles;
+        private final int from;
+        private final int to;
+        private final transient AtomicBoolean cancelled;
+
+        TileAction(PlanarImage image, Point[] tiles, int from, int to, AtomicBoolean cancelled) {
+            this.image = image;
+            this.tiles = tiles;
+            this.from = from;
+            this.to = to;
+            this.cancelled = cancelled;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new TileAction(image, tiles, from, middle, cancelled),
+                    new TileAction(image, tiles, middle, to, cancelled));
+            } else if (!cancelled.get()) {
+                Point p = tiles[from];
+                image.getTile(p.x, p.y);
+            }
+        }
+    }
+}
@@ -22,6 +22,7 @@ import javax.media.jai.RecyclingTileFactory;
 import javax.media.jai.TileScheduler;
 
 import org.apache.felix.prefs.BackingStore;
+import org.apache.felix.service.command.CommandProcessor;
 import org.osgi.framework.BundleActivator;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.Constants;
@@ -34,6 +35,7 @@ import org.osgi.service.cm.ConfigurationAdmin;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.weasis.core.api.gui.util.AppProperties;
+import org.weasis.core.api.image.op.CombinedLookupDescriptor;
 import org.weasis.core.api.image.op.FormatBinaryDescriptor;
 import org.weasis.core.api.image.op.ImageStatistics2Descriptor;
 import org.weasis.core.api.image.op.ImageStatisticsDescriptor;
@@ -42,12 +44,18 @@ import org.weasis.core.api.image.op.RectifySignedShortDataDescriptor;
 import org.weasis.core.api.image.op.RectifyUShortToShortDataDescriptor;
 import org.weasis.core.api.image.op.ShutterDescriptor;
 import org.weasis.core.api.image.op.ThresholdToBinDescriptor;
+import org.weasis.core.api.image.util.InstrumentedTileCache;
 import org.weasis.core.api.image.util.JAIUtil;
+import org.weasis.core.api.image.util.OffHeapImageStore;
 import org.weasis.core.api.media.data.Codec;
+import org.weasis.core.api.media.data.ImageCache;
+import org.weasis.core.api.media.data.ImageElement;
 import org.weasis.core.api.service.AuditLog;
 import org.weasis.core.api.service.BundleTools;
 import org.weasis.core.api.service.DataFileBackingStoreImpl;
+import org.weasis.core.api.util.MemoryManager;
 import org.weasis.core.api.util.ProxyDetector;
+import org.weasis.core.api.util.metrics.MetricsRegistry;
 
 public class Activator implements BundleActivator, ServiceListener {
     private static final Logger LOGGER = LoggerFactory.getLogger(Activator.class);
@@ -77,9 +85,38 @@ public class Activator implements BundleActivator, ServiceListener {
         JAIUtil.registerOp(or, new ThresholdToBinDescriptor());
         JAIUtil.registerOp(or, new RectifySignedShortDataDescriptor());
         JAIUtil.registerOp(or, new RectifyUShortToShortDataDescriptor());
-
-        // Set 1/4 of the total memory for TileCache
-        jai.getTileCache().setMemoryCapacity(Runtime.getRuntime().maxMemory() / 4);
+        JAIUtil.registerOp(or, new CombinedLookupDescriptor());
+
+        // The memory-mapped frames of a session which has crashed are not deleted on exit
+        OffHeapImageStore.deleteScratchFiles();
+
+        // Set 1/4 of the total memory for TileCache, reduced down to 1/16 when the decoded image cache is full
+        long maxTileCache = Runtime.getRuntime().maxMemory() / 4;
+        InstrumentedTileCache tileCache = new InstrumentedTileCache(maxTileCache);
+        tileCache.setCapacityProvider(() -> {
+            if (OffHeapImageStore.isEnabled()) {
+                // The decoded images are not in the heap
+                return maxTileCache;
+            }
+            ImageCache imageCache = ImageElement.getImageCache();
+            double fill = imageCache.getMaxBytes() <= 0 ? 0.0
+                : Math.min(1.0, imageCache.getCurrentBytes() / (double) imageCache.getMaxBytes());
+            return (long) (maxTileCache * (1.0 - 0.75 * fill));
+        }, maxTileCache / 4, maxTileCache);
+        jai.setTileCache(tileCache);
+        MemoryManager.register("JAI tile cache", JAIUtil::releaseCacheMemory); //$NON-NLS-1$
+
+        // Register "weasis:tilecache" command
+        Dictionary<String, Object> dict = new Hashtable<>();
+        dict.put(CommandProcessor.COMMAND_SCOPE, "weasis"); //$NON-NLS-1$
+        dict.put(CommandProcessor.COMMAND_FUNCTION, InstrumentedTileCache.functions);
+        bundleContext.registerService(InstrumentedTileCache.class.getName(), tileCache, dict);
+
+        // Register "weasis:metrics" command
+        Dictionary<String, Object> metricsDict = new Hashtable<>();
+        metricsDict.put(CommandProcessor.COMMAND_SCOPE, "weasis"); //$NON-NLS-1$
+        metricsDict.put(CommandProcessor.COMMAND_FUNCTION, MetricsRegistry.functions);
+        bundleContext.registerService(MetricsRegistry.class.getName(), new MetricsRegistry(), metricsDict);
 
         RecyclingTileFactory recyclingTileFactory = new RecyclingTileFactory();
         RenderingHints rh = jai.getRenderingHints();
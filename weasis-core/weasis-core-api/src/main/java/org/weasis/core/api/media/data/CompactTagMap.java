@@ -0,0 +1,319 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.core.api.media.data;
+
+import java.lang.ref.WeakReference;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compact map of tags. The entries are stored in arrays sorted by the dense index of the tags (see
+ * {@link TagW#getIndex()}), so there is no entry object per tag and a lookup is a binary search on a primitive array
+ * without allocation.
+ * <p>
+ * The short string values of the tags repeated in all the instances of a study (e.g. UIDs, modality, patient name,
+ * see {@link #internValues(TagW...)}) are shared through a bounded pool of weak references, so they are stored once.
+ * <p>
+ * The map can be read by several threads while being modified: each modification publishes a consistent snapshot of
+ * the arrays (copy-on-write when the entries are moved) and the reads use a single snapshot without locking. The
+ * modifications are synchronized. The iterators are weakly consistent, they never throw
+ * {@link java.util.ConcurrentModificationException}. Like {@link java.util.HashMap}, this map accepts null values.
+ */
+public class CompactTagMap extends AbstractMap<TagW, Object> {
+
+    private static final int MAX_INTERNED_LENGTH = 64;
+    private static final int MAX_INTERNED_VALUES = 4096;
+    private static final Set<TagW> INTERNED_TAGS = ConcurrentHashMap.newKeySet();
+    // The values are collected when no map references them anymore
+    private static final Map<String, WeakReference<String>> INTERNED_VALUES = new WeakHashMap<>();
+    private static final Snapshot EMPTY = new Snapshot(new int[0], new TagW[0], new Object[0], 0);
+
+    private volatile Snapshot data = EMPTY;
+    private transient Set<Entry<TagW, Object>> entrySet;
+
+    static {
+        internValues(TagW.PatientPseudoUID, TagW.SubseriesInstanceUID);
+    }
+
+    public CompactTagMap() {
+        // Starts with the shared empty snapshot
+    }
+
+    public CompactTagMap(Map<TagW, Object> map) {
+        this();
+        putAll(map);
+    }
+
+    /**
+     * Immutable view of the arrays: the entries below size are never moved, only a value can be replaced.
+     */
+    private static final class Snapshot {
+        private final int[] indexes;
+        private final TagW[] keys;
+        private final Object[] values;
+        private final int size;
+
+        Snapshot(int[] indexes, TagW[] keys, Object[] values, int size) {
+            this.indexes = indexes;
+            this.keys = keys;
+            this.values = values;
+            this.size = size;
+        }
+
+        int indexOf(Object key) {
+            if (key instanceof TagW) {
+                // The equal tags have the same index
+                return Arrays.binarySearch(indexes, 0, size, ((TagW) key).getIndex());
+            }
+            return -1;
+        }
+    }
+
+    @Override
+    public int size() {
+        return data.size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return data.indexOf(key) >= 0;
+    }
+
+    @Override
+    public Object get(Object key) {
+        Snapshot d = data;
+        int pos = d.indexOf(key);
+        return pos >= 0 ? d.values[pos] : null;
+    }
+
+    @Override
+    public synchronized Object put(TagW key, Object value) {
+        Snapshot d = data;
+        int index = key.getIndex();
+        int pos = Arrays.binarySearch(d.indexes, 0, d.size, index);
+        Object val = intern(key, value);
+        if (pos >= 0) {
+            // Replacing a reference is atomic, the snapshots still pair the tag with its value
+            Object old = d.values[pos];
+            d.values[pos] = val;
+            data = d;
+            return old;
+        }
+        pos = -(pos + 1);
+        int size = d.size;
+        if (pos == size && size < d.indexes.length) {
+            // Appended after the entries visible in the current snapshot
+            d.indexes[pos] = index;
+            d.keys[pos] = key;
+            d.values[pos] = val;
+            data = new Snapshot(d.indexes, d.keys, d.values, size + 1);
+            return null;
+        }
+        int capacity = size < d.indexes.length ? d.indexes.length : size == 0 ? 8 : size + (size >> 1);
+        int[] indexes = new int[capacity];
+        TagW[] keys = new TagW[capacity];
+        Object[] values = new Object[capacity];
+        System.arraycopy(d.indexes, 0, indexes, 0, pos);
+        System.arraycopy(d.keys, 0, keys, 0, pos);
+        System.arraycopy(d.values, 0, values, 0, pos);
+        int moved = size - pos;
+        if (moved > 0) {
+            System.arraycopy(d.indexes, pos, indexes, pos + 1, moved);
+            System.arraycopy(d.keys, pos, keys, pos + 1, moved);
+            System.arraycopy(d.values, pos, values, pos + 1, moved);
+        }
+        indexes[pos] = index;
+        keys[pos] = key;
+        values[pos] = val;
+        data = new Snapshot(indexes, keys, values, size + 1);
+        return null;
+    }
+
+    @Override
+    public synchronized Object remove(Object key) {
+        Snapshot d = data;
+        int pos = d.indexOf(key);
+        if (pos < 0) {
+            return null;
+        }
+        Object old = d.values[pos];
+        int size = d.size - 1;
+        int[] indexes = new int[size];
+        TagW[] keys = new TagW[size];
+        Object[] values = new Object[size];
+        System.arraycopy(d.indexes, 0, indexes, 0, pos);
+        System.arraycopy(d.keys, 0, keys, 0, pos);
+        System.arraycopy(d.values, 0, values, 0, pos);
+        int moved = size - pos;
+        if (moved > 0) {
+            System.arraycopy(d.indexes, pos + 1, indexes, pos, moved);
+            System.arraycopy(d.keys, pos + 1, keys, pos, moved);
+            System.arraycopy(d.values, pos + 1, values, pos, moved);
+        }
+        data = new Snapshot(indexes, keys, values, size);
+        return old;
+    }
+
+    @Override
+    public synchronized void clear() {
+        data = EMPTY;
+    }
+
+    /**
+     * Reduces the capacity of the arrays to the number of tags, e.g. when all the tags of an instance have been read.
+     */
+    public synchronized void trimToSize() {
+        Snapshot d = data;
+        if (d.size < d.indexes.length) {
+            data = new Snapshot(Arrays.copyOf(d.indexes, d.size), Arrays.copyOf(d.keys, d.size),
+                Arrays.copyOf(d.values, d.size), d.size);
+        }
+    }
+
+    /**
+     * Shares the string values of these tags between all the maps. Only the tags having the same value in many
+     * instances should be added.
+     *
+     * @param tags
+     *            the tags whose values are repeated
+     */
+    public static void internValues(TagW... tags) {
+        for (TagW tag : tags) {
+            if (tag != null) {
+                INTERNED_TAGS.add(tag);
+            }
+        }
+    }
+
+    private static Object intern(TagW key, Object value) {
+        if (value instanceof String && ((String) value).length() <= MAX_INTERNED_LENGTH
+            && INTERNED_TAGS.contains(key)) {
+            String str = (String) value;
+            synchronized (INTERNED_VALUES) {
+                WeakReference<String> ref = INTERNED_VALUES.get(str);
+                String val = ref == null ? null : ref.get();
+                if (val != null) {
+                    return val;
+                }
+                if (INTERNED_VALUES.size() >= MAX_INTERNED_VALUES) {
+                    INTERNED_VALUES.clear();
+                }
+                INTERNED_VALUES.put(str, new WeakReference<>(str));
+            }
+        }
+        return value;
+    }
+
+    @Override
+    public Set<Entry<TagW, Object>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<Entry<TagW, Object>>() {
+
+                @Override
+                public Iterator<Entry<TagW, Object>> iterator() {
+                    return new EntryIterator();
+                }
+
+                @Override
+                public int size() {
+                    return CompactTagMap.this.size();
+                }
+
+                @Override
+                public void clear() {
+                    CompactTagMap.this.clear();
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    private class EntryIterator implements Iterator<Entry<TagW, Object>> {
+        // The entries at the creation of the iterator
+        private final Snapshot snapshot = data;
+        private int cursor;
+        private TagW last;
+
+        @Override
+        public boolean hasNext() {
+            return cursor < snapshot.size;
+        }
+
+        @Override
+        public Entry<TagW, Object> next() {
+            if (cursor >= snapshot.size) {
+                throw new NoSuchElementException();
+            }
+            last = snapshot.keys[cursor++];
+            return new TagEntry(last);
+        }
+
+        @Override
+        public void remove() {
+            if (last == null) {
+                throw new IllegalStateException();
+            }
+            CompactTagMap.this.remove(last);
+            last = null;
+        }
+    }
+
+    private class TagEntry implements Entry<TagW, Object> {
+        private final TagW key;
+
+        TagEntry(TagW key) {
+            this.key = key;
+        }
+
+        @Override
+        public TagW getKey() {
+            return key;
+        }
+
+        @Override
+        public Object getValue() {
+            return get(key);
+        }
+
+        @Override
+        public Object setValue(Object value) {
+            return put(key, value);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Entry)) {
+                return false;
+            }
+            Entry<?, ?> e = (Entry<?, ?>) obj;
+            Object value = getValue();
+            return key.equals(e.getKey()) && (value == null ? e.getValue() == null : value.equals(e.getValue()));
+        }
+
+        @Override
+        public int hashCode() {
+            Object value = getValue();
+            return key.hashCode() ^ (value == null ? 0 : value.hashCode());
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + getValue(); //$NON-NLS-1$
+        }
+    }
+}
@@ -0,0 +1,221 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.core.api.media.data;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.weasis.core.api.gui.util.Filter;
+import org.weasis.core.api.service.BundleTools;
+
+/**
+ * Reads in advance the next frames of a stack according to the direction and the speed of the scrolling (or of the
+ * cine). The number of frames read in advance is adapted to the measured frame rate and to the time required for
+ * reading an image, so the decoding stays ahead of the display.
+ *
+ * @param <E>
+ *            the type of image
+ */
+public class FramePrefetcher<E extends ImageElement> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FramePrefetcher.class);
+
+    public static final String PREFETCH_MAX_FRAMES = "weasis.prefetch.max.frames"; //$NON-NLS-1$
+
+    private static final int MIN_WINDOW = 2;
+    private static final int MAX_WINDOW =
+        Math.max(MIN_WINDOW, BundleTools.SYSTEM_PREFERENCES.getIntProperty(PREFETCH_MAX_FRAMES, 24));
+    // Beyond this delay between two frames, the scrolling is considered as a new sequence
+    private static final long IDLE_NANOS = 1_000_000_000L;
+    // Weight of the last measure in the moving averages
+    private static final double SMOOTHING = 0.3;
+
+    private final Map<E, Long> pending = new LinkedHashMap<>();
+
+    private MediaSeries<E> series;
+    private Filter<E> filter;
+    private Comparator<E> sort;
+    private List<E> images = new ArrayList<>();
+
+    private int lastIndex = -1;
+    private long lastTime;
+    // Signed velocity in frames per second (negative when scrolling backward)
+    private double velocity;
+    // Time (in seconds) between the request and the availability of an image
+    private double readingTime = 0.05;
+    private long nbFrames;
+    private long nbHits;
+
+    /**
+     * Updates the position in the stack and requests the reading of the next frames.
+     *
+     * @param series
+     *            the series displayed in the view
+     * @param filter
+     *            the filter of the view (can be null)
+     * @param sort
+     *            the sorting of the view
+     * @param index
+     *            the index of the displayed frame
+     * @param loop
+     *            true when the first frame follows the last one (cine)
+     */
+    public synchronized void update(MediaSeries<E> series, Filter<E> filter, Comparator<E> sort, int index,
+        boolean loop) {
+        if (series == null) {
+            reset();
+            return;
+        }
+        if (series != this.series || filter != this.filter || sort != this.sort
+            || series.size(filter) != images.size()) {
+            this.series = series;
+            this.filter = filter;
+            this.sort = sort;
+            this.images = series.copyOfMedias(filter, sort);
+            clearPending();
+            lastIndex = -1;
+        }
+        int size = images.size();
+        if (index < 0 || index >= size) {
+            return;
+        }
+
+        collectReadingTimes();
+        long now = System.nanoTime();
+        if (lastIndex >= 0 && index != lastIndex) {
+            nbFrames++;
+            if (images.get(index).isImageInCache()) {
+                nbHits++;
+            }
+            int delta = index - lastIndex;
+            if (loop && Math.abs(delta) > size / 2) {
+                // Wrap around at the end of the stack
+                delta -= Integer.signum(delta) * size;
+            }
+            long elapsed = now - lastTime;
+            if (elapsed > IDLE_NANOS || elapsed <= 0) {
+                velocity = Integer.signum(delta);
+            } else {
+                double instant = delta * 1e9 / elapsed;
+                velocity = Math.signum(instant) == Math.signum(velocity)
+                    ? SMOOTHING * instant + (1.0 - SMOOTHING) * velocity : instant;
+            }
+        }
+        if (index != lastIndex) {
+            lastIndex = index;
+            lastTime = now;
+            prefetch(index, loop);
+        }
+    }
+
+    private void prefetch(int index, boolean loop) {
+        int size = images.size();
+        int direction = velocity < 0 ? -1 : 1;
+        int window = getWindowSize();
+        Set<E> expected = new HashSet<>();
+        // Request the frames in display order, the loader keeps the order for the same priority
+        for (int i = 1; i <= window; i++) {
+            int k = index + direction * i;
+            if (loop) {
+                k = Math.floorMod(k, size);
+            } else if (k < 0 || k >= size) {
+                break;
+            }
+            E img = images.get(k);
+            if (!expected.add(img) || !img.isReadable()) {
+                continue;
+            }
+            if (!pending.containsKey(img) && !img.isImageInCache()) {
+                pending.put(img, System.nanoTime());
+                img.requestImage(ImageLoader.Priority.PREFETCH);
+            }
+        }
+
+        // The frames left behind are not required anymore
+        for (Iterator<E> iter = pending.keySet().iterator(); iter.hasNext();) {
+            E img = iter.next();
+            if (!expected.contains(img)) {
+                ImageElement.IMAGE_LOADER.cancel(img, ImageLoader.Priority.PREFETCH);
+                iter.remove();
+            }
+        }
+    }
+
+    private void collectReadingTimes() {
+        long now = System.nanoTime();
+        for (Iterator<Entry<E, Long>> iter = pending.entrySet().iterator(); iter.hasNext();) {
+            Entry<E, Long> entry = iter.next();
+            E img = entry.getKey();
+            if (img.isImageInCache()) {
+                double time = (now - entry.getValue()) / 1e9;
+                readingTime = SMOOTHING * time + (1.0 - SMOOTHING) * readingTime;
+                iter.remove();
+            } else if (!ImageElement.IMAGE_LOADER.isLoading(img)) {
+                // Failed or cancelled
+                iter.remove();
+            }
+        }
+    }
+
+    /**
+     * @return the number of frames to read in advance for the current speed
+     */
+    public synchronized int getWindowSize() {
+        // Frames displayed while reading one image, doubled to absorb the variations of the reading time
+        int frames = (int) Math.ceil(Math.abs(velocity) * readingTime * 2.0);
+        return Math.max(MIN_WINDOW, Math.min(MAX_WINDOW, frames + MIN_WINDOW));
+    }
+
+    /**
+     * @return the frame rate (frames per second) of the last frames
+     */
+    public synchronized double getFrameRate() {
+        return Math.abs(velocity);
+    }
+
+    /**
+     * @return the ratio of the frames which were already read when they have been displayed
+     */
+    public synchronized double getHitRatio() {
+        return nbFrames == 0 ? 0.0 : (double) nbHits / nbFrames;
+    }
+
+    public synchronized void reset() {
+        if (nbFrames > 0) {
+            LOGGER.debug("Prefetch: {} frames at {} fps, {}% read in advance", nbFrames, //$NON-NLS-1$
+                Math.round(Math.abs(velocity)), Math.round(getHitRatio() * 100.0));
+        }
+        clearPending();
+        series = null;
+        filter = null;
+        sort = null;
+        images = new ArrayList<>();
+        lastIndex = -1;
+        velocity = 0.0;
+        nbFrames = 0;
+        nbHits = 0;
+    }
+
+    private void clearPending() {
+        for (E img : pending.keySet()) {
+            ImageElement.IMAGE_LOADER.cancel(img, ImageLoader.Priority.PREFETCH);
+        }
+        pending.clear();
+    }
+}
@@ -0,0 +1,74 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.core.api.media.data;
+
+import javax.media.jai.PlanarImage;
+
+/**
+ * Cache of the decoded images. An implementation can be set with {@link ImageElement#setImageCache(ImageCache)}.
+ *
+ */
+public interface ImageCache {
+
+    PlanarImage get(ImageElement key);
+
+    /**
+     * Adds an image into the cache. When the cache exceeds its capacity, the least recently used images that are not
+     * pinned are evicted.
+     */
+    void put(ImageElement key, PlanarImage image);
+
+    /**
+     * Removes an image from the cache without notifying the eviction.
+     *
+     * @return the previous image or null
+     */
+    PlanarImage remove(ImageElement key);
+
+    boolean contains(ImageElement key);
+
+    /**
+     * Prevents the image to be evicted (typically when the image is displayed). Each call must be balanced with
+     * {@link #unpin(ImageElement)}.
+     */
+    void pin(ImageElement key);
+
+    void unpin(ImageElement key);
+
+    boolean isPinned(ImageElement key);
+
+    /**
+     * Evicts the least recently used images that are not pinned.
+     *
+     * @param bytes
+     *            the amount of memory to release
+     * @return the amount of memory released
+     */
+    long evict(long bytes);
+
+    void clear();
+
+    int size();
+
+    long getMaxBytes();
+
+    void setMaxBytes(long maxBytes);
+
+    long getCurrentBytes();
+
+    long getHitCount();
+
+    long getMissCount();
+
+    long getEvictionCount();
+
+    void resetStatistics();
+}
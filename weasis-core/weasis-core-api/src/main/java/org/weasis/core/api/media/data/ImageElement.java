@@ -14,18 +14,16 @@ import java.awt.Point;
 import java.awt.image.DataBuffer;
 import java.awt.image.IndexColorModel;
 import java.awt.image.RenderedImage;
-import java.awt.image.renderable.ParameterBlock;
 import java.io.IOException;
-import java.lang.ref.Reference;
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 
-import javax.media.jai.JAI;
 import javax.media.jai.PlanarImage;
-import javax.media.jai.RenderedOp;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,42 +32,47 @@ import org.weasis.core.api.gui.util.MathUtil;
 import org.weasis.core.api.image.LutShape;
 import org.weasis.core.api.image.OpManager;
 import org.weasis.core.api.image.measure.MeasurementsAdapter;
+import org.weasis.core.api.image.util.ImagePyramid;
 import org.weasis.core.api.image.util.ImageToolkit;
+import org.weasis.core.api.image.util.OffHeapImage;
+import org.weasis.core.api.image.util.OffHeapImageStore;
+import org.weasis.core.api.image.util.PixelStatistics;
 import org.weasis.core.api.image.util.Unit;
-import org.weasis.core.api.util.ThreadUtil;
+import org.weasis.core.api.service.BundleTools;
+import org.weasis.core.api.util.MemoryManager;
 
 public class ImageElement extends MediaElement {
     private static final Logger LOGGER = LoggerFactory.getLogger(ImageElement.class);
 
-    /*
-     * Imageio issue with native library in multi-thread environment (to avoid JVM crash let only one simultaneous
-     * thread) (https://java.net/jira/browse/JAI_IMAGEIO_CORE-126)
-     *
-     * Try multi-thread reading with new native decoders
+    /**
+     * Number of threads for reading images. By default, half of the available processors (at least two).
      *
-     * public static final ExecutorService IMAGE_LOADER = Executors.newFixedThreadPool(Math.max(1, Runtime.getRuntime()
-     * .availableProcessors() / 2));
+     * The frames of the same file are always decoded one at a time by their reader, so the threads read different
+     * files. Set the value to 1 if a native decoder is not thread-safe
+     * (https://java.net/jira/browse/JAI_IMAGEIO_CORE-126).
      */
-    // TODO evaluate the difference, keep one thread with sun decoder. (seems to hangs on shutdown)
-    public static final ExecutorService IMAGE_LOADER = ThreadUtil.buildNewSingleThreadExecutor("Image Loader"); //$NON-NLS-1$
+    public static final String IMAGE_LOADER_THREADS = "weasis.image.loader.threads"; //$NON-NLS-1$
 
-    private static final SoftHashMap<ImageElement, PlanarImage> mCache = new SoftHashMap<ImageElement, PlanarImage>() {
+    public static final ImageLoader IMAGE_LOADER = new ImageLoader(
+        Math.max(1,
+            BundleTools.SYSTEM_PREFERENCES.getIntProperty(IMAGE_LOADER_THREADS,
+                Math.max(2, Runtime.getRuntime().availableProcessors() / 2))),
+        "Image Loader"); //$NON-NLS-1$
 
-        @Override
-        public void removeElement(Reference<? extends PlanarImage> soft) {
-            ImageElement key = reverseLookup.remove(soft);
-            if (key != null) {
-                hash.remove(key);
-                MediaReader reader = key.getMediaReader();
-                key.setTag(TagW.ImageCache, false);
-                if (reader != null) {
-                    // Close the image stream
-                    reader.close();
-                }
-            }
-        }
-    };
-    protected boolean readable = true;
+    /**
+     * Memory budget (in MB) of the decoded image cache. By default, one third of the maximum heap size or the budget
+     * of the off-heap store when the pixels are stored outside the heap (see {@link OffHeapImageStore#getMaxBytes()}).
+     */
+    public static final String IMAGE_CACHE_SIZE = "weasis.image.cache.size"; //$NON-NLS-1$
+
+    private static volatile ImageCache mCache = buildDefaultImageCache();
+
+    static {
+        // The decoded images not displayed are the first released when the heap is nearly full
+        MemoryManager.register("Image cache", bytes -> mCache.evict(bytes)); //$NON-NLS-1$
+    }
+
+    protected volatile boolean readable = true;
 
     protected double pixelSizeX = 1.0;
     protected double pixelSizeY = 1.0;
@@ -79,6 +82,11 @@ public class ImageElement extends MediaElement {
 
     protected Double minPixelValue;
     protected Double maxPixelValue;
+    // Computed with min and max values when the image is loaded for the first time
+    protected volatile PixelStatistics pixelStatistics;
+
+    // Reductions of the image in the cache, released with it
+    private volatile ImagePyramid pyramid;
 
     public ImageElement(MediaReader mediaIO, Object key) {
         super(mediaIO, key);
@@ -95,23 +103,13 @@ public class ImageElement extends MediaElement {
                 this.minPixelValue = 0.0;
                 this.maxPixelValue = 255.0;
             } else {
-
-                ParameterBlock pb = new ParameterBlock();
-                pb.addSource(img);
-                // ImageToolkit.NOCACHE_HINT to ensure this image won't be stored in tile cache
-                RenderedOp dst = JAI.create("extrema", pb, ImageToolkit.NOCACHE_HINT); //$NON-NLS-1$
-
-                double[][] extrema = (double[][]) dst.getProperty("extrema"); //$NON-NLS-1$
-                double min = Double.MAX_VALUE;
-                double max = -Double.MAX_VALUE;
-                int numBands = dst.getSampleModel().getNumBands();
-
-                for (int i = 0; i < numBands; i++) {
-                    min = Math.min(min, extrema[0][i]);
-                    max = Math.max(max, extrema[1][i]);
-                }
-                this.minPixelValue = min;
-                this.maxPixelValue = max;
+                // Single pass for min, max and histogram
+                PixelStatistics stats = PixelStatistics.compute(img, null, null, getLowestValue(datatype),
+                    getHighestValue(datatype));
+                this.pixelStatistics = stats;
+                // NaN when the image has no valid value
+                this.minPixelValue = Double.isNaN(stats.getMin()) ? 0.0 : stats.getMin();
+                this.maxPixelValue = Double.isNaN(stats.getMax()) ? 0.0 : stats.getMax();
                 // Handle special case when min and max are equal, ex. black image
                 // + 1 to max enables to display the correct value
                 if (this.minPixelValue.equals(this.maxPixelValue)) {
@@ -121,6 +119,30 @@ public class ImageElement extends MediaElement {
         }
     }
 
+    private static int getLowestValue(int datatype) {
+        return datatype == DataBuffer.TYPE_SHORT ? Short.MIN_VALUE : 0;
+    }
+
+    private static int getHighestValue(int datatype) {
+        if (datatype == DataBuffer.TYPE_BYTE) {
+            return 255;
+        } else if (datatype == DataBuffer.TYPE_USHORT) {
+            return 65535;
+        } else if (datatype == DataBuffer.TYPE_SHORT) {
+            return Short.MAX_VALUE;
+        }
+        // No histogram
+        return -1;
+    }
+
+    /**
+     * @return the statistics of the pixel values computed with min and max values, or null when they are not computed
+     *         from the pixels
+     */
+    public PixelStatistics getPixelStatistics() {
+        return pixelStatistics;
+    }
+
     public boolean isImageAvailable() {
         return maxPixelValue != null && minPixelValue != null;
     }
@@ -234,20 +256,92 @@ public class ImageElement extends MediaElement {
         return new MeasurementsAdapter(unitRatio, offsetx, offsety, false, 0, unit.getAbbreviation());
     }
 
+    private static ImageCache buildDefaultImageCache() {
+        long size = BundleTools.SYSTEM_PREFERENCES.getLongProperty(IMAGE_CACHE_SIZE, -1L);
+        long maxMemory = Runtime.getRuntime().maxMemory();
+        long defaultBytes = OffHeapImageStore.isEnabled() ? OffHeapImageStore.getMaxBytes() : maxMemory / 3;
+        long maxBytes = size > 0 ? size * 1024L * 1024L : defaultBytes;
+        return new LruImageCache(maxBytes) {
+
+            @Override
+            protected void imageEvicted(ImageElement key, PlanarImage image) {
+                if (image instanceof OffHeapImage) {
+                    image.dispose();
+                }
+                key.setTag(TagW.ImageCache, false);
+                key.disposePyramid();
+                MediaReader reader = key.getMediaReader();
+                if (reader != null) {
+                    // Close the image stream
+                    reader.close();
+                }
+            }
+        };
+    }
+
+    public static ImageCache getImageCache() {
+        return mCache;
+    }
+
+    /**
+     * Replaces the cache of the decoded images. The images of the previous cache are released.
+     *
+     * @param cache
+     *            the new cache
+     */
+    public static void setImageCache(ImageCache cache) {
+        ImageCache old = mCache;
+        mCache = Objects.requireNonNull(cache);
+        if (old != cache) {
+            old.clear();
+        }
+    }
+
     public boolean isImageInCache() {
-        return mCache.get(this) != null;
+        return mCache.contains(this);
     }
 
     public void removeImageFromCache() {
-        mCache.remove(this);
+        PlanarImage img = mCache.remove(this);
+        if (img instanceof OffHeapImage) {
+            img.dispose();
+        }
         MediaReader reader = this.getMediaReader();
         this.setTag(TagW.ImageCache, false);
+        disposePyramid();
         if (reader != null) {
             // Close the image stream
             reader.close();
         }
     }
 
+    /**
+     * Returns the power of two reductions of the image when it is large enough (see
+     * {@link ImagePyramid#isPyramidRequired(RenderedImage)}). The image is not loaded by this method.
+     *
+     * @return the pyramid of the image in the cache or null
+     */
+    public ImagePyramid getPyramid() {
+        PlanarImage img = mCache.get(this);
+        if (!ImagePyramid.isPyramidRequired(img)) {
+            return null;
+        }
+        ImagePyramid p = pyramid;
+        if (p == null || p.getBase() != img) {
+            p = new ImagePyramid(img);
+            pyramid = p;
+        }
+        return p;
+    }
+
+    private void disposePyramid() {
+        ImagePyramid p = pyramid;
+        pyramid = null;
+        if (p != null) {
+            p.dispose();
+        }
+    }
+
     public boolean hasSameSize(ImageElement image) {
         if (image != null) {
             PlanarImage img = getImage();
@@ -320,22 +414,16 @@ public class ImageElement extends MediaElement {
 
     public synchronized PlanarImage getImage(OpManager manager, boolean findMinMax) {
         try {
-            return getCacheImage(startImageLoading(), manager, findMinMax);
+            return getCacheImage(startImageLoading(ImageLoader.Priority.DISPLAY), manager, findMinMax);
         } catch (OutOfMemoryError e1) {
             /*
              * Appends when loading a big image without tiling, the memory left is not enough for the renderedop (like
              * Extrema)
              */
             LOGGER.warn("Out of MemoryError: {}", this, e1); //$NON-NLS-1$
-            mCache.expungeStaleEntries();
-            System.gc();
-            System.gc();
-            try {
-                Thread.sleep(100);
-            } catch (InterruptedException et) {
-                // Do nothing
-            }
-            return getCacheImage(startImageLoading(), manager, findMinMax);
+            // Release the memory of the caches (the decoded images not displayed first)
+            MemoryManager.releaseAfterOutOfMemory();
+            return getCacheImage(startImageLoading(ImageLoader.Priority.DISPLAY), manager, findMinMax);
         }
     }
     
@@ -361,39 +449,44 @@ public class ImageElement extends MediaElement {
         return getImage(null);
     }
 
-    private PlanarImage startImageLoading() throws OutOfMemoryError {
-        PlanarImage cacheImage;
-        if ((cacheImage = mCache.get(this)) == null && readable && setAsLoading()) {
-            LOGGER.debug("Asking for reading image: {}", this); //$NON-NLS-1$
-            Load ref = new Load();
-            Future<PlanarImage> future = IMAGE_LOADER.submit(ref);
-            PlanarImage img = null;
+    private PlanarImage startImageLoading(ImageLoader.Priority priority) throws OutOfMemoryError {
+        // A cancelled task is submitted again, once
+        for (int i = 0; i < 2; i++) {
+            Future<PlanarImage> future = requestImage(priority);
             try {
-                img = future.get();
-
+                return future.get();
+            } catch (CancellationException e) {
+                LOGGER.debug("Reading of {} has been cancelled", this); //$NON-NLS-1$
             } catch (InterruptedException e) {
-                // Re-assert the thread's interrupted status
+                // Re-assert the thread's interrupted status. The task is not cancelled because it can be shared with
+                // other requests.
                 Thread.currentThread().interrupt();
-                // We don't need the result, so cancel the task too
-                future.cancel(true);
+                break;
             } catch (ExecutionException e) {
                 if (e.getCause() instanceof OutOfMemoryError) {
-                    setAsLoaded();
                     throw (OutOfMemoryError) e.getCause();
-                } else {
-                    readable = false;
-                    LOGGER.error("Cannot read pixel data!: {}", this, e); //$NON-NLS-1$
                 }
+                break;
             }
-            if (img != null) {
-                readable = true;
-                mCache.put(this, img);
-                cacheImage = img;
-                this.setTag(TagW.ImageCache, true);
-            }
-            setAsLoaded();
         }
-        return cacheImage;
+        return null;
+    }
+
+    /**
+     * Requests the reading of the image without waiting. When the image is already in the cache, the returned future
+     * is completed.
+     *
+     * @param priority
+     *            the priority of the reading in the loader pool
+     * @return the future image
+     */
+    public Future<PlanarImage> requestImage(ImageLoader.Priority priority) {
+        PlanarImage cacheImage = mCache.get(this);
+        if (cacheImage != null || !readable) {
+            return CompletableFuture.completedFuture(cacheImage);
+        }
+        LOGGER.debug("Asking for reading image: {}", this); //$NON-NLS-1$
+        return IMAGE_LOADER.load(this, new Load(), priority);
     }
 
     public boolean isReadable() {
@@ -402,7 +495,7 @@ public class ImageElement extends MediaElement {
 
     @Override
     public void dispose() {
-        // Let the soft reference mechanism dispose the display image
+        // Let the cache evict the display image
 
         // Close image reader and image stream, but it should be already closed
         if (mediaIO != null) {
@@ -414,7 +507,25 @@ public class ImageElement extends MediaElement {
 
         @Override
         public PlanarImage call() throws Exception {
-            return loadImage();
+            setAsLoading();
+            try {
+                PlanarImage img = loadImage();
+                if (img != null) {
+                    readable = true;
+                    // Set before adding to the cache, the tag is reset when the image is evicted immediately
+                    setTag(TagW.ImageCache, true);
+                    mCache.put(ImageElement.this, img);
+                }
+                return img;
+            } catch (Throwable t) {
+                if (!(t instanceof OutOfMemoryError)) {
+                    readable = false;
+                    LOGGER.error("Cannot read pixel data!: {}", ImageElement.this, t); //$NON-NLS-1$
+                }
+                throw t;
+            } finally {
+                setAsLoaded();
+            }
         }
     }
 
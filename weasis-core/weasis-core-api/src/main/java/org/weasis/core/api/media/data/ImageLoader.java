@@ -0,0 +1,231 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.core.api.media.data;
+
+import java.io.Serializable;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.media.jai.PlanarImage;
+
+import org.weasis.core.api.util.ThreadUtil;
+
+/**
+ * Bounded pool of threads for reading images. The tasks are executed according to their priority, the images
+ * displayed in a view are read before the preloaded images. Concurrent requests for the same image element share the
+ * same reading task. A shared task is cancelled only when all its requests have been cancelled.
+ */
+public class ImageLoader {
+
+    public enum Priority {
+        // Order from the highest priority to the lowest
+        DISPLAY, PREFETCH, THUMBNAIL, PRELOAD
+    }
+
+    private final BlockingQueue<Runnable> queue = new PriorityBlockingQueue<>(64, new PriorityTaskComparator());
+    private final ThreadPoolExecutor executor;
+    private final Map<ImageElement, LoadingTask> inProgress = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    public ImageLoader(int nbThreads, String name) {
+        int nb = Math.max(1, nbThreads);
+        this.executor =
+            new ThreadPoolExecutor(nb, nb, 0L, TimeUnit.MILLISECONDS, queue, ThreadUtil.getThreadFactory(name));
+    }
+
+    public int getPoolSize() {
+        return executor.getMaximumPoolSize();
+    }
+
+    public void setPoolSize(int nbThreads) {
+        int nb = Math.max(1, nbThreads);
+        if (nb > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(nb);
+            executor.setCorePoolSize(nb);
+        } else {
+            executor.setCorePoolSize(nb);
+            executor.setMaximumPoolSize(nb);
+        }
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * Submits a task which is not bound to an image element (e.g. reading a thumbnail file).
+     */
+    public <T> Future<T> submit(Callable<T> callable, Priority priority) {
+        PriorityTask<T> task = new PriorityTask<>(callable, priority, sequence.incrementAndGet());
+        executor.execute(task);
+        return task;
+    }
+
+    /**
+     * Submits the reading of an image. When the image is already being read, the returned future is the one of the
+     * pending task and its priority is raised if necessary.
+     *
+     * @param image
+     *            the image element
+     * @param callable
+     *            the task reading the image
+     * @param priority
+     *            the priority of the request
+     * @return the future of the reading task
+     */
+    public Future<PlanarImage> load(ImageElement image, Callable<PlanarImage> callable, Priority priority) {
+        while (true) {
+            LoadingTask task = new LoadingTask(image, callable, priority, sequence.incrementAndGet());
+            LoadingTask pending = inProgress.putIfAbsent(image, task);
+            if (pending == null) {
+                executor.execute(task);
+                return task;
+            }
+            synchronized (pending) {
+                if (!pending.isCancelled()) {
+                    pending.addRequest(priority);
+                    raisePriority(pending, priority);
+                    return pending;
+                }
+            }
+            // The pending task has just been cancelled
+            inProgress.remove(image, pending);
+        }
+    }
+
+    public boolean isLoading(ImageElement image) {
+        return inProgress.containsKey(image);
+    }
+
+    /**
+     * Cancels a request made with {@link #load(ImageElement, Callable, Priority)}. The shared task is removed from the
+     * queue only when it is not yet started and when no other request is waiting for it.
+     *
+     * @param image
+     *            the image element
+     * @param priority
+     *            the priority of the cancelled request
+     * @return true if the task has been cancelled
+     */
+    public boolean cancel(ImageElement image, Priority priority) {
+        LoadingTask task = inProgress.get(image);
+        if (task == null) {
+            return false;
+        }
+        synchronized (task) {
+            if (task.removeRequest(priority) && queue.remove(task)) {
+                task.cancel(false);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void raisePriority(PriorityTask<?> task, Priority priority) {
+        if (priority.compareTo(task.getPriority()) < 0 && queue.remove(task)) {
+            // Re-insert the task to update its position in the queue
+            task.setPriority(priority);
+            queue.offer(task);
+        }
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    static class PriorityTask<T> extends FutureTask<T> {
+        private final long order;
+        private volatile Priority priority;
+
+        PriorityTask(Callable<T> callable, Priority priority, long order) {
+            super(callable);
+            this.priority = priority;
+            this.order = order;
+        }
+
+        public Priority getPriority() {
+            return priority;
+        }
+
+        public void setPriority(Priority priority) {
+            this.priority = priority;
+        }
+
+        public long getOrder() {
+            return order;
+        }
+    }
+
+    class LoadingTask extends PriorityTask<PlanarImage> {
+        private final ImageElement image;
+        // Number of requests for each priority, guarded by the task
+        private final int[] requests = new int[Priority.values().length];
+
+        LoadingTask(ImageElement image, Callable<PlanarImage> callable, Priority priority, long order) {
+            super(callable, priority, order);
+            this.image = image;
+            requests[priority.ordinal()] = 1;
+        }
+
+        void addRequest(Priority priority) {
+            requests[priority.ordinal()]++;
+        }
+
+        /**
+         * @return true if no request remains
+         */
+        boolean removeRequest(Priority priority) {
+            if (requests[priority.ordinal()] > 0) {
+                requests[priority.ordinal()]--;
+            }
+            for (int nb : requests) {
+                if (nb > 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        protected void done() {
+            inProgress.remove(image, this);
+        }
+    }
+
+    static class PriorityTaskComparator implements Comparator<Runnable>, Serializable {
+        private static final long serialVersionUID = -3591862254766484522L;
+
+        @Override
+        public int compare(Runnable r1, Runnable r2) {
+            PriorityTask<?> o1 = (PriorityTask<?>) r1;
+            PriorityTask<?> o2 = (PriorityTask<?>) r2;
+            int rep = o1.getPriority().compareTo(o2.getPriority());
+            if (rep != 0) {
+                return rep;
+            }
+            // First in first out for the same priority
+            return Long.compare(o1.getOrder(), o2.getOrder());
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.core.api.media.data;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Tags of a fragment of a media (e.g. a frame of a multi-frame image) stored as a layer over the tags shared by all the
+ * fragments. Only the tags written through this map are stored in the layer, the other ones are read from the shared
+ * map, so the shared tags are not copied for each frame.
+ * <p>
+ * The shared map is not modified by this map. The removal of an entry through an iterator is not supported.
+ */
+public class LayeredTagMap extends AbstractMap<TagW, Object> {
+
+    // Marks a shared tag removed from this layer
+    private static final Object REMOVED = new Object();
+
+    private final Map<TagW, Object> shared;
+    private final Map<TagW, Object> layer;
+    private boolean detached;
+    private transient Set<Entry<TagW, Object>> entrySet;
+
+    public LayeredTagMap(Map<TagW, Object> shared) {
+        this.shared = Objects.requireNonNull(shared);
+        this.layer = new CompactTagMap();
+    }
+
+    /**
+     * @return the number of tags stored in this layer
+     */
+    public int getLayerSize() {
+        return layer.size();
+    }
+
+    @Override
+    public Object get(Object key) {
+        Object val = layer.get(key);
+        if (val != null || layer.containsKey(key)) {
+            return val == REMOVED ? null : val;
+        }
+        return detached ? null : shared.get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        if (layer.containsKey(key)) {
+            return layer.get(key) != REMOVED;
+        }
+        return !detached && shared.containsKey(key);
+    }
+
+    @Override
+    public Object put(TagW key, Object value) {
+        Object old = get(key);
+        layer.put(key, value);
+        return old;
+    }
+
+    @Override
+    public Object remove(Object key) {
+        Object old = get(key);
+        if (!detached && shared.containsKey(key)) {
+            layer.put((TagW) key, REMOVED);
+        } else {
+            layer.remove(key);
+        }
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        layer.clear();
+        detached = true;
+    }
+
+    @Override
+    public Set<Entry<TagW, Object>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<Entry<TagW, Object>>() {
+
+                @Override
+                public Iterator<Entry<TagW, Object>> iterator() {
+                    return new LayeredIterator();
+                }
+
+                @Override
+                public int size() {
+                    int size = 0;
+                    for (Iterator<Entry<TagW, Object>> it = iterator(); it.hasNext(); it.next()) {
+                        size++;
+                    }
+                    return size;
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    private class LayeredIterator implements Iterator<Entry<TagW, Object>> {
+        private final Iterator<Entry<TagW, Object>> layerIt = layer.entrySet().iterator();
+        private final Iterator<Entry<TagW, Object>> sharedIt =
+            detached ? null : shared.entrySet().iterator();
+        private Entry<TagW, Object> next;
+
+        LayeredIterator() {
+            advance();
+        }
+
+        private void advance() {
+            next = null;
+            while (layerIt.hasNext()) {
+                Entry<TagW, Object> e = layerIt.next();
+                if (e.getValue() != REMOVED) {
+                    next = e;
+                    return;
+                }
+            }
+            while (sharedIt != null && sharedIt.hasNext()) {
+                Entry<TagW, Object> e = sharedIt.next();
+                if (!layer.containsKey(e.getKey())) {
+                    // Read-only, setValue() must not write in the shared map
+                    next = new SimpleImmutableEntry<>(e);
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Entry<TagW, Object> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Entry<TagW, Object> e = next;
+            advance();
+            return e;
+        }
+    }
+}
@@ -0,0 +1,272 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.core.api.media.data;
+
+import java.awt.image.DataBuffer;
+import java.awt.image.SampleModel;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import javax.media.jai.PlanarImage;
+
+/**
+ * Image cache with a memory budget. The size of an image is estimated from its dimension and its sample model (width x
+ * height x bands x bytes per sample). When the budget is exceeded, the least recently used images are evicted except
+ * those which are pinned.
+ *
+ */
+public class LruImageCache implements ImageCache {
+
+    private final Map<ImageElement, CacheEntry> map = new LinkedHashMap<>(64, 0.75f, true);
+    private final Map<ImageElement, Integer> pinned = new HashMap<>();
+
+    private long maxBytes;
+    private long currentBytes;
+
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    public LruImageCache(long maxBytes) {
+        setMaxBytes(maxBytes);
+    }
+
+    @Override
+    public PlanarImage get(ImageElement key) {
+        synchronized (this) {
+            CacheEntry entry = map.get(key);
+            if (entry == null) {
+                missCount++;
+                return null;
+            }
+            hitCount++;
+            return entry.image;
+        }
+    }
+
+    @Override
+    public void put(ImageElement key, PlanarImage image) {
+        if (key == null || image == null) {
+            return;
+        }
+        List<Entry<ImageElement, PlanarImage>> evicted;
+        synchronized (this) {
+            long size = getImageSize(image);
+            CacheEntry old = map.put(key, new CacheEntry(image, size));
+            if (old != null) {
+                currentBytes -= old.size;
+            }
+            currentBytes += size;
+            evicted = trim(currentBytes - maxBytes);
+        }
+        notifyEviction(evicted);
+    }
+
+    @Override
+    public PlanarImage remove(ImageElement key) {
+        synchronized (this) {
+            CacheEntry entry = map.remove(key);
+            if (entry == null) {
+                return null;
+            }
+            currentBytes -= entry.size;
+            return entry.image;
+        }
+    }
+
+    @Override
+    public synchronized boolean contains(ImageElement key) {
+        return map.containsKey(key);
+    }
+
+    @Override
+    public synchronized void pin(ImageElement key) {
+        if (key != null) {
+            pinned.merge(key, 1, Integer::sum);
+        }
+    }
+
+    @Override
+    public void unpin(ImageElement key) {
+        if (key == null) {
+            return;
+        }
+        List<Entry<ImageElement, PlanarImage>> evicted;
+        synchronized (this) {
+            Integer count = pinned.get(key);
+            if (count == null) {
+                return;
+            }
+            if (count > 1) {
+                pinned.put(key, count - 1);
+            } else {
+                pinned.remove(key);
+            }
+            // The budget could have been exceeded by pinned images
+            evicted = trim(currentBytes - maxBytes);
+        }
+        notifyEviction(evicted);
+    }
+
+    @Override
+    public synchronized boolean isPinned(ImageElement key) {
+        return pinned.containsKey(key);
+    }
+
+    @Override
+    public long evict(long bytes) {
+        List<Entry<ImageElement, PlanarImage>> evicted;
+        long released;
+        synchronized (this) {
+            long before = currentBytes;
+            evicted = trim(bytes);
+            released = before - currentBytes;
+        }
+        notifyEviction(evicted);
+        return released;
+    }
+
+    @Override
+    public void clear() {
+        List<Entry<ImageElement, PlanarImage>> evicted;
+        synchronized (this) {
+            evicted = new ArrayList<>(map.size());
+            for (Entry<ImageElement, CacheEntry> entry : map.entrySet()) {
+                evicted.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), entry.getValue().image));
+            }
+            map.clear();
+            currentBytes = 0;
+        }
+        notifyEviction(evicted);
+    }
+
+    @Override
+    public synchronized int size() {
+        return map.size();
+    }
+
+    @Override
+    public synchronized long getMaxBytes() {
+        return maxBytes;
+    }
+
+    @Override
+    public void setMaxBytes(long maxBytes) {
+        List<Entry<ImageElement, PlanarImage>> evicted;
+        synchronized (this) {
+            this.maxBytes = Math.max(0, maxBytes);
+            evicted = trim(currentBytes - this.maxBytes);
+        }
+        notifyEviction(evicted);
+    }
+
+    @Override
+    public synchronized long getCurrentBytes() {
+        return currentBytes;
+    }
+
+    @Override
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    @Override
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    @Override
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    @Override
+    public synchronized void resetStatistics() {
+        hitCount = 0;
+        missCount = 0;
+        evictionCount = 0;
+    }
+
+    /**
+     * Called outside the lock of the cache when an image has been evicted. It is not called for images removed with
+     * {@link #remove(ImageElement)}.
+     *
+     * @param key
+     *            the image element
+     * @param image
+     *            the evicted image
+     */
+    protected void imageEvicted(ImageElement key, PlanarImage image) {
+        // Do nothing by default
+    }
+
+    private List<Entry<ImageElement, PlanarImage>> trim(long bytesToRelease) {
+        if (bytesToRelease <= 0) {
+            return null;
+        }
+        List<Entry<ImageElement, PlanarImage>> evicted = new ArrayList<>();
+        long released = 0;
+        // Iteration order is from the least recently accessed to the most recently accessed
+        Iterator<Entry<ImageElement, CacheEntry>> iter = map.entrySet().iterator();
+        while (released < bytesToRelease && iter.hasNext()) {
+            Entry<ImageElement, CacheEntry> entry = iter.next();
+            if (!pinned.containsKey(entry.getKey())) {
+                CacheEntry val = entry.getValue();
+                iter.remove();
+                released += val.size;
+                currentBytes -= val.size;
+                evictionCount++;
+                evicted.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), val.image));
+            }
+        }
+        return evicted;
+    }
+
+    private void notifyEviction(List<Entry<ImageElement, PlanarImage>> evicted) {
+        if (evicted != null) {
+            for (Entry<ImageElement, PlanarImage> entry : evicted) {
+                imageEvicted(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    public static long getImageSize(PlanarImage image) {
+        if (image == null) {
+            return 0L;
+        }
+        SampleModel sm = image.getSampleModel();
+        long bytesPerSample = Math.max(1, DataBuffer.getDataTypeSize(sm.getDataType()) / 8);
+        return (long) image.getWidth() * image.getHeight() * sm.getNumBands() * bytesPerSample;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%s[images=%d, bytes=%d/%d, pinned=%d, hits=%d, misses=%d, evictions=%d]", //$NON-NLS-1$
+            getClass().getSimpleName(), map.size(), currentBytes, maxBytes, pinned.size(), hitCount, missCount,
+            evictionCount);
+    }
+
+    private static class CacheEntry {
+        private final PlanarImage image;
+        private final long size;
+
+        CacheEntry(PlanarImage image, long size) {
+            this.image = image;
+            this.size = size;
+        }
+    }
+}
@@ -13,12 +13,12 @@ package org.weasis.core.api.media.data;
 import java.io.File;
 import java.net.URI;
 import java.nio.file.Paths;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.weasis.core.api.util.FileUtil;
 
@@ -31,12 +31,12 @@ public abstract class MediaElement implements Tagable {
     // Key to identify the media (the URI passed to the Reader can contain several media elements)
     protected final Object key;
 
-    private volatile boolean loading = false;
+    private final AtomicBoolean loading = new AtomicBoolean(false);
 
     public <E> MediaElement(MediaReader mediaIO, Object key) {
         this.mediaIO = Objects.requireNonNull(mediaIO);
         this.key = key;
-        this.tags = Optional.ofNullable(mediaIO.getMediaFragmentTags(key)).orElseGet(HashMap::new);
+        this.tags = Optional.ofNullable(mediaIO.getMediaFragmentTags(key)).orElseGet(CompactTagMap::new);
     }
 
     public MediaReader getMediaReader() {
@@ -133,20 +133,16 @@ public abstract class MediaElement implements Tagable {
         return mediaIO.getMediaFragmentMimeType();
     }
 
-    protected final synchronized boolean setAsLoading() {
-        if (!loading) {
-            loading = true;
-            return loading;
-        }
-        return false;
+    protected final boolean setAsLoading() {
+        return loading.compareAndSet(false, true);
     }
 
-    protected final synchronized void setAsLoaded() {
-        loading = false;
+    protected final void setAsLoaded() {
+        loading.set(false);
     }
 
-    public final synchronized boolean isLoading() {
-        return loading;
+    public final boolean isLoading() {
+        return loading.get();
     }
 
 }
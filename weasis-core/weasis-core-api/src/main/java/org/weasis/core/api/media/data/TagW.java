@@ -23,6 +23,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import java.util.stream.DoubleStream;
@@ -48,6 +49,9 @@ public class TagW implements Serializable {
     private static final AtomicInteger idCounter = new AtomicInteger(Integer.MAX_VALUE);
 
     protected static final Map<String, TagW> tags = Collections.synchronizedMap(new HashMap<String, TagW>());
+    // Dense index of the tags, the equal tags have the same index
+    private static final Map<TagW, Integer> indexes = new ConcurrentHashMap<>();
+    private static final AtomicInteger indexCounter = new AtomicInteger();
 
     public static final String NO_VALUE = "UNKNOWN";//$NON-NLS-1$
 
@@ -202,6 +206,8 @@ public class TagW implements Serializable {
     protected final int vmMin;
     protected final int vmMax;
     protected final transient Object defaultValue;
+    // Dense index + 1, 0 when not yet assigned
+    private transient volatile int index;
 
     public TagW(int id, String keyword, String displayedName, TagType type, int vmMin, int vmMax, Object defaultValue) {
         this.id = id;
@@ -250,6 +256,19 @@ public class TagW implements Serializable {
         return keyword;
     }
 
+    /**
+     * @return a small positive number identifying the tag in this session, the equal tags have the same index (see
+     *         {@link CompactTagMap})
+     */
+    public int getIndex() {
+        int val = index;
+        if (val == 0) {
+            val = indexes.computeIfAbsent(this, k -> indexCounter.getAndIncrement()) + 1;
+            index = val;
+        }
+        return val - 1;
+    }
+
     public String getDisplayedName() {
         if (displayedName == null) {
             return StringUtil.splitCamelCaseString(getKeyword());
@@ -25,6 +25,11 @@ import java.awt.image.RenderedImage;
 import java.io.File;
 import java.io.IOException;
 import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
@@ -47,9 +52,13 @@ import org.weasis.core.api.Messages;
 import org.weasis.core.api.gui.util.AppProperties;
 import org.weasis.core.api.image.OpManager;
 import org.weasis.core.api.image.util.ImageFiler;
+import org.weasis.core.api.image.util.ImagePyramid;
 import org.weasis.core.api.media.MimeInspector;
 import org.weasis.core.api.util.FontTools;
+import org.weasis.core.api.util.MemoryManager;
 import org.weasis.core.api.util.ThreadUtil;
+import org.weasis.core.api.util.metrics.MetricsRegistry;
+import org.weasis.core.api.util.metrics.Timer;
 
 @SuppressWarnings("serial")
 public class Thumbnail extends JLabel {
@@ -66,6 +75,13 @@ public class Thumbnail extends JLabel {
         DownScaleQualityHints.add(new RenderingHints(JAI.KEY_TILE_CACHE, null));
     }
 
+    // Thumbnails whose image can be released under memory pressure
+    private static final Set<Thumbnail> INSTANCES = Collections.newSetFromMap(new WeakHashMap<Thumbnail, Boolean>());
+
+    static {
+        MemoryManager.register("Thumbnails", Thumbnail::releaseHiddenImages); //$NON-NLS-1$
+    }
+
     public static final int MIN_SIZE = 48;
     public static final int DEFAULT_SIZE = 112;
     public static final int MAX_SIZE = 256;
@@ -80,6 +96,7 @@ public class Thumbnail extends JLabel {
         super(null, null, SwingConstants.CENTER);
         this.thumbnailPath = thumbnailPath;
         this.thumbnailSize = thumbnailSize;
+        addInstance(this);
     }
 
     public Thumbnail(final MediaElement media, int thumbnailSize, boolean keepMediaCache, OpManager opManager) {
@@ -89,6 +106,49 @@ public class Thumbnail extends JLabel {
         }
         this.thumbnailSize = thumbnailSize;
         init(media, keepMediaCache, opManager);
+        addInstance(this);
+    }
+
+    private static void addInstance(Thumbnail thumbnail) {
+        synchronized (INSTANCES) {
+            INSTANCES.add(thumbnail);
+        }
+    }
+
+    /**
+     * Releases the images of the thumbnails which are not visible. They are read again from the cache files when
+     * they become visible.
+     *
+     * @param bytes
+     *            the amount of memory to release
+     * @return the amount of memory released
+     */
+    public static long releaseHiddenImages(long bytes) {
+        List<Thumbnail> list;
+        synchronized (INSTANCES) {
+            list = new ArrayList<>(INSTANCES);
+        }
+        long released = 0L;
+        for (Thumbnail thumbnail : list) {
+            if (released >= bytes) {
+                break;
+            }
+            if (!thumbnail.isShowing()) {
+                released += thumbnail.releaseImage();
+            }
+        }
+        return released;
+    }
+
+    private synchronized long releaseImage() {
+        if (imageSoftRef != null) {
+            BufferedImage temp = imageSoftRef.get();
+            imageSoftRef.clear();
+            if (temp != null) {
+                return (long) temp.getWidth() * temp.getHeight() * temp.getColorModel().getPixelSize() / 8;
+            }
+        }
+        return 0L;
     }
 
     /**
@@ -116,6 +176,20 @@ public class Thumbnail extends JLabel {
             : source;
     }
 
+    /**
+     * @return the smallest reduction of the image (see {@link ImagePyramid}) which is larger than the thumbnail, or
+     *         the image itself
+     */
+    private static PlanarImage getReducedImage(ImageElement image, PlanarImage source, OpManager opManager) {
+        ImagePyramid pyramid = opManager == null ? image.getPyramid() : null;
+        if (pyramid == null || pyramid.getBase() != source) {
+            return source;
+        }
+        double scale =
+            Math.min(Thumbnail.MAX_SIZE / (double) source.getHeight(), Thumbnail.MAX_SIZE / (double) source.getWidth());
+        return pyramid.getLevel(pyramid.getLevelIndex(scale));
+    }
+
     protected synchronized void buildThumbnail(MediaElement media, boolean keepMediaCache, OpManager opManager) {
         imageSoftRef = null;
         Icon icon = MimeInspector.unknownIcon;
@@ -248,9 +322,11 @@ public class Thumbnail extends JLabel {
             if (noPath) {
                 if (media instanceof ImageElement) {
                     final ImageElement image = (ImageElement) media;
+                    Timer timer = MetricsRegistry.timer("thumbnail.build"); //$NON-NLS-1$
+                    long start = timer.start();
                     PlanarImage imgPl = image.getImage(opManager);
                     if (imgPl != null) {
-                        RenderedImage img = image.getRenderedImage(imgPl);
+                        RenderedImage img = image.getRenderedImage(getReducedImage(image, imgPl, opManager));
                         final RenderedImage thumb = createThumbnail(img);
                         try {
                             file = thumbnailPath = File.createTempFile("tumb_", ".jpg", Thumbnail.THUMBNAIL_CACHE_DIR); //$NON-NLS-1$ //$NON-NLS-2$
@@ -282,6 +358,7 @@ public class Thumbnail extends JLabel {
                                 imageSoftRef = new SoftReference<>(thumbnail);
                             }
                         } finally {
+                            timer.stop(start);
                             if (!keepMediaCache) {
                                 // Prevent to many files open on Linux (Ubuntu => 1024) and close image stream
                                 image.removeImageFromCache();
@@ -291,8 +368,8 @@ public class Thumbnail extends JLabel {
                 }
             } else {
                 Load ref = new Load(file);
-                // loading images sequentially, only one thread pool
-                Future<BufferedImage> future = ImageElement.IMAGE_LOADER.submit(ref);
+                // Thumbnails are read before the preloaded images but after the displayed images
+                Future<BufferedImage> future = ImageElement.IMAGE_LOADER.submit(ref, ImageLoader.Priority.THUMBNAIL);
                 BufferedImage img = null;
                 BufferedImage thumb = null;
                 try {
@@ -0,0 +1,210 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.core.api.util;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.weasis.core.api.service.BundleTools;
+
+/**
+ * Releases the memory of the registered caches before the heap runs out. The tenured heap pool is monitored with the
+ * collection usage threshold of {@link MemoryPoolMXBean}: when the live data after a garbage collection exceed the
+ * threshold (the property "weasis.memory.threshold", percentage of the pool), the caches are asked to release the
+ * memory above the low water mark (the property "weasis.memory.target").
+ *
+ * The caches are called in their registration order until the requested amount is released. This replaces the calls
+ * to System.gc() which freeze the application.
+ */
+public final class MemoryManager {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MemoryManager.class);
+
+    public static final String MEMORY_THRESHOLD = "weasis.memory.threshold"; //$NON-NLS-1$
+    public static final String MEMORY_TARGET = "weasis.memory.target"; //$NON-NLS-1$
+
+    /**
+     * A cache able to release a part of its memory.
+     */
+    @FunctionalInterface
+    public interface MemoryReleaser {
+        /**
+         * @param bytes
+         *            the amount of memory to release
+         * @return the amount of memory released (can be an estimation)
+         */
+        long release(long bytes);
+    }
+
+    private static final int THRESHOLD =
+        Math.max(10, Math.min(95, BundleTools.SYSTEM_PREFERENCES.getIntProperty(MEMORY_THRESHOLD, 80)));
+    private static final int TARGET =
+        Math.max(5, Math.min(THRESHOLD, BundleTools.SYSTEM_PREFERENCES.getIntProperty(MEMORY_TARGET, 60)));
+
+    // Keep the registration order
+    private static final Map<String, MemoryReleaser> releasers = new LinkedHashMap<>();
+    private static final AtomicLong releasedBytes = new AtomicLong();
+    private static final AtomicLong nbNotifications = new AtomicLong();
+    private static final AtomicBoolean releasing = new AtomicBoolean(false);
+    private static final ExecutorService executor = ThreadUtil.buildNewSingleThreadExecutor("Memory Manager"); //$NON-NLS-1$
+
+    static {
+        installThresholds();
+    }
+
+    private MemoryManager() {
+    }
+
+    private static void installThresholds() {
+        try {
+            MemoryPoolMXBean pool = getTenuredPool();
+            if (pool == null) {
+                LOGGER.warn("No tenured memory pool, the memory usage is not monitored"); //$NON-NLS-1$
+                return;
+            }
+            pool.setCollectionUsageThreshold(pool.getUsage().getMax() * THRESHOLD / 100);
+            NotificationListener listener = (notification, handback) -> {
+                if (MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(notification.getType())) {
+                    nbNotifications.incrementAndGet();
+                    // Do not block the notification thread of the JVM
+                    if (releasing.compareAndSet(false, true)) {
+                        executor.execute(MemoryManager::releaseAboveTarget);
+                    }
+                }
+            };
+            ((NotificationEmitter) ManagementFactory.getMemoryMXBean()).addNotificationListener(listener, null, null);
+        } catch (Exception e) {
+            LOGGER.error("Cannot monitor the memory usage", e); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * @return the heap pool of the old generation, the only one which supports a usage threshold (the young generation
+     *         pools exceed any threshold at almost each minor collection)
+     */
+    private static MemoryPoolMXBean getTenuredPool() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isUsageThresholdSupported()
+                && pool.isCollectionUsageThresholdSupported() && pool.getUsage().getMax() > 0) {
+                return pool;
+            }
+        }
+        return null;
+    }
+
+    private static void releaseAboveTarget() {
+        try {
+            long excess = 0L;
+            MemoryPoolMXBean pool = getTenuredPool();
+            if (pool != null && pool.getCollectionUsage() != null) {
+                excess = pool.getCollectionUsage().getUsed() - pool.getUsage().getMax() * TARGET / 100;
+            }
+            if (excess > 0) {
+                release(excess);
+            }
+        } finally {
+            releasing.set(false);
+        }
+    }
+
+    /**
+     * Registers a cache. A cache with the same name is replaced.
+     *
+     * @param name
+     *            the name of the cache
+     * @param releaser
+     *            the function releasing the memory of the cache
+     */
+    public static void register(String name, MemoryReleaser releaser) {
+        if (name != null && releaser != null) {
+            synchronized (releasers) {
+                releasers.put(name, releaser);
+            }
+        }
+    }
+
+    public static void unregister(String name) {
+        if (name != null) {
+            synchronized (releasers) {
+                releasers.remove(name);
+            }
+        }
+    }
+
+    /**
+     * Asks the registered caches to release memory.
+     *
+     * @param bytes
+     *            the amount of memory to release
+     * @return the amount of memory released
+     */
+    public static long release(long bytes) {
+        long released = 0L;
+        List<Entry<String, MemoryReleaser>> entries;
+        synchronized (releasers) {
+            entries = new ArrayList<>(releasers.entrySet());
+        }
+        for (Entry<String, MemoryReleaser> entry : entries) {
+            if (released >= bytes) {
+                break;
+            }
+            try {
+                long val = entry.getValue().release(bytes - released);
+                released += val;
+                LOGGER.debug("{}: released {}", entry.getKey(), FileUtil.formatSize(val)); //$NON-NLS-1$
+            } catch (Exception e) {
+                LOGGER.error("Cannot release memory of {}", entry.getKey(), e); //$NON-NLS-1$
+            }
+        }
+        releasedBytes.addAndGet(released);
+        LOGGER.info("Memory released: {} of {} requested", FileUtil.formatSize(released), FileUtil.formatSize(bytes)); //$NON-NLS-1$
+        return released;
+    }
+
+    /**
+     * Releases half of the memory used by the heap. To call after catching an OutOfMemoryError instead of forcing a
+     * garbage collection.
+     *
+     * @return the amount of memory released
+     */
+    public static long releaseAfterOutOfMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        return release((runtime.totalMemory() - runtime.freeMemory()) / 2);
+    }
+
+    /**
+     * @return the total amount of memory released by the caches
+     */
+    public static long getReleasedBytes() {
+        return releasedBytes.get();
+    }
+
+    /**
+     * @return the number of times the threshold has been exceeded
+     */
+    public static long getNumberOfNotifications() {
+        return nbNotifications.get();
+    }
+}
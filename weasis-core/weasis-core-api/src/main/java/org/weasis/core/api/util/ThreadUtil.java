@@ -13,6 +13,8 @@ package org.weasis.core.api.util;
 
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.concurrent.ThreadFactory;
 
 public class ThreadUtil {
@@ -63,6 +65,25 @@ public class ThreadUtil {
 
     }
 
+    /**
+     * Creates a work-stealing pool with the given parallelism level. The worker threads are daemon threads.
+     *
+     * @param parallelism
+     *            the number of threads of the pool
+     * @param name
+     *            the name prefix of the new threads
+     * @return the newly created pool
+     * @throws IllegalArgumentException
+     *             if {@code parallelism <= 0}
+     */
+    public static final ForkJoinPool buildNewForkJoinPool(int parallelism, final String name) {
+        return new ForkJoinPool(parallelism, pool -> {
+            ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            t.setName(name + "-" + t.getName()); //$NON-NLS-1$
+            return t;
+        }, null, false);
+    }
+
     /**
      * Based on the default thread factory
      *
@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.core.api.util.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe distribution of positive values. The values are counted in power of two buckets, so recording a value
+ * does not allocate memory and the percentiles are approximated by the upper bound of their bucket.
+ */
+public class Histogram implements Metric {
+    private static final int NB_BUCKETS = 64;
+
+    private final String name;
+    private final AtomicLongArray buckets = new AtomicLongArray(NB_BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    Histogram(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    public void record(long value) {
+        long val = Math.max(0L, value);
+        // Bucket i contains the values between 2^(i-1) and 2^i - 1
+        buckets.incrementAndGet(Math.min(NB_BUCKETS - 1, NB_BUCKETS - Long.numberOfLeadingZeros(val)));
+        count.increment();
+        sum.add(val);
+        long current;
+        while (val > (current = max.get())) {
+            if (max.compareAndSet(current, val)) {
+                break;
+            }
+        }
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getSum() {
+        return sum.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long nb = getCount();
+        return nb == 0 ? 0.0 : getSum() / (double) nb;
+    }
+
+    /**
+     * @param percentile
+     *            the percentile between 0 and 100
+     * @return the upper bound of the bucket containing the percentile
+     */
+    public long getPercentile(double percentile) {
+        long total = 0L;
+        for (int i = 0; i < NB_BUCKETS; i++) {
+            total += buckets.get(i);
+        }
+        if (total == 0) {
+            return 0L;
+        }
+        long rank = (long) Math.ceil(total * Math.max(0.0, Math.min(100.0, percentile)) / 100.0);
+        long acc = 0L;
+        for (int i = 0; i < NB_BUCKETS; i++) {
+            acc += buckets.get(i);
+            if (acc >= Math.max(1L, rank)) {
+                return Math.min(getMax(), i == 0 ? 0L : (1L << i) - 1);
+            }
+        }
+        return getMax();
+    }
+
+    @Override
+    public void reset() {
+        for (int i = 0; i < NB_BUCKETS; i++) {
+            buckets.set(i, 0L);
+        }
+        count.reset();
+        sum.reset();
+        max.set(0L);
+    }
+
+    @Override
+    public String snapshot() {
+        return String.format("histogram %-40s count=%d mean=%.1f p50=%d p95=%d max=%d", name, getCount(), getMean(), //$NON-NLS-1$
+            getPercentile(50), getPercentile(95), getMax());
+    }
+}
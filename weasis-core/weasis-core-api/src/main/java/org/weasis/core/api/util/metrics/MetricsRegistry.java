@@ -0,0 +1,151 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.core.api.util.metrics;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.weasis.core.api.command.Option;
+import org.weasis.core.api.command.Options;
+import org.weasis.core.api.gui.util.AppProperties;
+
+/**
+ * Registry of the application metrics. The metrics are created on the first call and then always returned from the
+ * same instance, so the instrumented code can get and update a metric without allocating memory.
+ * <p>
+ * A metric name must be used only by one type of metric (counter, timer or histogram).
+ */
+public final class MetricsRegistry {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MetricsRegistry.class);
+
+    public static final String[] functions = { "metrics" }; //$NON-NLS-1$
+
+    private static final Map<String, Metric> METRICS = new ConcurrentHashMap<>();
+    private static final Map<String, Map<String, Timer>> GROUP_TIMERS = new ConcurrentHashMap<>();
+
+    /**
+     * The instance is only used for registering the "weasis:metrics" command, all the methods are static.
+     */
+    public MetricsRegistry() {
+        super();
+    }
+
+    public static Counter counter(String name) {
+        Metric m = METRICS.get(name);
+        if (m == null) {
+            m = METRICS.computeIfAbsent(name, Counter::new);
+        }
+        return (Counter) m;
+    }
+
+    public static Histogram histogram(String name) {
+        Metric m = METRICS.get(name);
+        if (m == null) {
+            m = METRICS.computeIfAbsent(name, Histogram::new);
+        }
+        return (Histogram) m;
+    }
+
+    public static Timer timer(String name) {
+        Metric m = METRICS.get(name);
+        if (m == null) {
+            m = METRICS.computeIfAbsent(name, Timer::new);
+        }
+        return (Timer) m;
+    }
+
+    /**
+     * Returns a timer of a group of timers distinguished by a key (e.g. a transfer syntax UID). The lookup does not
+     * concatenate the strings, the name of the timer is "group.key".
+     *
+     * @param group
+     *            the name of the group
+     * @param key
+     *            the key in the group, null is replaced by "unknown"
+     * @return the timer
+     */
+    public static Timer timer(String group, String key) {
+        Map<String, Timer> timers = GROUP_TIMERS.get(group);
+        if (timers == null) {
+            timers = GROUP_TIMERS.computeIfAbsent(group, g -> new ConcurrentHashMap<>());
+        }
+        String k = key == null ? "unknown" : key; //$NON-NLS-1$
+        Timer timer = timers.get(k);
+        if (timer == null) {
+            timer = timers.computeIfAbsent(k, n -> timer(group + "." + n)); //$NON-NLS-1$
+        }
+        return timer;
+    }
+
+    public static void reset() {
+        METRICS.values().forEach(Metric::reset);
+    }
+
+    public static List<String> snapshot() {
+        List<String> lines = new ArrayList<>();
+        for (Metric m : new TreeMap<>(METRICS).values()) {
+            lines.add(m.snapshot());
+        }
+        return lines;
+    }
+
+    public static void dump(File file) throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        try (PrintWriter writer =
+            new PrintWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8))) {
+            writer.println("# " + new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date())); //$NON-NLS-1$ //$NON-NLS-2$
+            snapshot().forEach(writer::println);
+            writer.println();
+        }
+        LOGGER.info("Metrics written in {}", file); //$NON-NLS-1$
+    }
+
+    public void metrics(String[] argv) throws IOException {
+        final String[] usage = { "Show the performance metrics", //$NON-NLS-1$
+            "Usage: weasis:metrics [Options]", //$NON-NLS-1$
+            "  -d --dump=FILE	append a snapshot to FILE", //$NON-NLS-1$
+            "  -f --file		append a snapshot to log/metrics.txt in the Weasis directory", //$NON-NLS-1$
+            "  -r --reset		reset all the metrics after the snapshot", //$NON-NLS-1$
+            "  -? --help		show help" }; //$NON-NLS-1$
+
+        Option opt = Options.compile(usage).parse(argv);
+        if (opt.isSet("help")) { //$NON-NLS-1$
+            opt.usage();
+            return;
+        }
+        if (opt.isSet("dump")) { //$NON-NLS-1$
+            dump(new File(opt.get("dump"))); //$NON-NLS-1$
+        } else if (opt.isSet("file")) { //$NON-NLS-1$
+            dump(new File(AppProperties.WEASIS_PATH + File.separator + "log", "metrics.txt")); //$NON-NLS-1$ //$NON-NLS-2$
+        } else {
+            snapshot().forEach(System.out::println);
+        }
+        if (opt.isSet("reset")) { //$NON-NLS-1$
+            reset();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.core.api.util.metrics;
+
+/**
+ * Distribution of durations in nanoseconds. Usage:
+ *
+ * <pre>
+ * long start = timer.start();
+ * try {
+ *     ...
+ * } finally {
+ *     timer.stop(start);
+ * }
+ * </pre>
+ */
+public final class Timer extends Histogram {
+
+    Timer(String name) {
+        super(name);
+    }
+
+    public long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Records the time elapsed since the start.
+     *
+     * @param start
+     *            the value returned by {@link #start()}
+     * @return the elapsed time in nanoseconds
+     */
+    public long stop(long start) {
+        long elapsed = System.nanoTime() - start;
+        record(elapsed);
+        return elapsed;
+    }
+
+    @Override
+    public String snapshot() {
+        return String.format("timer     %-40s count=%d mean=%.3fms p50=%.3fms p95=%.3fms max=%.3fms total=%.1fms", //$NON-NLS-1$
+            getName(), getCount(), getMean() / 1e6, getPercentile(50) / 1e6, getPercentile(95) / 1e6, getMax() / 1e6,
+            getSum() / 1e6);
+    }
+}
@@ -0,0 +1,153 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.core.api.image;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.RenderedImage;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class SimpleOpManagerTest {
+
+    private static class CountingOp extends AbstractOp {
+        private int count;
+
+        CountingOp(String name) {
+            setName(name);
+        }
+
+        @Override
+        public void process() throws Exception {
+            count++;
+            RenderedImage source = (RenderedImage) params.get(Param.INPUT_IMG);
+            params.put(Param.OUTPUT_IMG,
+                new BufferedImage(source.getWidth(), source.getHeight(), BufferedImage.TYPE_BYTE_GRAY));
+        }
+
+        @Override
+        public CountingOp copy() {
+            return new CountingOp(getName());
+        }
+    }
+
+    private static class SharedOp extends CountingOp {
+
+        SharedOp(String name) {
+            super(name);
+        }
+
+        @Override
+        public Object getOutputKey() {
+            return buildOutputKey();
+        }
+    }
+
+    private SimpleOpManager manager;
+    private CountingOp filter;
+    private CountingOp window;
+    private CountingOp zoom;
+
+    @Before
+    public void setUp() {
+        manager = new SimpleOpManager();
+        filter = new CountingOp("filter"); //$NON-NLS-1$
+        window = new CountingOp("window"); //$NON-NLS-1$
+        zoom = new CountingOp("zoom"); //$NON-NLS-1$
+        manager.addImageOperationAction(filter);
+        manager.addImageOperationAction(window);
+        manager.addImageOperationAction(zoom);
+        manager.setFirstNode(new BufferedImage(8, 8, BufferedImage.TYPE_BYTE_GRAY));
+    }
+
+    @Test
+    public void testProcessFromFirstChangedNode() {
+        RenderedImage first = manager.process();
+        assertThat(manager.getSkippedNodeCount()).isZero();
+
+        // Nothing has changed
+        assertThat(manager.process()).isSameAs(first);
+        assertThat(manager.getSkippedNodeCount()).isEqualTo(3);
+
+        // Same value
+        manager.setParamValue("window", "level", 40.0); //$NON-NLS-1$ //$NON-NLS-2$
+        manager.process();
+        manager.setParamValue("window", "level", 40.0); //$NON-NLS-1$ //$NON-NLS-2$
+        manager.process();
+        assertThat(manager.getSkippedNodeCount()).isEqualTo(3);
+
+        manager.setParamValue("window", "level", 50.0); //$NON-NLS-1$ //$NON-NLS-2$
+        assertThat(manager.process()).isNotSameAs(first);
+        assertThat(manager.getSkippedNodeCount()).isEqualTo(1);
+        assertThat(filter.count).isEqualTo(1);
+        assertThat(window.count).isEqualTo(3);
+        assertThat(zoom.count).isEqualTo(3);
+    }
+
+    @Test
+    public void testNewSourceAndDisabledNode() {
+        manager.process();
+        manager.setFirstNode(new BufferedImage(8, 8, BufferedImage.TYPE_BYTE_GRAY));
+        manager.process();
+        assertThat(manager.getSkippedNodeCount()).isZero();
+
+        zoom.setEnabled(false);
+        RenderedImage result = manager.process();
+        assertThat(manager.getSkippedNodeCount()).isEqualTo(2);
+        assertThat(result).isSameAs(window.getParam(ImageOpNode.Param.OUTPUT_IMG));
+        assertThat(zoom.count).isEqualTo(2);
+    }
+
+    @Test
+    public void testClearIOCache() {
+        manager.process();
+        manager.clearNodeIOCache();
+        manager.setFirstNode(new BufferedImage(8, 8, BufferedImage.TYPE_BYTE_GRAY));
+        manager.process();
+        assertThat(manager.getSkippedNodeCount()).isZero();
+        assertThat(filter.count).isEqualTo(2);
+    }
+
+    @Test
+    public void testSharedOutputs() {
+        RenderedImage source = new BufferedImage(8, 8, BufferedImage.TYPE_BYTE_GRAY);
+        CountingOp window1 = new SharedOp("window"); //$NON-NLS-1$
+        CountingOp window2 = new SharedOp("window"); //$NON-NLS-1$
+        SimpleOpManager view1 = new SimpleOpManager();
+        view1.addImageOperationAction(window1);
+        view1.setSharedOutputs(true);
+        SimpleOpManager view2 = new SimpleOpManager();
+        view2.addImageOperationAction(window2);
+        view2.setSharedOutputs(true);
+        int size = SharedOpOutputs.size();
+
+        view1.setFirstNode(source);
+        view2.setFirstNode(source);
+        view1.setParamValue("window", "level", 40.0); //$NON-NLS-1$ //$NON-NLS-2$
+        view2.setParamValue("window", "level", 40.0); //$NON-NLS-1$ //$NON-NLS-2$
+        RenderedImage output = view1.process();
+        assertThat(view2.process()).isSameAs(output);
+        assertThat(window2.count).isZero();
+        assertThat(SharedOpOutputs.size()).isEqualTo(size + 1);
+
+        // Different parameters
+        view2.setParamValue("window", "level", 50.0); //$NON-NLS-1$ //$NON-NLS-2$
+        assertThat(view2.process()).isNotSameAs(output);
+        assertThat(window2.count).isEqualTo(1);
+        assertThat(SharedOpOutputs.size()).isEqualTo(size + 2);
+
+        view1.setSharedOutputs(false);
+        view2.clearNodeIOCache();
+        assertThat(SharedOpOutputs.size()).isEqualTo(size);
+    }
+}
@@ -0,0 +1,156 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.core.api.image.op;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.awt.image.DataBuffer;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.renderable.ParameterBlock;
+
+import javax.media.jai.LookupTableJAI;
+import javax.media.jai.PlanarImage;
+import javax.media.jai.RasterFactory;
+import javax.media.jai.TiledImage;
+import javax.media.jai.operator.LookupDescriptor;
+
+import org.junit.Test;
+
+public class CombinedLookupOpImageTest {
+
+    private static final int WIDTH = 64;
+
+    private static TiledImage buildImage(int dataType, int[] values) {
+        int height = (values.length + WIDTH - 1) / WIDTH;
+        SampleModel sm = RasterFactory.createPixelInterleavedSampleModel(dataType, WIDTH, height, 1);
+        TiledImage img = new TiledImage(0, 0, WIDTH, height, 0, 0, sm, PlanarImage.createColorModel(sm));
+        for (int i = 0; i < WIDTH * height; i++) {
+            // Pad with the first value
+            img.setSample(i % WIDTH, i / WIDTH, 0, i < values.length ? values[i] : values[0]);
+        }
+        return img;
+    }
+
+    private static int[] range(int from, int to) {
+        int[] values = new int[to - from + 1];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = from + i;
+        }
+        return values;
+    }
+
+    private static RenderedImage combined(RenderedImage source, LookupTableJAI... tables) {
+        ParameterBlock pb = new ParameterBlock();
+        pb.addSource(source);
+        pb.add(tables);
+        return new CombinedLookupDescriptor().create(pb, null);
+    }
+
+    private static RenderedImage chained(RenderedImage source, LookupTableJAI... tables) {
+        RenderedImage img = source;
+        for (LookupTableJAI table : tables) {
+            img = LookupDescriptor.create(img, table, null);
+        }
+        return img;
+    }
+
+    private static int[] samples(RenderedImage img) {
+        return img.getData().getSamples(0, 0, img.getWidth(), img.getHeight(), 0, (int[]) null);
+    }
+
+    private static LookupTableJAI byteTable(int offset, int size, int slope, int intercept) {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) Math.max(0, Math.min(255, (i + offset) * slope / 16 + intercept));
+        }
+        return new LookupTableJAI(data, offset);
+    }
+
+    private static LookupTableJAI shortTable(int offset, int size, int add, boolean unsigned) {
+        short[] data = new short[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (short) (i + offset + add);
+        }
+        return new LookupTableJAI(data, offset, unsigned);
+    }
+
+    private static void assertSameAsChained(RenderedImage source, LookupTableJAI... tables) {
+        RenderedImage result = combined(source, tables);
+        assertThat(result.getSampleModel().getDataType()).isEqualTo(tables[tables.length - 1].getDataType());
+        assertThat(samples(result)).containsExactly(samples(chained(source, tables)));
+    }
+
+    @Test
+    public void testByteSource() {
+        byte[] inverse = new byte[256];
+        for (int i = 0; i < inverse.length; i++) {
+            inverse[i] = (byte) (255 - i);
+        }
+        TiledImage src = buildImage(DataBuffer.TYPE_BYTE, range(0, 255));
+        assertSameAsChained(src, new LookupTableJAI(inverse), byteTable(0, 256, 8, 10));
+        assertSameAsChained(src, byteTable(0, 256, 32, -20));
+    }
+
+    @Test
+    public void testUShortSource() {
+        LookupTableJAI modality = shortTable(0, 4096, 100, true);
+        LookupTableJAI voi = byteTable(0, 4196, 1, 0);
+        assertSameAsChained(buildImage(DataBuffer.TYPE_USHORT, range(0, 4095)), modality, voi);
+
+        // The values outside the first table take the value of its nearest entry
+        int[] values = { 4095, 4096, 65535 };
+        int[] result = samples(combined(buildImage(DataBuffer.TYPE_USHORT, values), modality, voi));
+        int last = voi.lookup(0, modality.lookup(0, 4095));
+        assertThat(result[0]).isEqualTo(last);
+        assertThat(result[1]).isEqualTo(last);
+        assertThat(result[2]).isEqualTo(last);
+    }
+
+    @Test
+    public void testSignedShortSource() {
+        LookupTableJAI modality = shortTable(-1024, 4096, 1024, false);
+        LookupTableJAI voi = byteTable(0, 4096, 1, 0);
+        assertSameAsChained(buildImage(DataBuffer.TYPE_SHORT, range(-1024, 3071)), modality, voi);
+
+        // The sign is kept and the values outside the first table are clamped
+        int[] values = { -32768, -1025, -1024, 3072, 32767 };
+        int[] result = samples(combined(buildImage(DataBuffer.TYPE_SHORT, values), modality, voi));
+        int first = voi.lookup(0, modality.lookup(0, -1024));
+        int last = voi.lookup(0, modality.lookup(0, 3071));
+        assertThat(result[0]).isEqualTo(first);
+        assertThat(result[1]).isEqualTo(first);
+        assertThat(result[2]).isEqualTo(first);
+        assertThat(result[3]).isEqualTo(last);
+        assertThat(result[4]).isEqualTo(last);
+    }
+
+    @Test
+    public void testWithoutModalityTable() {
+        // VOI LUT directly on the stored values, followed by a presentation LUT
+        LookupTableJAI voi = byteTable(-1024, 4096, 1, 64);
+        byte[] pr = new byte[256];
+        for (int i = 0; i < pr.length; i++) {
+            pr[i] = (byte) (i * i / 255);
+        }
+        LookupTableJAI prLut = new LookupTableJAI(pr);
+        assertSameAsChained(buildImage(DataBuffer.TYPE_SHORT, range(-1024, 3071)), voi, prLut);
+        assertSameAsChained(buildImage(DataBuffer.TYPE_SHORT, range(-1024, 3071)), voi);
+
+        // A table that does not start at the minimum value of the data type
+        LookupTableJAI ushortVoi = byteTable(100, 1000, 4, 0);
+        assertSameAsChained(buildImage(DataBuffer.TYPE_USHORT, range(100, 1099)), ushortVoi);
+        int[] result = samples(combined(buildImage(DataBuffer.TYPE_USHORT, new int[] { 0, 99, 1100 }), ushortVoi));
+        assertThat(result[0]).isEqualTo(ushortVoi.lookup(0, 100));
+        assertThat(result[1]).isEqualTo(ushortVoi.lookup(0, 100));
+        assertThat(result[2]).isEqualTo(ushortVoi.lookup(0, 1099));
+    }
+}
@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.core.api.image.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+
+import org.junit.Test;
+
+public class InstrumentedTileCacheTest {
+
+    private static Raster buildTile(BufferedImage owner) {
+        return owner.getRaster().createCompatibleWritableRaster();
+    }
+
+    @Test
+    public void testHitsAndMisses() {
+        InstrumentedTileCache cache = new InstrumentedTileCache(1024 * 1024);
+        BufferedImage img = new BufferedImage(16, 16, BufferedImage.TYPE_BYTE_GRAY);
+        Raster tile = buildTile(img);
+
+        assertThat(cache.getTile(img, 0, 0)).isNull();
+        cache.add(img, 0, 0, tile);
+        assertThat(cache.getTile(img, 0, 0)).isSameAs(tile);
+        assertThat(cache.getHitCount()).isEqualTo(1);
+        assertThat(cache.getMissCount()).isEqualTo(1);
+        assertThat(cache.getMemoryUsed()).isEqualTo(256);
+        assertThat(cache.getOperatorBytes()).containsEntry("bufferedimage", 256L); //$NON-NLS-1$
+
+        cache.removeTiles(img);
+        assertThat(cache.getTileCount()).isZero();
+        assertThat(cache.getMemoryUsed()).isZero();
+        assertThat(cache.getOperatorBytes()).isEmpty();
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEviction() {
+        // Capacity of 4 tiles of 256 bytes, reduced to 3 tiles by the threshold
+        InstrumentedTileCache cache = new InstrumentedTileCache(1024);
+        BufferedImage img = new BufferedImage(16, 16, BufferedImage.TYPE_BYTE_GRAY);
+        for (int i = 0; i < 4; i++) {
+            cache.add(img, i, 0, buildTile(img));
+        }
+        assertThat(cache.getEvictionCount()).isZero();
+        // Access the first tile, the second one becomes the least recently used
+        assertThat(cache.getTile(img, 0, 0)).isNotNull();
+        cache.add(img, 4, 0, buildTile(img));
+
+        assertThat(cache.getEvictionCount()).isEqualTo(2);
+        assertThat(cache.getTile(img, 0, 0)).isNotNull();
+        assertThat(cache.getTile(img, 1, 0)).isNull();
+        assertThat(cache.getTile(img, 2, 0)).isNull();
+        assertThat(cache.getMemoryUsed()).isEqualTo(768);
+    }
+
+    @Test
+    public void testCapacityProvider() {
+        InstrumentedTileCache cache = new InstrumentedTileCache(4096);
+        cache.setCapacityProvider(() -> 100L, 512L, 2048L);
+        assertThat(cache.getMemoryCapacity()).isEqualTo(512L);
+        cache.setCapacityProvider(() -> 1_000_000L, 512L, 2048L);
+        assertThat(cache.getMemoryCapacity()).isEqualTo(2048L);
+    }
+
+    @Test
+    public void testOperatorName() {
+        assertThat(InstrumentedTileCache.getOperatorName(new BufferedImage(1, 1, BufferedImage.TYPE_BYTE_GRAY)))
+            .isEqualTo("bufferedimage"); //$NON-NLS-1$
+    }
+}
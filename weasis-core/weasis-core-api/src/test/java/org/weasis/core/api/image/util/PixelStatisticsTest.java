@@ -0,0 +1,55 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.core.api.image.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class PixelStatisticsTest {
+
+    private static BufferedImage buildImage() {
+        BufferedImage img = new BufferedImage(4, 4, BufferedImage.TYPE_USHORT_GRAY);
+        WritableRaster raster = img.getRaster();
+        int[] values = { 0, 0, 0, 0, 100, 200, 300, 400, 1000, 2000, 3000, 4095, 5, 5, 5, 5 };
+        raster.setSamples(0, 0, 4, 4, 0, values);
+        return img;
+    }
+
+    @Test
+    public void testMinMaxAndHistogram() {
+        PixelStatistics stats = PixelStatistics.compute(buildImage(), null, null, 0, 4095);
+        assertThat(stats.getMin()).isEqualTo(0.0);
+        assertThat(stats.getMax()).isEqualTo(4095.0);
+        assertThat(stats.getBinLow()).isZero();
+        assertThat(stats.getBinWidth()).isEqualTo(4);
+        assertThat(stats.getBins()).hasSize(PixelStatistics.MAX_BINS);
+        assertThat(Arrays.stream(stats.getBins()).sum()).isEqualTo(16);
+        assertThat(stats.getBins()[0]).isEqualTo(4);
+        assertThat(stats.getBins()[1]).isEqualTo(4);
+        assertThat(stats.getBins()[1023]).isEqualTo(1);
+    }
+
+    @Test
+    public void testExcludedValues() {
+        PixelStatistics stats = PixelStatistics.compute(buildImage(), 0.0, 5.0, 0, 4095);
+        assertThat(stats.getMin()).isEqualTo(100.0);
+        assertThat(stats.getMax()).isEqualTo(4095.0);
+        assertThat(Arrays.stream(stats.getBins()).sum()).isEqualTo(8);
+
+        stats = PixelStatistics.compute(buildImage(), 0.0, 5000.0, 0, 4095);
+        assertThat(stats.getMin()).isNaN();
+    }
+}
@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.core.api.media.data;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class CompactTagMapTest {
+
+    @Test
+    public void testMapContract() {
+        CompactTagMap tags = new CompactTagMap();
+        Map<TagW, Object> expected = new HashMap<>();
+        TagW[] keys = { TagW.FileName, TagW.FilePath, TagW.HasOverlay, TagW.ImageCache, TagW.SubseriesInstanceUID };
+        for (int i = keys.length - 1; i >= 0; i--) {
+            assertThat(tags.put(keys[i], i)).isNull();
+            expected.put(keys[i], i);
+        }
+        tags.put(TagW.FilePath, null);
+        expected.put(TagW.FilePath, null);
+        assertThat(tags).isEqualTo(expected).hasSize(keys.length).containsKey(TagW.FilePath);
+        assertThat(tags.hashCode()).isEqualTo(expected.hashCode());
+
+        assertThat(tags.remove(TagW.HasOverlay)).isEqualTo(2);
+        for (Iterator<TagW> it = tags.keySet().iterator(); it.hasNext();) {
+            if (TagW.FileName.equals(it.next())) {
+                it.remove();
+            }
+        }
+        assertThat(tags).hasSize(keys.length - 2).doesNotContainKey(TagW.FileName)
+            .containsEntry(TagW.ImageCache, 3);
+    }
+
+    @Test
+    public void testInternedStrings() {
+        CompactTagMap tags1 = new CompactTagMap();
+        CompactTagMap tags2 = new CompactTagMap();
+        tags1.put(TagW.SubseriesInstanceUID, new String("1.2.3.4")); //$NON-NLS-1$
+        tags2.put(TagW.SubseriesInstanceUID, new String("1.2.3.4")); //$NON-NLS-1$
+        assertThat(tags1.get(TagW.SubseriesInstanceUID)).isSameAs(tags2.get(TagW.SubseriesInstanceUID));
+
+        // The values of the other tags are kept as they are
+        tags1.put(TagW.FileName, new String("image.dcm")); //$NON-NLS-1$
+        tags2.put(TagW.FileName, new String("image.dcm")); //$NON-NLS-1$
+        assertThat(tags1.get(TagW.FileName)).isEqualTo(tags2.get(TagW.FileName))
+            .isNotSameAs(tags2.get(TagW.FileName));
+    }
+
+    @Test
+    public void testModifiedWhileIterating() {
+        CompactTagMap tags = new CompactTagMap();
+        tags.put(TagW.FileName, "a"); //$NON-NLS-1$
+        tags.put(TagW.FilePath, "b"); //$NON-NLS-1$
+        Iterator<TagW> it = tags.keySet().iterator();
+        assertThat(it.next()).isNotNull();
+        // The iterator keeps the entries of its creation
+        tags.put(TagW.ImageCache, true);
+        tags.remove(TagW.FilePath);
+        assertThat(it.hasNext()).isTrue();
+        it.next();
+        assertThat(it.hasNext()).isFalse();
+        assertThat(tags).hasSize(2).containsEntry(TagW.ImageCache, true).doesNotContainKey(TagW.FilePath);
+    }
+}
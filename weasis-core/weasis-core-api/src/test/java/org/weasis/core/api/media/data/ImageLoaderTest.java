@@ -0,0 +1,128 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.core.api.media.data;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.media.jai.PlanarImage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class ImageLoaderTest {
+
+    private ImageLoader loader;
+
+    @Before
+    public void setUp() {
+        loader = new ImageLoader(1, "Test Loader"); //$NON-NLS-1$
+    }
+
+    @After
+    public void tearDown() {
+        loader.shutdown();
+    }
+
+    @Test
+    public void testCoalescedRequests() throws Exception {
+        ImageElement img = Mockito.mock(ImageElement.class);
+        CountDownLatch latch = new CountDownLatch(1);
+        AtomicInteger nbCalls = new AtomicInteger();
+
+        Future<PlanarImage> f1 = loader.load(img, () -> {
+            nbCalls.incrementAndGet();
+            latch.await();
+            return null;
+        }, ImageLoader.Priority.PRELOAD);
+        Future<PlanarImage> f2 = loader.load(img, () -> {
+            nbCalls.incrementAndGet();
+            return null;
+        }, ImageLoader.Priority.DISPLAY);
+
+        assertThat(f2).isSameAs(f1);
+        assertThat(loader.isLoading(img)).isTrue();
+        latch.countDown();
+        f1.get(5, TimeUnit.SECONDS);
+        assertThat(nbCalls.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void testPriorityOrder() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        List<String> order = new CopyOnWriteArrayList<>();
+
+        // Block the single thread of the pool
+        loader.submit(() -> {
+            latch.await();
+            return null;
+        }, ImageLoader.Priority.DISPLAY);
+
+        ImageElement preload = Mockito.mock(ImageElement.class);
+        ImageElement display = Mockito.mock(ImageElement.class);
+        ImageElement raised = Mockito.mock(ImageElement.class);
+        loader.load(preload, () -> {
+            order.add("preload"); //$NON-NLS-1$
+            return null;
+        }, ImageLoader.Priority.PRELOAD);
+        loader.load(raised, () -> {
+            order.add("raised"); //$NON-NLS-1$
+            return null;
+        }, ImageLoader.Priority.PRELOAD);
+        Future<PlanarImage> last = loader.load(display, () -> {
+            order.add("display"); //$NON-NLS-1$
+            return null;
+        }, ImageLoader.Priority.DISPLAY);
+        // A display request on a queued preload raises its priority (and keeps its rank among the displayed images)
+        loader.load(raised, () -> null, ImageLoader.Priority.DISPLAY);
+
+        latch.countDown();
+        last.get(5, TimeUnit.SECONDS);
+        loader.load(preload, () -> null, ImageLoader.Priority.PRELOAD).get(5, TimeUnit.SECONDS);
+
+        assertThat(order).containsExactly("raised", "display", "preload"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+    }
+
+    @Test
+    public void testSharedCancel() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        // Block the single thread of the pool
+        loader.submit(() -> {
+            latch.await();
+            return null;
+        }, ImageLoader.Priority.DISPLAY);
+
+        ImageElement img = Mockito.mock(ImageElement.class);
+        Future<PlanarImage> prefetch = loader.load(img, () -> null, ImageLoader.Priority.PREFETCH);
+        Future<PlanarImage> display = loader.load(img, () -> null, ImageLoader.Priority.DISPLAY);
+
+        // The displayed image is still waiting for the task
+        assertThat(loader.cancel(img, ImageLoader.Priority.PREFETCH)).isFalse();
+        assertThat(display.isCancelled()).isFalse();
+
+        ImageElement other = Mockito.mock(ImageElement.class);
+        Future<PlanarImage> preload = loader.load(other, () -> null, ImageLoader.Priority.PRELOAD);
+        assertThat(loader.cancel(other, ImageLoader.Priority.PRELOAD)).isTrue();
+        assertThat(preload.isCancelled()).isTrue();
+
+        latch.countDown();
+        display.get(5, TimeUnit.SECONDS);
+        assertThat(prefetch).isSameAs(display);
+    }
+}
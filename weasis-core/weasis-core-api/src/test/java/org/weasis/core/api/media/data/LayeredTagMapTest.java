@@ -0,0 +1,56 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.core.api.media.data;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class LayeredTagMapTest {
+
+    private static Map<TagW, Object> buildShared() {
+        Map<TagW, Object> shared = new HashMap<>();
+        shared.put(TagW.HasOverlay, Boolean.TRUE);
+        shared.put(TagW.ImageCache, Boolean.FALSE);
+        return shared;
+    }
+
+    @Test
+    public void testOverride() {
+        Map<TagW, Object> shared = buildShared();
+        LayeredTagMap tags = new LayeredTagMap(shared);
+        assertThat(tags).hasSize(2).containsEntry(TagW.HasOverlay, Boolean.TRUE);
+
+        tags.put(TagW.ImageCache, Boolean.TRUE);
+        tags.put(TagW.ShutterFinalShape, null);
+        assertThat(tags.getLayerSize()).isEqualTo(2);
+        assertThat(tags).hasSize(3).containsEntry(TagW.ImageCache, Boolean.TRUE).containsKey(TagW.ShutterFinalShape);
+        assertThat(shared).hasSize(2).containsEntry(TagW.ImageCache, Boolean.FALSE);
+    }
+
+    @Test
+    public void testRemoveAndClear() {
+        Map<TagW, Object> shared = buildShared();
+        LayeredTagMap tags = new LayeredTagMap(shared);
+        assertThat(tags.remove(TagW.HasOverlay)).isEqualTo(Boolean.TRUE);
+        assertThat(tags.containsKey(TagW.HasOverlay)).isFalse();
+        assertThat(tags).hasSize(1);
+        assertThat(shared).containsKey(TagW.HasOverlay);
+
+        tags.clear();
+        assertThat(tags).isEmpty();
+        assertThat(tags.get(TagW.ImageCache)).isNull();
+        assertThat(shared).hasSize(2);
+    }
+}
@@ -0,0 +1,126 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.core.api.media.data;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.media.jai.PlanarImage;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class LruImageCacheTest {
+
+    // 10 x 10 x 1 byte
+    private static final long IMAGE_SIZE = 100L;
+
+    private final List<ImageElement> evicted = new ArrayList<>();
+    private LruImageCache cache;
+
+    @Before
+    public void setUp() {
+        evicted.clear();
+        cache = new LruImageCache(3 * IMAGE_SIZE) {
+            @Override
+            protected void imageEvicted(ImageElement key, PlanarImage image) {
+                evicted.add(key);
+            }
+        };
+    }
+
+    private static PlanarImage buildImage(int type) {
+        return PlanarImage.wrapRenderedImage(new BufferedImage(10, 10, type));
+    }
+
+    @Test
+    public void testImageSize() {
+        assertThat(LruImageCache.getImageSize(buildImage(BufferedImage.TYPE_BYTE_GRAY))).isEqualTo(IMAGE_SIZE);
+        assertThat(LruImageCache.getImageSize(buildImage(BufferedImage.TYPE_USHORT_GRAY))).isEqualTo(2 * IMAGE_SIZE);
+        assertThat(LruImageCache.getImageSize(buildImage(BufferedImage.TYPE_3BYTE_BGR))).isEqualTo(3 * IMAGE_SIZE);
+        assertThat(LruImageCache.getImageSize(null)).isEqualTo(0L);
+    }
+
+    @Test
+    public void testLruEviction() {
+        ImageElement e1 = Mockito.mock(ImageElement.class);
+        ImageElement e2 = Mockito.mock(ImageElement.class);
+        ImageElement e3 = Mockito.mock(ImageElement.class);
+        ImageElement e4 = Mockito.mock(ImageElement.class);
+
+        cache.put(e1, buildImage(BufferedImage.TYPE_BYTE_GRAY));
+        cache.put(e2, buildImage(BufferedImage.TYPE_BYTE_GRAY));
+        cache.put(e3, buildImage(BufferedImage.TYPE_BYTE_GRAY));
+        assertThat(cache.getCurrentBytes()).isEqualTo(3 * IMAGE_SIZE);
+
+        // Access e1, so e2 becomes the eldest entry
+        assertThat(cache.get(e1)).isNotNull();
+        cache.put(e4, buildImage(BufferedImage.TYPE_BYTE_GRAY));
+
+        assertThat(evicted).containsExactly(e2);
+        assertThat(cache.contains(e2)).isFalse();
+        assertThat(cache.get(e2)).isNull();
+        assertThat(cache.size()).isEqualTo(3);
+        assertThat(cache.getCurrentBytes()).isEqualTo(3 * IMAGE_SIZE);
+        assertThat(cache.getHitCount()).isEqualTo(1);
+        assertThat(cache.getMissCount()).isEqualTo(1);
+        assertThat(cache.getEvictionCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testPinnedImages() {
+        ImageElement e1 = Mockito.mock(ImageElement.class);
+        ImageElement e2 = Mockito.mock(ImageElement.class);
+
+        cache.setMaxBytes(IMAGE_SIZE);
+        cache.pin(e1);
+        cache.pin(e1);
+        cache.put(e1, buildImage(BufferedImage.TYPE_BYTE_GRAY));
+        cache.put(e2, buildImage(BufferedImage.TYPE_BYTE_GRAY));
+
+        // e1 is pinned, so e2 is evicted even if it is the most recent one
+        assertThat(evicted).containsExactly(e2);
+        assertThat(cache.evict(IMAGE_SIZE)).isEqualTo(0L);
+
+        cache.unpin(e1);
+        assertThat(cache.isPinned(e1)).isTrue();
+        cache.unpin(e1);
+        assertThat(cache.isPinned(e1)).isFalse();
+
+        // e1 is not pinned anymore and can be evicted
+        cache.put(e2, buildImage(BufferedImage.TYPE_BYTE_GRAY));
+        assertThat(evicted).containsExactly(e2, e1);
+        assertThat(cache.contains(e1)).isFalse();
+        assertThat(cache.contains(e2)).isTrue();
+        assertThat(cache.getCurrentBytes()).isEqualTo(IMAGE_SIZE);
+    }
+
+    @Test
+    public void testRemoveAndClear() {
+        ImageElement e1 = Mockito.mock(ImageElement.class);
+        ImageElement e2 = Mockito.mock(ImageElement.class);
+
+        cache.put(e1, buildImage(BufferedImage.TYPE_BYTE_GRAY));
+        cache.put(e2, buildImage(BufferedImage.TYPE_BYTE_GRAY));
+        assertThat(cache.remove(e1)).isNotNull();
+        assertThat(evicted).isEmpty();
+        assertThat(cache.getCurrentBytes()).isEqualTo(IMAGE_SIZE);
+
+        cache.clear();
+        assertThat(evicted).containsExactly(e2);
+        assertThat(cache.size()).isEqualTo(0);
+        assertThat(cache.getCurrentBytes()).isEqualTo(0L);
+    }
+}
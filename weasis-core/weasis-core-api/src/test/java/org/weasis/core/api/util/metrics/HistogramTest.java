@@ -0,0 +1,48 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.core.api.util.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+public class HistogramTest {
+
+    @Test
+    public void testPercentiles() {
+        Histogram histogram = new Histogram("test"); //$NON-NLS-1$
+        assertThat(histogram.getPercentile(50)).isZero();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+        assertThat(histogram.getCount()).isEqualTo(100);
+        assertThat(histogram.getSum()).isEqualTo(5050);
+        assertThat(histogram.getMax()).isEqualTo(100);
+        assertThat(histogram.getMean()).isEqualTo(50.5);
+        // Upper bound of the bucket [32, 63]
+        assertThat(histogram.getPercentile(50)).isEqualTo(63);
+        // Upper bound of the bucket [64, 127] limited by the maximum
+        assertThat(histogram.getPercentile(95)).isEqualTo(100);
+
+        histogram.reset();
+        assertThat(histogram.getCount()).isZero();
+        assertThat(histogram.getMax()).isZero();
+    }
+
+    @Test
+    public void testNegativeAndLargeValues() {
+        Histogram histogram = new Histogram("test"); //$NON-NLS-1$
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+        assertThat(histogram.getPercentile(0)).isZero();
+        assertThat(histogram.getPercentile(100)).isEqualTo(Long.MAX_VALUE);
+    }
+}
@@ -105,6 +105,7 @@ import org.weasis.core.api.media.data.SeriesComparator;
 import org.weasis.core.api.media.data.TagW;
 import org.weasis.core.api.service.AuditLog;
 import org.weasis.core.api.util.FontTools;
+import org.weasis.core.api.util.MemoryManager;
 import org.weasis.core.api.util.StringUtil;
 import org.weasis.core.ui.Messages;
 import org.weasis.core.ui.docking.UIManager;
@@ -204,6 +205,9 @@ public abstract class DefaultView2d<E extends ImageElement> extends GraphicsPane
         this.tileOffset = 0;
 
         imageLayer = new RenderedImageLayer<>(true);
+        imageLayer.setProgressiveRendering(true);
+        // Share the outputs of the leading operations with the other views displaying the same image
+        imageLayer.getDisplayOpManager().setSharedOutputs(true);
         initActionWState();
         graphicMouseHandler = new GraphicMouseHandler<>(this);
 
@@ -351,11 +355,7 @@ public abstract class DefaultView2d<E extends ImageElement> extends GraphicsPane
                 } catch (OutOfMemoryError e) {
                     LOGGER.error("Get pixel value", e);//$NON-NLS-1$
                     // when image tile is not available anymore (file stream closed)
-                    System.gc();
-                    try {
-                        Thread.sleep(100);
-                    } catch (InterruptedException et) {
-                    }
+                    MemoryManager.releaseAfterOutOfMemory();
 
                 } catch (Exception e) {
                     LOGGER.error("Get pixel value", e);//$NON-NLS-1$
@@ -789,6 +789,7 @@ public abstract class DefaultView2d<E extends ImageElement> extends GraphicsPane
     /** Provides panning */
     public final void setOrigin(Double x, Double y) {
         getViewModel().setModelOffset(x, y);
+        imageLayer.notifyInteraction();
         Optional.ofNullable(panner).ifPresent(p -> p.updateImageSize());
         Optional.ofNullable(lens).ifPresent(l -> l.updateZoom());
     }
@@ -1240,6 +1241,7 @@ public abstract class DefaultView2d<E extends ImageElement> extends GraphicsPane
         removeFocusListener(this);
         ToolTipManager.sharedInstance().unregisterComponent(this);
         imageLayer.removeLayerChangeListener(this);
+        imageLayer.getDisplayOpManager().setSharedOutputs(false);
         Optional.ofNullable(lens).ifPresent(l -> l.showLens(false));
         if (series != null) {
             closingSeries(series);
@@ -46,6 +46,8 @@ public class ExportImage<E extends ImageElement> extends DefaultView2d<E> {
         this.view2d = view2d;
         // Pixel iterator is necessary for updating label of measurements
         this.imageLayer.setBuildIterator(true);
+        // Always render in full quality
+        this.imageLayer.setProgressiveRendering(false);
         // Remove OpEventListener to avoid reseting some parameters when setting the series
         this.imageLayer.removeEventListener(imageLayer.getDisplayOpManager());
         setFont(FontTools.getFont8());
@@ -325,6 +325,9 @@ public class ZoomWin<E extends ImageElement> extends GraphicsPane implements Ima
             node.setParam(Param.INPUT_IMG, getSourceImage());
             node.setParam(ZoomOp.P_RATIO_X, viewScale * img.getRescaleX());
             node.setParam(ZoomOp.P_RATIO_Y, viewScale * img.getRescaleY());
+            // The image of the parent view can be a reduction of the original image
+            node.setParam(ZoomOp.P_INPUT_REDUCTION_X, getSourceReduction(ZoomOp.P_INPUT_REDUCTION_X));
+            node.setParam(ZoomOp.P_INPUT_REDUCTION_Y, getSourceReduction(ZoomOp.P_INPUT_REDUCTION_Y));
             actionsInView.put(ActionW.ZOOM.cmd(), viewScale);
             super.zoom(getCenterX(), getCenterY(), Math.abs(viewScale));
             imageLayer.updateDisplayOperations();
@@ -352,6 +355,16 @@ public class ZoomWin<E extends ImageElement> extends GraphicsPane implements Ima
         return view2d.getImageLayer().getDisplayOpManager().getLastNodeOutputImage();
     }
 
+    private Object getSourceReduction(String key) {
+        SyncType type = (SyncType) actionsInView.get(ZoomWin.FREEZE_CMD);
+        if (SyncType.PARENT_PARAMETERS.equals(type) || SyncType.PARENT_IMAGE.equals(type)) {
+            // Built from the original image
+            return null;
+        }
+        ImageOpNode node = view2d.getImageLayer().getDisplayOpManager().getNode(ZoomOp.OP_NAME);
+        return node == null ? null : node.getParam(key);
+    }
+
     public void setFreezeImage(SyncType type) {
         actionsInView.put(ZoomWin.FREEZE_CMD, type);
         if (Objects.isNull(type) || SyncType.NONE.equals(type)) {
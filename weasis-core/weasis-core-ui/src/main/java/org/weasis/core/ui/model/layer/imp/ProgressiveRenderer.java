@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.core.ui.model.layer.imp;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.weasis.core.api.service.BundleTools;
+import org.weasis.core.api.util.ThreadUtil;
+
+/**
+ * Lowers the rendering quality of an image layer during a continuous interaction (pan, zoom, window/level...) and
+ * restores the full quality when the changes stop.
+ * <p>
+ * A change following the previous one by less than the idle delay starts the interactive mode. When no change occurs
+ * during the idle delay, the tiles required by the full quality are computed in background and then the layer is
+ * repainted. A new change cancels the pending computation.
+ */
+final class ProgressiveRenderer {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ProgressiveRenderer.class);
+
+    public static final String P_IDLE_DELAY = "weasis.image.progressive.delay"; //$NON-NLS-1$
+    private static final int IDLE_DELAY = BundleTools.SYSTEM_PREFERENCES.getIntProperty(P_IDLE_DELAY, 150);
+
+    private static final ExecutorService REFINER = ThreadUtil.buildNewSingleThreadExecutor("Image Refiner"); //$NON-NLS-1$
+
+    private final RenderedImageLayer<?> layer;
+    private final Timer idleTimer;
+    private final AtomicLong generation = new AtomicLong();
+
+    private volatile boolean interactive;
+    private volatile boolean refining;
+    private long lastChange;
+    private Future<?> task;
+
+    ProgressiveRenderer(RenderedImageLayer<?> layer) {
+        this.layer = layer;
+        this.idleTimer = new Timer(Math.max(1, IDLE_DELAY), e -> refine());
+        this.idleTimer.setRepeats(false);
+    }
+
+    /**
+     * @return true during a continuous interaction, the rendering must be fast
+     */
+    boolean isInteractive() {
+        return interactive;
+    }
+
+    /**
+     * @return true while the full quality is prepared in background, the last preview must be displayed
+     */
+    boolean isRefining() {
+        return refining;
+    }
+
+    synchronized void changed() {
+        long now = System.nanoTime();
+        if (now - lastChange < IDLE_DELAY * 1_000_000L) {
+            interactive = true;
+        }
+        lastChange = now;
+        refining = false;
+        generation.incrementAndGet();
+        if (task != null) {
+            task.cancel(false);
+            task = null;
+        }
+        if (interactive) {
+            idleTimer.restart();
+        }
+    }
+
+    synchronized void stop() {
+        idleTimer.stop();
+        generation.incrementAndGet();
+        if (task != null) {
+            task.cancel(false);
+            task = null;
+        }
+        interactive = false;
+        refining = false;
+    }
+
+    // Called in the EDT
+    private void refine() {
+        long gen;
+        synchronized (this) {
+            if (!interactive) {
+                return;
+            }
+            interactive = false;
+            gen = generation.get();
+        }
+
+        Runnable tiles = layer.prepareFullQuality();
+        if (tiles == null) {
+            layer.fireLayerChanged();
+            return;
+        }
+
+        synchronized (this) {
+            if (gen != generation.get()) {
+                return;
+            }
+            refining = true;
+            task = REFINER.submit(() -> {
+                if (gen != generation.get()) {
+                    return;
+                }
+                try {
+                    tiles.run();
+                } catch (Exception | OutOfMemoryError e) {
+                    LOGGER.error("Computing the full quality image", e); //$NON-NLS-1$
+                }
+                SwingUtilities.invokeLater(() -> {
+                    if (gen == generation.get()) {
+                        refining = false;
+                        layer.fireLayerChanged();
+                    }
+                });
+            });
+        }
+    }
+}
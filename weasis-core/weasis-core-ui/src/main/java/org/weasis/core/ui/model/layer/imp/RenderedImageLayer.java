@@ -12,6 +12,8 @@ package org.weasis.core.ui.model.layer.imp;
 
 import java.awt.Graphics2D;
 import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
 import java.awt.Shape;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Rectangle2D;
@@ -29,15 +31,22 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.weasis.core.api.gui.util.MathUtil;
 import org.weasis.core.api.image.ImageOpEvent;
+import org.weasis.core.api.image.ImageOpNode;
 import org.weasis.core.api.image.OpEventListener;
 import org.weasis.core.api.image.OpManager;
 import org.weasis.core.api.image.SimpleOpManager;
 import org.weasis.core.api.image.ZoomOp;
 import org.weasis.core.api.image.measure.MeasurementsAdapter;
 import org.weasis.core.api.image.util.ImageLayer;
+import org.weasis.core.api.image.util.ImagePyramid;
+import org.weasis.core.api.image.util.TilePrefetcher;
 import org.weasis.core.api.image.util.Unit;
 import org.weasis.core.api.media.data.ImageElement;
 import org.weasis.core.api.media.data.TagW;
+import org.weasis.core.api.service.BundleTools;
+import org.weasis.core.api.util.MemoryManager;
+import org.weasis.core.api.util.metrics.MetricsRegistry;
+import org.weasis.core.api.util.metrics.Timer;
 import org.weasis.core.ui.model.layer.Layer;
 import org.weasis.core.ui.model.layer.LayerType;
 import org.weasis.core.ui.model.utils.ImageLayerChangeListener;
@@ -53,6 +62,21 @@ public class RenderedImageLayer<E extends ImageElement> extends DefaultUUID impl
 
     private static final Logger LOGGER = LoggerFactory.getLogger(RenderedImageLayer.class);
 
+    /**
+     * When true and the zoom is the only geometric operation, the visible part of the image before the zoom is
+     * resampled once to the screen resolution (see {@link #drawImage(Graphics2D)}).
+     */
+    public static final String P_VIEWPORT_RENDERING = "weasis.image.viewport.rendering"; //$NON-NLS-1$
+    private static final boolean VIEWPORT_RENDERING =
+        BundleTools.SYSTEM_PREFERENCES.getBooleanProperty(P_VIEWPORT_RENDERING, true);
+
+    /**
+     * When true, the views render a fast preview during the continuous interactions (see {@link ProgressiveRenderer}).
+     */
+    public static final String P_PROGRESSIVE_RENDERING = "weasis.image.progressive.rendering"; //$NON-NLS-1$
+    private static final boolean PROGRESSIVE_RENDERING =
+        BundleTools.SYSTEM_PREFERENCES.getBooleanProperty(P_PROGRESSIVE_RENDERING, true);
+
     private final SimpleOpManager disOpManager;
     private final List<ImageLayerChangeListener<E>> listenerList;
     private final List<OpEventListener> opListeners;
@@ -65,6 +89,14 @@ public class RenderedImageLayer<E extends ImageElement> extends DefaultUUID impl
     private Boolean visible = true;
     private boolean enableDispOperations = true;
     private Point offset;
+    private ImagePyramid pyramid;
+    private ProgressiveRenderer progressive;
+    private final TilePrefetcher prefetcher = new TilePrefetcher();
+    private Rectangle2D visibleRect;
+    // Last image drawn during an interaction
+    private RenderedImage previewSource;
+    private double previewScaleX;
+    private double previewScaleY;
 
     public RenderedImageLayer(boolean buildIterator) {
         this(null, buildIterator);
@@ -86,6 +118,35 @@ public class RenderedImageLayer<E extends ImageElement> extends DefaultUUID impl
         this.buildIterator = buildIterator;
     }
 
+    public boolean isProgressiveRendering() {
+        return progressive != null;
+    }
+
+    /**
+     * Enables a fast rendering (nearest neighbor interpolation and lower resolution) during the continuous interactions
+     * and the full quality rendering when they stop. Must not be enabled for exporting or printing.
+     */
+    public void setProgressiveRendering(boolean enabled) {
+        if (enabled && PROGRESSIVE_RENDERING) {
+            if (progressive == null) {
+                progressive = new ProgressiveRenderer(this);
+            }
+        } else if (progressive != null) {
+            progressive.stop();
+            progressive = null;
+            previewSource = null;
+        }
+    }
+
+    /**
+     * Notifies a change of the display which does not modify the display operations (e.g. panning).
+     */
+    public void notifyInteraction() {
+        if (progressive != null) {
+            progressive.changed();
+        }
+    }
+
     @Override
     public RandomIter getReadIterator() {
         return readIterator;
@@ -198,7 +259,15 @@ public class RenderedImageLayer<E extends ImageElement> extends DefaultUUID impl
     @Override
     public void setImage(E image, OpManager preprocessing) {
         boolean init = (image != null && !image.equals(this.sourceImage)) || (image == null && sourceImage != null);
+        if (init) {
+            // Keep the displayed image in the cache
+            ImageElement.getImageCache().unpin(this.sourceImage);
+            ImageElement.getImageCache().pin(image);
+        }
         this.sourceImage = image;
+        if (init) {
+            this.pyramid = null;
+        }
 
         this.preprocessing = preprocessing;
         if (preprocessing != null || init) {
@@ -214,9 +283,9 @@ public class RenderedImageLayer<E extends ImageElement> extends DefaultUUID impl
         }
 
         Shape clip = g2d.getClip();
+        Rectangle2D rect = new Rectangle2D.Double(displayImage.getMinX(), displayImage.getMinY(),
+            displayImage.getWidth() - 1, displayImage.getHeight() - 1);
         if (clip instanceof Rectangle2D) {
-            Rectangle2D rect = new Rectangle2D.Double(displayImage.getMinX(), displayImage.getMinY(),
-                displayImage.getWidth() - 1, displayImage.getHeight() - 1);
             rect = rect.createIntersection((Rectangle2D) clip);
             if (rect.isEmpty()) {
                 return;
@@ -225,9 +294,30 @@ public class RenderedImageLayer<E extends ImageElement> extends DefaultUUID impl
             // rect.setRect(Math.ceil(rect.getX()), Math.ceil(rect.getY()), rect.getWidth() - 1, rect.getHeight() - 1);
             g2d.setClip(rect);
         }
+        visibleRect = rect;
 
+        // JAI operations are deferred, this timer includes the computation of the tiles not in cache
+        Timer timer = MetricsRegistry.timer("render.draw"); //$NON-NLS-1$
+        long start = timer.start();
         try {
-            g2d.drawRenderedImage(displayImage, AffineTransform.getTranslateInstance(0.0, 0.0));
+            if (progressive != null && progressive.isRefining() && previewSource != null) {
+                // The full quality image is computed in background
+                drawScaledImage(g2d, previewSource, previewScaleX, previewScaleY,
+                    RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+            } else {
+                ZoomOp zoom = getViewportZoom();
+                if (TilePrefetcher.isEnabled()) {
+                    // Compute concurrently the visible tiles instead of one by one while drawing
+                    RenderedImage target = zoom == null ? displayImage : getZoomInput(zoom);
+                    prefetcher.prefetch(target, getDrawnRegion(zoom, target, rect));
+                }
+                if (zoom == null) {
+                    g2d.drawRenderedImage(displayImage, AffineTransform.getTranslateInstance(0.0, 0.0));
+                } else {
+                    drawViewport(g2d, zoom);
+                }
+            }
+            timer.stop(start);
         } catch (Exception | OutOfMemoryError e) {
             LOGGER.error("Draw rendered image", e);//$NON-NLS-1$
             if ("java.io.IOException: closed".equals(e.getMessage())) { //$NON-NLS-1$
@@ -240,18 +330,122 @@ public class RenderedImageLayer<E extends ImageElement> extends DefaultUUID impl
                 updateDisplayOperations();
             } else if (e instanceof OutOfMemoryError) {
                 // When outOfMemory exception or when tiles are not available anymore (file stream closed)
-                System.gc();
-                try {
-                    // Let garbage collection
-                    Thread.sleep(100);
-                } catch (InterruptedException et) {
-                }
+                MemoryManager.releaseAfterOutOfMemory();
             }
         }
         g2d.setClip(clip);
 
     }
 
+    /**
+     * Draws the input image of the zoom operation with the zoom transformation instead of the output of the display
+     * pipeline. Java2D requests only the source region inverse-transformed from the clip and resamples it once to the
+     * screen, so the work depends on the number of screen pixels. The scaled image at display size is never computed.
+     *
+     * @see #getViewportZoom()
+     */
+    private void drawViewport(Graphics2D g2d, ZoomOp zoom) {
+        RenderedImage source = getZoomInput(zoom);
+        double scaleX = Math.abs(zoom.getScaleX());
+        double scaleY = Math.abs(zoom.getScaleY());
+        if (progressive != null && progressive.isInteractive()) {
+            previewSource = source;
+            previewScaleX = scaleX;
+            previewScaleY = scaleY;
+            drawScaledImage(g2d, source, scaleX, scaleY, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+        } else {
+            previewSource = null;
+            drawScaledImage(g2d, source, scaleX, scaleY,
+                getInterpolationHint((Integer) zoom.getParam(ZoomOp.P_INTERPOLATION)));
+        }
+    }
+
+    /**
+     * @return the zoom operation when its input can be drawn directly, or null when the output of the zoom is
+     *         transformed by another operation (e.g. rotation or flip)
+     */
+    private ZoomOp getViewportZoom() {
+        if (!VIEWPORT_RENDERING) {
+            return null;
+        }
+        ImageOpNode node = disOpManager.getNode(ZoomOp.OP_NAME);
+        if (!(node instanceof ZoomOp) || !node.isEnabled()
+            || node.getParam(ImageOpNode.Param.OUTPUT_IMG) != displayImage) {
+            return null;
+        }
+        ZoomOp zoom = (ZoomOp) node;
+        RenderedImage source = getZoomInput(zoom);
+        if (source == null || source == displayImage || zoom.getScaleX() == null || zoom.getScaleY() == null
+            || source.getColorModel() == null) {
+            return null;
+        }
+        return zoom;
+    }
+
+    private static RenderedImage getZoomInput(ZoomOp zoom) {
+        return (RenderedImage) zoom.getParam(ImageOpNode.Param.INPUT_IMG);
+    }
+
+    /**
+     * @return the region of the drawn image required for the visible area (with a margin for the interpolation)
+     */
+    private static Rectangle getDrawnRegion(ZoomOp zoom, RenderedImage target, Rectangle2D rect) {
+        double scaleX = zoom == null ? 1.0 : Math.abs(zoom.getScaleX());
+        double scaleY = zoom == null ? 1.0 : Math.abs(zoom.getScaleY());
+        Rectangle region = new Rectangle((int) Math.floor(rect.getX() / scaleX) - 2,
+            (int) Math.floor(rect.getY() / scaleY) - 2, (int) Math.ceil(rect.getWidth() / scaleX) + 5,
+            (int) Math.ceil(rect.getHeight() / scaleY) + 5);
+        return region.intersection(
+            new Rectangle(target.getMinX(), target.getMinY(), target.getWidth(), target.getHeight()));
+    }
+
+    private static void drawScaledImage(Graphics2D g2d, RenderedImage source, double scaleX, double scaleY,
+        Object interpolation) {
+        Object oldInterpolation = g2d.getRenderingHint(RenderingHints.KEY_INTERPOLATION);
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolation);
+        g2d.drawRenderedImage(source, AffineTransform.getScaleInstance(scaleX, scaleY));
+        if (oldInterpolation != null) {
+            g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, oldInterpolation);
+        }
+    }
+
+    /**
+     * Builds the display operations in full quality and returns the computation of the visible tiles, which can be
+     * executed in background. Used by {@link ProgressiveRenderer} when an interaction stops.
+     *
+     * @return the computation of the tiles or null if there is nothing to display
+     */
+    Runnable prepareFullQuality() {
+        if (!isEnableDispOperations() || displayImage == null) {
+            return null;
+        }
+        updateSourceLevel();
+        displayImage = disOpManager.process();
+        Rectangle2D rect = visibleRect;
+        if (displayImage == null || rect == null) {
+            return null;
+        }
+
+        ZoomOp zoom = getViewportZoom();
+        RenderedImage target = zoom == null ? displayImage : getZoomInput(zoom);
+        Rectangle region = getDrawnRegion(zoom, target, rect);
+        if (region.isEmpty()) {
+            return null;
+        }
+        return () -> prefetcher.prefetch(target, region);
+    }
+
+    private static Object getInterpolationHint(Integer interpolation) {
+        // Same default as ZoomOp: bilinear
+        int type = interpolation == null || interpolation < 0 || interpolation > 3 ? 1 : interpolation;
+        if (type == 0) {
+            return RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR;
+        } else if (type == 1) {
+            return RenderingHints.VALUE_INTERPOLATION_BILINEAR;
+        }
+        return RenderingHints.VALUE_INTERPOLATION_BICUBIC;
+    }
+
     public void drawImageForPrinter(Graphics2D g2d, double viewScale) {
         // Get the clipping rectangle
         if (!visible || displayImage == null) {
@@ -281,11 +475,26 @@ public class RenderedImageLayer<E extends ImageElement> extends DefaultUUID impl
 
         disOpManager.setParamValue(ZoomOp.OP_NAME, ZoomOp.P_RATIO_X, imageResX);
         disOpManager.setParamValue(ZoomOp.OP_NAME, ZoomOp.P_RATIO_Y, imageResY);
+        // Print from the original image, not from a reduction
+        RenderedImage input = disOpManager.getFirstNodeInputImage();
+        Object reductionX = disOpManager.getParamValue(ZoomOp.OP_NAME, ZoomOp.P_INPUT_REDUCTION_X);
+        Object reductionY = disOpManager.getParamValue(ZoomOp.OP_NAME, ZoomOp.P_INPUT_REDUCTION_Y);
+        ImagePyramid pyramid = getPyramid();
+        if (pyramid != null && pyramid.contains(input)) {
+            disOpManager.setFirstNode(pyramid.getBase());
+            disOpManager.removeParam(ZoomOp.OP_NAME, ZoomOp.P_INPUT_REDUCTION_X);
+            disOpManager.removeParam(ZoomOp.OP_NAME, ZoomOp.P_INPUT_REDUCTION_Y);
+        }
 
         RenderedImage img = disOpManager.process();
 
         disOpManager.setParamValue(ZoomOp.OP_NAME, ZoomOp.P_RATIO_X, ratioX);
         disOpManager.setParamValue(ZoomOp.OP_NAME, ZoomOp.P_RATIO_Y, ratioY);
+        if (input != disOpManager.getFirstNodeInputImage()) {
+            disOpManager.setFirstNode(input);
+            disOpManager.setParamValue(ZoomOp.OP_NAME, ZoomOp.P_INPUT_REDUCTION_X, reductionX);
+            disOpManager.setParamValue(ZoomOp.OP_NAME, ZoomOp.P_INPUT_REDUCTION_Y, reductionY);
+        }
 
         ratioX /= imageResX;
         ratioY /= imageResY;
@@ -295,8 +504,15 @@ public class RenderedImageLayer<E extends ImageElement> extends DefaultUUID impl
     }
 
     public void dispose() {
+        if (progressive != null) {
+            progressive.stop();
+        }
+        prefetcher.cancel();
+        previewSource = null;
+        ImageElement.getImageCache().unpin(sourceImage);
         sourceImage = null;
         displayImage = null;
+        pyramid = null;
         listenerList.clear();
         opListeners.clear();
     }
@@ -356,11 +572,86 @@ public class RenderedImageLayer<E extends ImageElement> extends DefaultUUID impl
     @Override
     public void updateDisplayOperations() {
         if (isEnableDispOperations()) {
+            if (progressive != null) {
+                progressive.changed();
+            }
+            prefetcher.cancel();
+            updateSourceLevel();
             displayImage = disOpManager.process();
             fireImageChanged();
         }
     }
 
+    private ImagePyramid getPyramid() {
+        // The preprocessing changes the image, the pyramid is built only from the original image
+        if (sourceImage == null || preprocessing != null) {
+            return null;
+        }
+        ImagePyramid p = sourceImage.getPyramid();
+        // Keep the last one when the image has been removed from the cache, its levels can still be displayed
+        if (p != null) {
+            pyramid = p;
+        }
+        return pyramid;
+    }
+
+    /**
+     * When zooming out a large image, replaces the input of the display pipeline by the nearest reduction of the image
+     * which has enough resolution. It is applied only if all the operations before the zoom can work on a reduced
+     * image, otherwise the original image is used.
+     */
+    private void updateSourceLevel() {
+        ImageOpNode zoom = disOpManager.getNode(ZoomOp.OP_NAME);
+        RenderedImage input = disOpManager.getFirstNodeInputImage();
+        // When the zoom is the first node, the input is managed outside (e.g. lens)
+        if (zoom == null || input == null || zoom == disOpManager.getFirstNode()) {
+            return;
+        }
+
+        ImagePyramid pyramid = getPyramid();
+        if (pyramid == null || !pyramid.contains(input)) {
+            zoom.removeParam(ZoomOp.P_INPUT_REDUCTION_X);
+            zoom.removeParam(ZoomOp.P_INPUT_REDUCTION_Y);
+            return;
+        }
+
+        int index = 0;
+        Double ratioX = (Double) zoom.getParam(ZoomOp.P_RATIO_X);
+        Double ratioY = (Double) zoom.getParam(ZoomOp.P_RATIO_Y);
+        if (zoom.isEnabled() && ratioX != null && ratioY != null && isReducible(zoom)) {
+            double scale = Math.max(Math.abs(ratioX), Math.abs(ratioY));
+            // Lower resolution for a fast preview during the interactions
+            if (scale < 1.0 && progressive != null && progressive.isInteractive()) {
+                scale /= 2.0;
+            }
+            index = pyramid.getLevelIndex(scale);
+        }
+        PlanarImage level = pyramid.getLevel(index);
+        if (level != input) {
+            disOpManager.setFirstNode(level);
+        }
+        if (index == 0) {
+            zoom.removeParam(ZoomOp.P_INPUT_REDUCTION_X);
+            zoom.removeParam(ZoomOp.P_INPUT_REDUCTION_Y);
+        } else {
+            PlanarImage base = pyramid.getBase();
+            zoom.setParam(ZoomOp.P_INPUT_REDUCTION_X, base.getWidth() / (double) level.getWidth());
+            zoom.setParam(ZoomOp.P_INPUT_REDUCTION_Y, base.getHeight() / (double) level.getHeight());
+        }
+    }
+
+    private boolean isReducible(ImageOpNode zoom) {
+        for (ImageOpNode node : disOpManager.getOperations()) {
+            if (node == zoom) {
+                return true;
+            }
+            if (node.isEnabled() && !node.isResolutionIndependent()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     public MeasurementsAdapter getMeasurementAdapter(Unit displayUnit) {
         if (hasContent()) {
@@ -0,0 +1,426 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.dicom.codec;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DataBufferShort;
+import java.awt.image.DataBufferUShort;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.weasis.core.api.gui.util.AppProperties;
+import org.weasis.core.api.image.util.OffHeapImage;
+import org.weasis.core.api.image.util.OffHeapImageStore;
+import org.weasis.core.api.service.BundleTools;
+import org.weasis.core.api.util.FileUtil;
+import org.weasis.core.api.util.ThreadUtil;
+
+/**
+ * Persistent cache of the decoded frames of the compressed transfer syntaxes. A frame is stored in a raw file (a small
+ * header followed by the pixels in the native byte order), so reopening a study does not require to decode the images
+ * again.
+ * <p>
+ * The SOP Instance UID is not enough to identify the pixels (a corrected instance can be sent again with the same UID),
+ * so the header also records the source of the frame: the length and the modification date of the DICOM file, its
+ * transfer syntax and the image attributes. A frame whose source is different is decoded again.
+ * <p>
+ * The frames are written in background after the decoding, the decoded image is displayed without waiting. The frames
+ * read from the cache are memory-mapped only when the off-heap store is enabled (see {@link OffHeapImageStore}),
+ * otherwise they are read into the heap.
+ *
+ * The maximum size of the cache (in MB) is defined by the property "weasis.dicom.frame.cache.size" (0 disables the
+ * cache). The least recently used frames are deleted when the cache is full.
+ */
+public final class DecodedFrameCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DecodedFrameCache.class);
+
+    public static final String FRAME_CACHE_SIZE = "weasis.dicom.frame.cache.size"; //$NON-NLS-1$
+
+    private static final int MAGIC = 0x57444643; // WDFC
+    private static final int VERSION = 2;
+    /*
+     * magic, version, byte order, width, height, bands, data type, file length (long), file date (long), rows,
+     * columns, bits allocated, length of the transfer syntax UID, transfer syntax UID (64 bytes), reserved
+     */
+    private static final int HEADER_SIZE = 128;
+    private static final int MAX_UID_LENGTH = 64;
+    private static final String EXTENSION = ".raw"; //$NON-NLS-1$
+    // Maximum size of the decoded frames waiting to be written, the next frames are not cached
+    private static final long MAX_PENDING_BYTES = 128L * 1024L * 1024L;
+
+    private static final long MAX_BYTES =
+        Math.max(0L, BundleTools.SYSTEM_PREFERENCES.getLongProperty(FRAME_CACHE_SIZE, 1024L)) * 1024L * 1024L;
+    private static final File CACHE_DIR =
+        new File(AppProperties.WEASIS_PATH + File.separator + "data", "frames"); //$NON-NLS-1$ //$NON-NLS-2$
+
+    // Access order: the first entry is the least recently used file
+    private static final Map<String, Long> index = new LinkedHashMap<>(256, 0.75f, true);
+    private static long currentBytes = 0L;
+    private static boolean initialized = false;
+
+    private static final AtomicLong pendingBytes = new AtomicLong();
+    private static ExecutorService writer;
+
+    /**
+     * Identity of the source of a decoded frame.
+     */
+    public static final class Source {
+        private final long fileLength;
+        private final long fileDate;
+        private final String transferSyntaxUID;
+        private final int rows;
+        private final int columns;
+        private final int bitsAllocated;
+
+        public Source(File file, String transferSyntaxUID, int rows, int columns, int bitsAllocated) {
+            this.fileLength = file.length();
+            this.fileDate = file.lastModified();
+            this.transferSyntaxUID = transferSyntaxUID;
+            this.rows = rows;
+            this.columns = columns;
+            this.bitsAllocated = bitsAllocated;
+        }
+
+        private boolean isValid() {
+            return fileLength > 0 && transferSyntaxUID != null && transferSyntaxUID.length() <= MAX_UID_LENGTH;
+        }
+
+        private void write(ByteBuffer header) {
+            byte[] uid = transferSyntaxUID.getBytes(StandardCharsets.US_ASCII);
+            header.putLong(fileLength).putLong(fileDate).putInt(rows).putInt(columns).putInt(bitsAllocated)
+                .putInt(uid.length).put(uid);
+        }
+
+        private boolean matches(ByteBuffer header) {
+            if (header.getLong() != fileLength || header.getLong() != fileDate || header.getInt() != rows
+                || header.getInt() != columns || header.getInt() != bitsAllocated) {
+                return false;
+            }
+            int length = header.getInt();
+            if (length < 0 || length > MAX_UID_LENGTH) {
+                return false;
+            }
+            byte[] uid = new byte[length];
+            header.get(uid);
+            return transferSyntaxUID.equals(new String(uid, StandardCharsets.US_ASCII));
+        }
+    }
+
+    private DecodedFrameCache() {
+    }
+
+    public static boolean isEnabled() {
+        return MAX_BYTES > 0;
+    }
+
+    public static synchronized long getCurrentBytes() {
+        init();
+        return currentBytes;
+    }
+
+    public static long getMaxBytes() {
+        return MAX_BYTES;
+    }
+
+    /**
+     * Gets a decoded frame from the cache.
+     *
+     * @param sopInstanceUID
+     *            the SOP Instance UID
+     * @param frame
+     *            the frame index
+     * @param source
+     *            the source of the frame, the frame is not returned when it has been decoded from another source
+     * @param colorModels
+     *            provides the color model according to the data type of the stored pixels
+     * @return the image or null if the frame is not in the cache
+     */
+    public static RenderedImage get(String sopInstanceUID, int frame, Source source,
+        IntFunction<ColorModel> colorModels) {
+        if (!isEnabled() || sopInstanceUID == null || source == null || !source.isValid()) {
+            return null;
+        }
+        String name = getFileName(sopInstanceUID, frame);
+        synchronized (DecodedFrameCache.class) {
+            init();
+            if (!index.containsKey(name)) {
+                return null;
+            }
+            // Update the access order
+            index.get(name);
+        }
+        File file = new File(CACHE_DIR, name);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); //$NON-NLS-1$
+                        FileChannel channel = raf.getChannel()) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(channel, header, 0);
+            header.flip();
+            if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC || header.getInt() != VERSION
+                || header.getInt() != getByteOrderCode()) {
+                throw new IOException("Invalid header"); //$NON-NLS-1$
+            }
+            int width = header.getInt();
+            int height = header.getInt();
+            int bands = header.getInt();
+            int dataType = header.getInt();
+            if (!source.matches(header)) {
+                LOGGER.debug("Frame {} of {} decoded from another source", frame, sopInstanceUID); //$NON-NLS-1$
+                remove(name);
+                return null;
+            }
+            long length = channel.size() - HEADER_SIZE;
+            Rectangle bounds = new Rectangle(0, 0, width, height);
+            ColorModel cm = colorModels.apply(dataType);
+            RenderedImage img;
+            if (OffHeapImageStore.isEnabled()) {
+                // The modifications of the pixels (if any) are not written in the file
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.PRIVATE, HEADER_SIZE, length);
+                OffHeapImage offHeapImage = OffHeapImageStore.wrap(buffer, dataType, bounds, bands, cm, null);
+                if (offHeapImage.getColorModel() == null) {
+                    offHeapImage.dispose();
+                    throw new IOException("Incompatible color model"); //$NON-NLS-1$
+                }
+                img = offHeapImage;
+            } else {
+                img = readImage(channel, length, dataType, bounds, bands, cm);
+            }
+            file.setLastModified(System.currentTimeMillis());
+            LOGGER.debug("Frame {} of {} read from the decoded frame cache", frame, sopInstanceUID); //$NON-NLS-1$
+            return img;
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Cannot read the decoded frame {}: {}", file, e.getMessage()); //$NON-NLS-1$
+            remove(name);
+        }
+        return null;
+    }
+
+    /**
+     * Writes a decoded frame into the cache in background. The frame is not cached when the image is not fully decoded
+     * (only BufferedImage) or when too many frames are waiting to be written.
+     *
+     * @param sopInstanceUID
+     *            the SOP Instance UID
+     * @param frame
+     *            the frame index
+     * @param source
+     *            the source of the frame
+     * @param image
+     *            the decoded image, it must not be modified afterwards
+     */
+    public static void put(String sopInstanceUID, int frame, Source source, RenderedImage image) {
+        if (!isEnabled() || sopInstanceUID == null || source == null || !source.isValid()
+            || !(image instanceof BufferedImage) || !OffHeapImageStore.isSupported(image)) {
+            return;
+        }
+        long length = OffHeapImageStore.getByteLength(image);
+        if (length + HEADER_SIZE > MAX_BYTES) {
+            return;
+        }
+        if (pendingBytes.addAndGet(length) > MAX_PENDING_BYTES) {
+            pendingBytes.addAndGet(-length);
+            return;
+        }
+        getWriter().execute(() -> {
+            try {
+                write(getFileName(sopInstanceUID, frame), source, image, length);
+            } finally {
+                pendingBytes.addAndGet(-length);
+            }
+        });
+    }
+
+    private static synchronized ExecutorService getWriter() {
+        if (writer == null) {
+            writer = ThreadUtil.buildNewSingleThreadExecutor("Decoded Frame Writer"); //$NON-NLS-1$
+        }
+        return writer;
+    }
+
+    private static void write(String name, Source source, RenderedImage image, long length) {
+        synchronized (DecodedFrameCache.class) {
+            init();
+        }
+        File file = new File(CACHE_DIR, name);
+        File tmp = new File(CACHE_DIR, name + ".part"); //$NON-NLS-1$
+        try {
+            try (RandomAccessFile raf = new RandomAccessFile(tmp, "rw"); //$NON-NLS-1$
+                            FileChannel channel = raf.getChannel()) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(MAGIC).putInt(VERSION).putInt(getByteOrderCode()).putInt(image.getWidth())
+                    .putInt(image.getHeight()).putInt(image.getSampleModel().getNumBands())
+                    .putInt(image.getSampleModel().getDataType());
+                source.write(header);
+                header.rewind();
+                channel.write(header, 0);
+                // Not forced to the disk: the file is only a cache
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE, length);
+                OffHeapImageStore.writePixels(image, buffer);
+            }
+            synchronized (DecodedFrameCache.class) {
+                // Replace the frame of another source
+                remove(name);
+                if (!tmp.renameTo(file)) {
+                    throw new IOException("Cannot rename " + tmp); //$NON-NLS-1$
+                }
+                Long old = index.put(name, file.length());
+                currentBytes += file.length() - (old == null ? 0L : old);
+                evict();
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Cannot write the decoded frame {}: {}", file, e.getMessage()); //$NON-NLS-1$
+            FileUtil.delete(tmp);
+        }
+    }
+
+    private static RenderedImage readImage(FileChannel channel, long length, int dataType, Rectangle bounds, int bands,
+        ColorModel cm) throws IOException {
+        if (cm == null || length > Integer.MAX_VALUE) {
+            throw new IOException("Incompatible color model"); //$NON-NLS-1$
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) length);
+        readFully(channel, buffer, HEADER_SIZE);
+        buffer.flip();
+        buffer.order(ByteOrder.nativeOrder());
+        int size = bounds.width * bounds.height * bands;
+        DataBuffer dataBuffer;
+        if (dataType == DataBuffer.TYPE_BYTE) {
+            dataBuffer = new DataBufferByte(buffer.array(), size);
+        } else if (dataType == DataBuffer.TYPE_USHORT || dataType == DataBuffer.TYPE_SHORT) {
+            short[] data = new short[size];
+            buffer.asShortBuffer().get(data);
+            dataBuffer =
+                dataType == DataBuffer.TYPE_SHORT ? new DataBufferShort(data, size) : new DataBufferUShort(data, size);
+        } else {
+            int[] data = new int[size];
+            buffer.asIntBuffer().get(data);
+            dataBuffer = new DataBufferInt(data, size);
+        }
+        int[] bandOffsets = new int[bands];
+        for (int i = 0; i < bands; i++) {
+            bandOffsets[i] = i;
+        }
+        SampleModel sm = new PixelInterleavedSampleModel(dataType, bounds.width, bounds.height, bands,
+            bounds.width * bands, bandOffsets);
+        if (!cm.isCompatibleSampleModel(sm)) {
+            throw new IOException("Incompatible color model"); //$NON-NLS-1$
+        }
+        WritableRaster raster = Raster.createWritableRaster(sm, dataBuffer, new Point(0, 0));
+        return new BufferedImage(cm, raster, false, null);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        long pos = position;
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, pos);
+            if (n < 0) {
+                break;
+            }
+            pos += n;
+        }
+    }
+
+    public static synchronized void clear() {
+        init();
+        for (String name : index.keySet()) {
+            deleteFile(name);
+        }
+        index.clear();
+        currentBytes = 0L;
+    }
+
+    private static synchronized void remove(String name) {
+        Long size = index.remove(name);
+        if (size != null) {
+            currentBytes -= size;
+        }
+        deleteFile(name);
+    }
+
+    private static void evict() {
+        Iterator<Entry<String, Long>> iter = index.entrySet().iterator();
+        while (currentBytes > MAX_BYTES && iter.hasNext()) {
+            Entry<String, Long> entry = iter.next();
+            currentBytes -= entry.getValue();
+            iter.remove();
+            deleteFile(entry.getKey());
+        }
+    }
+
+    private static void deleteFile(String name) {
+        File file = new File(CACHE_DIR, name);
+        if (file.exists() && !file.delete()) {
+            // Cannot delete a mapped file on some systems
+            file.deleteOnExit();
+        }
+    }
+
+    private static void init() {
+        if (initialized) {
+            return;
+        }
+        initialized = true;
+        if (!CACHE_DIR.exists() && !CACHE_DIR.mkdirs()) {
+            LOGGER.error("Cannot create the decoded frame cache: {}", CACHE_DIR); //$NON-NLS-1$
+            return;
+        }
+        File[] files = CACHE_DIR.listFiles();
+        if (files != null) {
+            // Restore the access order of the previous sessions
+            Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+            for (File f : files) {
+                if (f.getName().endsWith(EXTENSION)) {
+                    index.put(f.getName(), f.length());
+                    currentBytes += f.length();
+                } else {
+                    // Incomplete file
+                    FileUtil.delete(f);
+                }
+            }
+            evict();
+        }
+    }
+
+    private static int getByteOrderCode() {
+        return ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN ? 1 : 0;
+    }
+
+    private static String getFileName(String sopInstanceUID, int frame) {
+        return sopInstanceUID.replaceAll("[^0-9A-Za-z.]", "_") + "_" + frame + EXTENSION; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+    }
+}
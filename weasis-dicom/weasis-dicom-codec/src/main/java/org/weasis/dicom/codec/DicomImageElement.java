@@ -15,6 +15,7 @@ import java.awt.image.DataBufferUShort;
 import java.awt.image.RenderedImage;
 import java.awt.image.SampleModel;
 import java.awt.image.renderable.ParameterBlock;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -23,8 +24,7 @@ import java.util.Map;
 import javax.media.jai.Histogram;
 import javax.media.jai.JAI;
 import javax.media.jai.LookupTableJAI;
-import javax.media.jai.OpImage;
-import javax.media.jai.ROI;
+import javax.media.jai.PlanarImage;
 import javax.media.jai.RenderedOp;
 import javax.media.jai.operator.FormatDescriptor;
 import javax.media.jai.operator.LookupDescriptor;
@@ -39,15 +39,18 @@ import org.weasis.core.api.gui.util.MathUtil;
 import org.weasis.core.api.image.LutShape;
 import org.weasis.core.api.image.PseudoColorOp;
 import org.weasis.core.api.image.WindowOp;
-import org.weasis.core.api.image.op.ImageStatisticsDescriptor;
+import org.weasis.core.api.image.op.CombinedLookupDescriptor;
 import org.weasis.core.api.image.util.ImageToolkit;
 import org.weasis.core.api.image.util.LayoutUtil;
+import org.weasis.core.api.image.util.OffHeapImageStore;
+import org.weasis.core.api.image.util.PixelStatistics;
 import org.weasis.core.api.image.util.Unit;
 import org.weasis.core.api.media.data.ImageElement;
 import org.weasis.core.api.media.data.SoftHashMap;
 import org.weasis.core.api.media.data.TagReadable;
 import org.weasis.core.api.media.data.TagW;
 import org.weasis.dicom.codec.display.PresetWindowLevel;
+import org.weasis.dicom.codec.display.VoiLutCache;
 import org.weasis.dicom.codec.display.WindowAndPresetsOp;
 import org.weasis.dicom.codec.geometry.GeometryOfSlice;
 import org.weasis.dicom.codec.utils.DicomImageUtils;
@@ -68,6 +71,12 @@ public class DicomImageElement extends ImageElement {
         initPixelConfiguration();
     }
 
+    @Override
+    protected PlanarImage loadImage() throws Exception {
+        // Keep the pixels outside the heap when the off-heap store is enabled
+        return OffHeapImageStore.store(super.loadImage());
+    }
+
     public void initPixelConfiguration() {
         this.pixelSizeX = 1.0;
         this.pixelSizeY = 1.0;
@@ -436,6 +445,18 @@ public class DicomImageElement extends ImageElement {
      */
     public LookupTableJAI getVOILookup(TagReadable tagable, Double window, Double level, Double minLevel,
         Double maxLevel, LutShape shape, boolean fillLutOutside, boolean pixelPadding) {
+        return getVOILookup(tagable, window, level, minLevel, maxLevel, shape, fillLutOutside, pixelPadding, null);
+    }
+
+    /**
+     * @param lutCache
+     *            the cache of the view, when null a new table is always created. A table from the cache can be updated
+     *            in place by a next call and must not be kept.
+     *
+     * @return 8 bits unsigned Lookup Table
+     */
+    public LookupTableJAI getVOILookup(TagReadable tagable, Double window, Double level, Double minLevel,
+        Double maxLevel, LutShape shape, boolean fillLutOutside, boolean pixelPadding, VoiLutCache lutCache) {
 
         if (window == null || level == null || shape == null || minLevel == null || maxLevel == null) {
             return null;
@@ -455,8 +476,11 @@ public class DicomImageElement extends ImageElement {
             maxValue = maxLevel.intValue();
         }
 
-        return DicomImageUtils.createWindowLevelLut(shape, window, level, minValue, maxValue, 8, false,
-            isPhotometricInterpretationInverse(tagable));
+        boolean inverse = isPhotometricInterpretationInverse(tagable);
+        if (lutCache != null) {
+            return lutCache.getWindowLevelLut(shape, window, level, minValue, maxValue, 8, false, inverse);
+        }
+        return DicomImageUtils.createWindowLevelLut(shape, window, level, minValue, maxValue, 8, false, inverse);
     }
 
     /**
@@ -515,6 +539,12 @@ public class DicomImageElement extends ImageElement {
         if (imageSource == null || lookup == null) {
             return null;
         }
+        PixelStatistics stats = pixelStatistics;
+        if (stats != null && stats.hasHistogram() && (pixelPadding || getPaddingValue() == null)) {
+            // No pass over the pixels, rescale the histogram computed when loading the image
+            return getHistogram(stats, lookup, getAllocatedOutRangeSize(), getMinAllocatedValue(tagable, pixelPadding),
+                getMaxAllocatedValue(tagable, pixelPadding));
+        }
         // TODO instead of computing histo from image get Dicom attribute if present. Handle pixel padding!
 
         ParameterBlock pb = new ParameterBlock();
@@ -537,6 +567,37 @@ public class DicomImageElement extends ImageElement {
         return (Histogram) op.getProperty("histogram"); //$NON-NLS-1$
     }
 
+    private static Histogram getHistogram(PixelStatistics stats, LookupTableJAI lookup, int nbBins, double low,
+        double high) {
+        Histogram histogram = new Histogram(new int[] { nbBins }, new double[] { low }, new double[] { high });
+        // Reference to the bins of the histogram
+        int[] out = histogram.getBins(0);
+        double outWidth = (high - low) / nbBins;
+        int lutMin = lookup.getOffset(0);
+        int lutMax = lutMin + lookup.getNumEntries() - 1;
+        int[] bins = stats.getBins();
+        int width = stats.getBinWidth();
+        for (int i = 0; i < bins.length; i++) {
+            int count = bins[i];
+            if (count == 0) {
+                continue;
+            }
+            // Spread the count of a coarse bin over its values
+            int first = stats.getBinLow() + i * width;
+            for (int k = 0; k < width; k++) {
+                int nb = count / width + (k < count % width ? 1 : 0);
+                if (nb > 0) {
+                    int val = lookup.lookup(0, Math.max(lutMin, Math.min(lutMax, first + k)));
+                    int index = (int) ((val - low) / outWidth);
+                    if (index >= 0 && index < nbBins) {
+                        out[index] += nb;
+                    }
+                }
+            }
+        }
+        return histogram;
+    }
+
     @Override
     protected void findMinMaxValues(RenderedImage img, boolean exclude8bitImage) {
         /*
@@ -554,12 +615,16 @@ public class DicomImageElement extends ImageElement {
             boolean monochrome = isPhotometricInterpretationMonochrome();
             if (monochrome) {
                 Integer paddingValue = getPaddingValue();
+                Double paddingValueMin = null;
+                Double paddingValueMax = null;
                 if (paddingValue != null) {
                     Integer paddingLimit = getPaddingLimit();
-                    int paddingValueMin = (paddingLimit == null) ? paddingValue : Math.min(paddingValue, paddingLimit);
-                    int paddingValueMax = (paddingLimit == null) ? paddingValue : Math.max(paddingValue, paddingLimit);
-                    findMinMaxValues(img, paddingValueMin, paddingValueMax);
+                    paddingValueMin =
+                        (double) ((paddingLimit == null) ? paddingValue : Math.min(paddingValue, paddingLimit));
+                    paddingValueMax =
+                        (double) ((paddingLimit == null) ? paddingValue : Math.max(paddingValue, paddingLimit));
                 }
+                findMinMaxValues(img, paddingValueMin, paddingValueMax);
             }
 
             if (!isImageAvailable()) {
@@ -580,6 +645,8 @@ public class DicomImageElement extends ImageElement {
                      * Overlays in pixel data should be masked before finding min and max.
                      */
                     setTag(TagD.get(Tag.BitsStored), bitsAllocated);
+                    // Values outside the range of the histogram
+                    pixelStatistics = null;
                 }
             }
             /*
@@ -593,35 +660,34 @@ public class DicomImageElement extends ImageElement {
     }
 
     /**
-     * Computes Min/Max values from Image excluding range of values provided
+     * Computes Min/Max values and the histogram from Image excluding range of values provided
      *
      * @param img
      * @param paddingValueMin
+     *            null when there is no padding value
      * @param paddingValueMax
      */
-    private void findMinMaxValues(RenderedImage img, double paddingValueMin, double paddingValueMax) {
+    private void findMinMaxValues(RenderedImage img, Double paddingValueMin, Double paddingValueMax) {
         if (img != null) {
             int datatype = img.getSampleModel().getDataType();
-            if (datatype == DataBuffer.TYPE_BYTE) {
+            if (datatype == DataBuffer.TYPE_BYTE && paddingValueMin != null) {
                 this.minPixelValue = 0.0;
                 this.maxPixelValue = 255.0;
             } else {
-                RenderedOp dst = ImageStatisticsDescriptor.create(img, (ROI) null, 1, 1, new Double(paddingValueMin),
-                    new Double(paddingValueMax), null);
-                // To ensure this image won't be stored in tile cache
-                ((OpImage) dst.getRendering()).setTileCache(null);
-
-                double[][] extrema = (double[][]) dst.getProperty("statistics"); //$NON-NLS-1$
-                double min = Double.MAX_VALUE;
-                double max = -Double.MAX_VALUE;
-                int numBands = dst.getSampleModel().getNumBands();
-
-                for (int i = 0; i < numBands; i++) {
-                    min = Math.min(min, extrema[0][i]);
-                    max = Math.max(max, extrema[1][i]);
+                // Single pass for min, max and histogram of the stored values
+                int bitsStored = getBitsStored();
+                boolean signed = isPixelRepresentationSigned();
+                int lowest = signed ? -(1 << (bitsStored - 1)) : 0;
+                int highest = signed ? (1 << (bitsStored - 1)) - 1 : (1 << bitsStored) - 1;
+                PixelStatistics stats =
+                    PixelStatistics.compute(img, paddingValueMin, paddingValueMax, lowest, highest);
+                if (Double.isNaN(stats.getMin())) {
+                    // Only padding values
+                    return;
                 }
-                this.minPixelValue = min;
-                this.maxPixelValue = max;
+                this.pixelStatistics = stats;
+                this.minPixelValue = stats.getMin();
+                this.maxPixelValue = stats.getMax();
                 // Handle special case when min and max are equal, ex. black image
                 // + 1 to max enables to display the correct value
                 if (this.minPixelValue.equals(this.maxPixelValue)) {
@@ -700,6 +766,7 @@ public class DicomImageElement extends ImageElement {
         Boolean wlOnColorImage = null;
         LookupTableJAI prLutData = null;
         TagReadable prTags = null;
+        VoiLutCache lutCache = null;
 
         if (params != null) {
             window = (Double) params.get(ActionW.WINDOW.cmd());
@@ -712,6 +779,7 @@ public class DicomImageElement extends ImageElement {
             fillLutOutside = (Boolean) params.get(WindowOp.P_FILL_OUTSIDE_LUT);
             wlOnColorImage = (Boolean) params.get(WindowOp.P_APPLY_WL_COLOR);
             prTags = (TagReadable) params.get(WindowAndPresetsOp.P_PR_ELEMENT);
+            lutCache = (VoiLutCache) params.get(WindowAndPresetsOp.P_VOI_LUT_CACHE);
             if (prTags != null) {
                 prLutData = (LookupTableJAI) prTags.getTagValue(TagW.PRLUTsData);
             }
@@ -738,10 +806,6 @@ public class DicomImageElement extends ImageElement {
         if (datatype >= DataBuffer.TYPE_BYTE && datatype < DataBuffer.TYPE_INT) {
             LookupTableJAI modalityLookup = getModalityLookup(prTags, pixPadding, invLUT);
 
-            // RenderingHints hints = new RenderingHints(JAI.KEY_IMAGE_LAYOUT, new ImageLayout(imageSource));
-            RenderedImage imageModalityTransformed =
-                modalityLookup == null ? imageSource : LookupDescriptor.create(imageSource, modalityLookup, null);
-
             /*
              * C.11.2.1.2 Window center and window width
              *
@@ -753,25 +817,38 @@ public class DicomImageElement extends ImageElement {
                  * If photometric interpretation is not monochrome do not apply VOILUT. It is necessary for
                  * PALETTE_COLOR.
                  */
-                return imageModalityTransformed;
+                return modalityLookup == null ? imageSource
+                    : LookupDescriptor.create(imageSource, modalityLookup, null);
             }
 
             LookupTableJAI voiLookup = null;
             if (prLutData == null || lut.getLookup() != null) {
                 voiLookup = getVOILookup(prTags, windowValue, levelValue, minLevel, maxLevel, lut,
-                    JMVUtils.getNULLtoFalse(fillLutOutside), pixPadding);
+                    JMVUtils.getNULLtoFalse(fillLutOutside), pixPadding, lutCache);
             }
 
-            if (prLutData == null) {
-                // BUG fix: for some images the color model is null. Creating 8 bits gray model layout fixes this issue.
-                return LookupDescriptor.create(imageModalityTransformed, voiLookup,
-                    LayoutUtil.createGrayRenderedImage());
+            // Modality, VOI and presentation LUTs are composed into a single table and applied in one pass
+            List<LookupTableJAI> tables = new ArrayList<>(3);
+            if (modalityLookup != null) {
+                tables.add(modalityLookup);
+            }
+            if (voiLookup != null) {
+                tables.add(voiLookup);
+            }
+            if (prLutData != null) {
+                tables.add(prLutData);
+            }
+            if (tables.isEmpty()) {
+                return imageSource;
+            }
+            LookupTableJAI[] lookups = tables.toArray(new LookupTableJAI[tables.size()]);
+            if (lutCache != null && voiLookup != null) {
+                // The VOI LUT of the cache can be updated in place: the operation (which can be rendered again later)
+                // receives its own composed table
+                lookups = new LookupTableJAI[] { CombinedLookupDescriptor.compose(lookups) };
             }
-
-            RenderedImage imageVoiTransformed = voiLookup == null ? imageModalityTransformed
-                : LookupDescriptor.create(imageModalityTransformed, voiLookup, null);
             // BUG fix: for some images the color model is null. Creating 8 bits gray model layout fixes this issue.
-            return LookupDescriptor.create(imageVoiTransformed, prLutData, LayoutUtil.createGrayRenderedImage());
+            return CombinedLookupDescriptor.create(imageSource, lookups, LayoutUtil.createGrayRenderedImage());
 
         } else if (datatype == DataBuffer.TYPE_INT || datatype == DataBuffer.TYPE_FLOAT
             || datatype == DataBuffer.TYPE_DOUBLE) {
@@ -30,6 +30,7 @@ import java.io.IOException;
 import java.io.ObjectOutput;
 import java.io.ObjectOutputStream;
 import java.lang.ref.Reference;
+import java.lang.ref.SoftReference;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.ByteOrder;
@@ -39,10 +40,12 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.imageio.ImageIO;
@@ -85,7 +88,9 @@ import org.weasis.core.api.image.op.RectifyUShortToShortDataDescriptor;
 import org.weasis.core.api.image.util.ImageFiler;
 import org.weasis.core.api.image.util.LayoutUtil;
 import org.weasis.core.api.media.data.Codec;
+import org.weasis.core.api.media.data.CompactTagMap;
 import org.weasis.core.api.media.data.FileCache;
+import org.weasis.core.api.media.data.LayeredTagMap;
 import org.weasis.core.api.media.data.MediaElement;
 import org.weasis.core.api.media.data.MediaSeries;
 import org.weasis.core.api.media.data.MediaSeriesGroup;
@@ -95,7 +100,11 @@ import org.weasis.core.api.media.data.SoftHashMap;
 import org.weasis.core.api.media.data.TagW;
 import org.weasis.core.api.service.BundleTools;
 import org.weasis.core.api.util.FileUtil;
+import org.weasis.core.api.util.metrics.MetricsRegistry;
+import org.weasis.core.api.util.metrics.Timer;
+import org.weasis.core.api.util.MemoryManager;
 import org.weasis.core.api.util.StringUtil;
+import org.weasis.core.api.util.ThreadUtil;
 import org.weasis.dicom.codec.TagD.Level;
 import org.weasis.dicom.codec.geometry.ImageOrientation;
 import org.weasis.dicom.codec.utils.DicomImageUtils;
@@ -208,6 +217,11 @@ public class DicomMediaIO extends ImageReader implements DcmMediaReader {
         tagManager.addTag(Tag.MIMETypeOfEncapsulatedDocument, Level.INSTANCE);
         tagManager.addTag(Tag.PixelDataProviderURL, Level.INSTANCE);
 
+        // The values shared by all the instances of a series
+        CompactTagMap.internValues(TagD.getTagFromIDs(Tag.PatientID, Tag.PatientName, Tag.IssuerOfPatientID,
+            Tag.PatientSex, Tag.StudyInstanceUID, Tag.StudyID, Tag.AccessionNumber, Tag.SeriesInstanceUID,
+            Tag.Modality, Tag.FrameOfReferenceUID, Tag.TransferSyntaxUID, Tag.SOPClassUID));
+
         // TODO init with a profile
         DicomMediaUtils.enableAnonymizationProfile(true);
     }
@@ -258,6 +272,14 @@ public class DicomMediaIO extends ImageReader implements DcmMediaReader {
         });
     }
 
+    /*
+     * The readers whose header has been collected are reset by another thread: the stale entries are removed while
+     * holding the lock of HEADER_CACHE (and often the lock of another reader), so taking the lock of the reader here
+     * would break the lock order (reader, then HEADER_CACHE).
+     */
+    private static final ExecutorService HEADER_RELEASER =
+        ThreadUtil.buildNewSingleThreadExecutor("DICOM Header Release"); //$NON-NLS-1$
+
     private static final SoftHashMap<DicomMediaIO, DicomMetaData> HEADER_CACHE =
         new SoftHashMap<DicomMediaIO, DicomMetaData>() {
 
@@ -266,15 +288,24 @@ public class DicomMediaIO extends ImageReader implements DcmMediaReader {
                 DicomMediaIO key = reverseLookup.remove(soft);
                 if (key != null) {
                     hash.remove(key);
-                    key.reset();
+                    HEADER_RELEASER.execute(key::reset);
                 }
             }
         };
 
+    // Rough size of a header without the pixel data, used for evaluating the released memory
+    private static final long HEADER_SIZE_ESTIMATE = 20 * 1024L;
+
+    static {
+        MemoryManager.register("DICOM headers", DicomMediaIO::releaseHeaders); //$NON-NLS-1$
+    }
+
     // The above softReference HEADER_CACHE shall be used instead of the following dcmMetadata variable to get access to
     // the current DicomObject unless it's virtual and then URI doesn't exit. This case appends when the dcmMetadata is
     // created within the application and is given to the ImageReader constructor
     private DicomMetaData dcmMetadata = null;
+    // Partial header of the index, only for building the tags
+    private volatile SoftReference<DicomMetaData> indexedHeader;
 
     private BulkData pixeldata;
     private final VR.Holder pixeldataVR = new VR.Holder();
@@ -286,7 +317,7 @@ public class DicomMediaIO extends ImageReader implements DcmMediaReader {
 
     private URI uri;
     private int numberOfFrame;
-    private final Map<TagW, Object> tags;
+    private final CompactTagMap tags;
     private volatile MediaElement[] image = null;
     private volatile String mimeType;
     private final ArrayList<Integer> fragmentsPositions = new ArrayList<>();
@@ -315,7 +346,7 @@ public class DicomMediaIO extends ImageReader implements DcmMediaReader {
         super(DicomCodec.DicomImageReaderSpi);
         this.uri = Objects.requireNonNull(uri);
         this.numberOfFrame = 0;
-        this.tags = new HashMap<>();
+        this.tags = new CompactTagMap();
         this.mimeType = MIMETYPE;
         this.fileCache = new FileCache(this);
     }
@@ -328,6 +359,18 @@ public class DicomMediaIO extends ImageReader implements DcmMediaReader {
         this(Objects.requireNonNull(path).toUri());
     }
 
+    /**
+     * Builds a reader with the header of the file read previously (see {@link LocalDicomIndex}). The header contains
+     * only the attributes required for building the tags of the reader and of the patient, study and series groups.
+     * The whole header is read from the file when it is required (e.g. for reading the image).
+     */
+    DicomMediaIO(File source, Attributes fmi, Attributes header) {
+        this(source);
+        this.hasPixel = header.getInt(Tag.BitsStored, header.getInt(Tag.BitsAllocated, 0)) > 0;
+        this.numberOfFrame = header.getInt(Tag.NumberOfFrames, 1);
+        this.indexedHeader = new SoftReference<>(new DicomMetaData(fmi, header));
+    }
+
     public DicomMediaIO(Attributes dcmItems) throws URISyntaxException {
         this(new URI("data:" + Objects.requireNonNull(dcmItems).getString(Tag.SOPInstanceUID))); //$NON-NLS-1$
         this.dcmMetadata = new DicomMetaData(null, Objects.requireNonNull(dcmItems));
@@ -360,7 +403,10 @@ public class DicomMediaIO extends ImageReader implements DcmMediaReader {
 
         if (tags.size() == 0) {
             try {
-                DicomMetaData md = readMetaData(false);
+                DicomMetaData md = getIndexedHeader();
+                if (md == null) {
+                    md = readMetaData(false);
+                }
                 Attributes fmi = md.getFileMetaInformation();
                 Attributes header = md.getAttributes();
                 // Exclude DICOMDIR
@@ -434,7 +480,8 @@ public class DicomMediaIO extends ImageReader implements DcmMediaReader {
         // endianess is already in iis?
         // riis.setByteOrder(bigEndian ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
 
-        ImageReader reader = new RawImageReader(DicomCodec.RawImageReaderSpi);
+        // The tiles are read lazily by other threads, they must not read the stream concurrently with this reader
+        ImageReader reader = new RawImageReader(DicomCodec.RawImageReaderSpi, this);
         reader.setInput(riis);
         return reader;
     }
@@ -497,7 +544,8 @@ public class DicomMediaIO extends ImageReader implements DcmMediaReader {
             return;
         }
         // Get the dicom header
-        Attributes header = getDicomObject();
+        DicomMetaData md = getIndexedHeader();
+        Attributes header = md == null ? getDicomObject() : md.getAttributes();
         DicomMediaUtils.writeMetaData(group, header);
 
         // Series Group
@@ -508,6 +556,11 @@ public class DicomMediaIO extends ImageReader implements DcmMediaReader {
         }
     }
 
+    private DicomMetaData getIndexedHeader() {
+        SoftReference<DicomMetaData> ref = indexedHeader;
+        return ref == null ? null : ref.get();
+    }
+
     private void writeInstanceTags(Attributes fmi, Attributes header) {
         if (tags.size() > 0 || header == null) {
             return;
@@ -552,6 +605,7 @@ public class DicomMediaIO extends ImageReader implements DcmMediaReader {
         DicomMediaUtils.computeSlicePositionVector(this);
         DicomMediaUtils.setShutter(this, header);
         DicomMediaUtils.computeSUVFactor(header, this, 0);
+        tags.trimToSize();
     }
 
     private void writeSharedFunctionalGroupsSequence(Attributes header) {
@@ -710,7 +764,7 @@ public class DicomMediaIO extends ImageReader implements DcmMediaReader {
     }
 
     @Override
-    public PlanarImage getImageFragment(MediaElement media) throws Exception {
+    public synchronized PlanarImage getImageFragment(MediaElement media) throws Exception {
         if (media != null && media.getKey() instanceof Integer && isReadableDicom()) {
             int frame = (Integer) media.getKey();
             if (frame >= 0 && frame < numberOfFrame && hasPixel) {
@@ -871,16 +925,16 @@ public class DicomMediaIO extends ImageReader implements DcmMediaReader {
 
     @Override
     public Map<TagW, Object> getMediaFragmentTags(Object key) {
-        if (key instanceof Integer) {
+        if (key instanceof Integer && numberOfFrame > 1) {
+            // Each frame keeps only its own tags and reads the other ones from the shared tags
+            LayeredTagMap tagList = new LayeredTagMap(tags);
             if ((Integer) key > 0) {
-                // Clone the shared tag
-                Map<TagW, Object> tagList = new HashMap<>(tags);
                 SimpleTagable tagable = new SimpleTagable(tagList);
                 if (DicomMediaUtils.writePerFrameFunctionalGroupsSequence(tagable, getDicomObject(), (Integer) key)) {
                     DicomMediaUtils.computeSlicePositionVector(tagable);
                 }
-                return tagList;
             }
+            return tagList;
         }
         return tags;
     }
@@ -944,7 +998,7 @@ public class DicomMediaIO extends ImageReader implements DcmMediaReader {
     }
 
     @Override
-    public ImageTypeSpecifier getRawImageType(int frameIndex) throws IOException {
+    public synchronized ImageTypeSpecifier getRawImageType(int frameIndex) throws IOException {
         readMetaData(false);
         checkIndex(frameIndex);
 
@@ -961,7 +1015,7 @@ public class DicomMediaIO extends ImageReader implements DcmMediaReader {
     }
 
     @Override
-    public Iterator<ImageTypeSpecifier> getImageTypes(int frameIndex) throws IOException {
+    public synchronized Iterator<ImageTypeSpecifier> getImageTypes(int frameIndex) throws IOException {
         readMetaData(true);
         checkIndex(frameIndex);
 
@@ -1057,7 +1111,7 @@ public class DicomMediaIO extends ImageReader implements DcmMediaReader {
     }
 
     @Override
-    public Raster readRaster(int frameIndex, ImageReadParam param) throws IOException {
+    public synchronized Raster readRaster(int frameIndex, ImageReadParam param) throws IOException {
         readingImage = true;
         try {
             readMetaData(true);
@@ -1111,7 +1165,7 @@ public class DicomMediaIO extends ImageReader implements DcmMediaReader {
     }
 
     @Override
-    public BufferedImage read(int frameIndex, ImageReadParam param) throws IOException {
+    public synchronized BufferedImage read(int frameIndex, ImageReadParam param) throws IOException {
         readingImage = true;
         try {
             checkIndex(frameIndex);
@@ -1142,7 +1196,7 @@ public class DicomMediaIO extends ImageReader implements DcmMediaReader {
     }
 
     @Override
-    public RenderedImage readAsRenderedImage(int frameIndex, ImageReadParam param) throws IOException {
+    public synchronized RenderedImage readAsRenderedImage(int frameIndex, ImageReadParam param) throws IOException {
         readingImage = true;
         try {
             readMetaData(true);
@@ -1153,12 +1207,21 @@ public class DicomMediaIO extends ImageReader implements DcmMediaReader {
 
             RenderedImage bi;
             if (decompressor != null) {
-                decompressor.setInput(iisOfFrame(frameIndex));
-                if (isRLELossless() && (pmi.isSubSambled() || pmi.name().startsWith("YBR"))) { //$NON-NLS-1$
-                    bi = convertSubSambledAndYBR(frameIndex, param);
-                }
-                else {
-                    bi = decompressor.readAsRenderedImage(0, decompressParam(param));     
+                // Avoid decoding again the frames of the compressed transfer syntaxes
+                String sopUID = TagD.getTagValue(this, Tag.SOPInstanceUID, String.class);
+                DecodedFrameCache.Source source = getDecodedFrameSource();
+                bi = DecodedFrameCache.get(sopUID, frameIndex, source, this::getCachedFrameColorModel);
+                if (bi == null) {
+                    decompressor.setInput(iisOfFrame(frameIndex));
+                    if (isRLELossless() && (pmi.isSubSambled() || pmi.name().startsWith("YBR"))) { //$NON-NLS-1$
+                        bi = convertSubSambledAndYBR(frameIndex, param);
+                    } else {
+                        Timer decodeTimer = MetricsRegistry.timer("dicom.decode", tsuid); //$NON-NLS-1$
+                        long start = decodeTimer.start();
+                        bi = decompressor.readAsRenderedImage(0, decompressParam(param));
+                        decodeTimer.stop(start);
+                    }
+                    DecodedFrameCache.put(sopUID, frameIndex, source, bi);
                 }
             } else {
                 // Rewrite image with subsampled model (otherwise cannot not be displayed as RenderedImage)
@@ -1179,6 +1242,26 @@ public class DicomMediaIO extends ImageReader implements DcmMediaReader {
         }
     }
 
+    private DecodedFrameCache.Source getDecodedFrameSource() {
+        Optional<File> file = fileCache.getOriginalFile();
+        if (!file.isPresent() || !DecodedFrameCache.isEnabled()) {
+            return null;
+        }
+        Integer rows = TagD.getTagValue(this, Tag.Rows, Integer.class);
+        Integer columns = TagD.getTagValue(this, Tag.Columns, Integer.class);
+        return new DecodedFrameCache.Source(file.get(), tsuid, rows == null ? 0 : rows,
+            columns == null ? 0 : columns, bitsAllocated);
+    }
+
+    private ColorModel getCachedFrameColorModel(int storedDataType) {
+        if (pmi.isMonochrome() || pmi == PhotometricInterpretation.PALETTE_COLOR) {
+            return createColorModel(bitsStored, storedDataType);
+        }
+        // The color images are decoded in RGB
+        return new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_sRGB), false, false, Transparency.OPAQUE,
+            storedDataType);
+    }
+
     private BufferedImage convertSubSambledAndYBR(int frameIndex, ImageReadParam param) throws IOException {
         // TODO improve this
         WritableRaster raster = (WritableRaster) readRaster(frameIndex, param);
@@ -1267,8 +1350,11 @@ public class DicomMediaIO extends ImageReader implements DcmMediaReader {
     }
 
     @Override
-    public void dispose() {
-        HEADER_CACHE.remove(this);
+    public synchronized void dispose() {
+        synchronized (HEADER_CACHE) {
+            HEADER_CACHE.remove(this);
+        }
+        indexedHeader = null;
         readingHeader = false;
         readingImage = false;
         reset();
@@ -1276,7 +1362,7 @@ public class DicomMediaIO extends ImageReader implements DcmMediaReader {
     }
 
     @Override
-    public void reset() {
+    public synchronized void reset() {
         /*
          * readingHeader: prevent error when reading images from a large multiframe and the header is removed from the
          * cache at the same time.
@@ -1305,6 +1391,35 @@ public class DicomMediaIO extends ImageReader implements DcmMediaReader {
         patchJpegLS = null;
     }
 
+    /**
+     * Removes from the cache the headers of the files which are not being read. The headers are read again when
+     * required.
+     *
+     * @param bytes
+     *            the amount of memory to release
+     * @return the estimated amount of memory released
+     */
+    public static long releaseHeaders(long bytes) {
+        long released = 0L;
+        List<DicomMediaIO> readers;
+        synchronized (HEADER_CACHE) {
+            readers = new ArrayList<>(HEADER_CACHE.keySet());
+        }
+        for (DicomMediaIO reader : readers) {
+            if (released >= bytes) {
+                break;
+            }
+            if (!reader.readingHeader && !reader.readingImage) {
+                synchronized (HEADER_CACHE) {
+                    HEADER_CACHE.remove(reader);
+                }
+                reader.reset();
+                released += HEADER_SIZE_ESTIMATE;
+            }
+        }
+        return released;
+    }
+
     private void checkIndex(int frameIndex) {
         if (frameIndex < 0 || frameIndex >= numberOfFrame) {
             throw new IndexOutOfBoundsException("imageIndex: " + frameIndex); //$NON-NLS-1$
@@ -1350,8 +1465,15 @@ public class DicomMediaIO extends ImageReader implements DcmMediaReader {
      *
      * @throws Exception
      */
+    DicomMetaData getDicomMetaData() throws IOException {
+        return readMetaData(false);
+    }
+
     private synchronized DicomMetaData readMetaData(boolean readImageAfter) throws IOException {
-        DicomMetaData header = HEADER_CACHE.get(this);
+        DicomMetaData header;
+        synchronized (HEADER_CACHE) {
+            header = HEADER_CACHE.get(this);
+        }
         if (header != null) {
             if (!readImageAfter) {
                 return header;
@@ -1386,8 +1508,11 @@ public class DicomMediaIO extends ImageReader implements DcmMediaReader {
             dis.setBulkDataDescriptor(DicomCodec.BULKDATA_DESCRIPTOR);
             // avoid a copy of pixeldata into temporary file
             dis.setURI(uri.toString());
+            Timer parseTimer = MetricsRegistry.timer("dicom.header.parse"); //$NON-NLS-1$
+            long start = parseTimer.start();
             Attributes fmi = dis.readFileMetaInformation();
             Attributes ds = dis.readDataset(-1, -1);
+            parseTimer.stop(start);
             if (fmi == null) {
                 fmi = ds.createFileMetaInformation(dis.getTransferSyntax());
             }
@@ -1431,7 +1556,9 @@ public class DicomMediaIO extends ImageReader implements DcmMediaReader {
                 }
             }
 
-            HEADER_CACHE.put(this, metadata);
+            synchronized (HEADER_CACHE) {
+                HEADER_CACHE.put(this, metadata);
+            }
             return metadata;
         } finally {
             readingHeader = false;
@@ -15,11 +15,7 @@ import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 
-import javax.media.jai.PlanarImage;
-
 import org.dcm4che3.data.Tag;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.weasis.core.api.explorer.ObservableEvent;
 import org.weasis.core.api.explorer.model.DataExplorerModel;
 import org.weasis.core.api.gui.util.Filter;
@@ -33,13 +29,9 @@ import org.weasis.core.api.util.StringUtil;
 import org.weasis.dicom.codec.TagD.Level;
 
 public class DicomSeries extends Series<DicomImageElement> {
-    private static final Logger LOGGER = LoggerFactory.getLogger(DicomSeries.class);
-
     static final TagView defaultTagView =
         new TagView(TagD.getTagFromIDs(Tag.SeriesDescription, Tag.SeriesNumber, Tag.SeriesTime));
 
-    private static volatile PreloadingTask preloadingTask;
-
     public DicomSeries(String subseriesInstanceUID) {
         this(subseriesInstanceUID, null, defaultTagView);
     }
@@ -192,149 +184,11 @@ public class DicomSeries extends Series<DicomImageElement> {
         return (offset > 0) ? (bestIndex + offset) : bestIndex;
     }
 
-    public static synchronized void startPreloading(DicomSeries series, List<DicomImageElement> imageList,
-        int currentIndex) {
-        if (series != null && imageList != null) {
-            if (preloadingTask != null) {
-                if (preloadingTask.getSeries() == series) {
-                    return;
-                }
-                stopPreloading(preloadingTask.getSeries());
-            }
-            preloadingTask = new PreloadingTask(series, imageList, currentIndex);
-            preloadingTask.start();
-        }
-    }
-
-    public static synchronized void stopPreloading(DicomSeries series) {
-        if (preloadingTask != null && preloadingTask.getSeries() == series) {
-            PreloadingTask moribund = preloadingTask;
-            preloadingTask = null;
-            if (moribund != null) {
-                moribund.setPreloading(false);
-                moribund.interrupt();
-            }
-        }
+    public static void startPreloading(DicomSeries series, List<DicomImageElement> imageList, int currentIndex) {
+        PreloadingScheduler.start(series, imageList, currentIndex);
     }
 
-    static class PreloadingTask extends Thread {
-        private volatile boolean preloading = true;
-        private final int index;
-        private final List<DicomImageElement> imageList;
-        private final DicomSeries series;
-
-        public PreloadingTask(DicomSeries series, List<DicomImageElement> imageList, int currentIndex) {
-            this.series = series;
-            this.imageList = imageList;
-            this.index = currentIndex;
-        }
-
-        public synchronized boolean isPreloading() {
-            return preloading;
-        }
-
-        public DicomSeries getSeries() {
-            return series;
-        }
-
-        public List<DicomImageElement> getImageList() {
-            return imageList;
-        }
-
-        public synchronized void setPreloading(boolean preloading) {
-            this.preloading = preloading;
-        }
-
-        private static void freeMemory() {
-            System.gc();
-            try {
-                Thread.sleep(50);
-            } catch (InterruptedException ex) {
-            }
-        }
-
-        private static long evaluateImageSize(DicomImageElement image) {
-            Integer allocated = TagD.getTagValue(image, Tag.BitsAllocated, Integer.class);
-            Integer sample = TagD.getTagValue(image, Tag.SamplesPerPixel, Integer.class);
-            Integer rows = TagD.getTagValue(image, Tag.Rows, Integer.class);
-            Integer columns = TagD.getTagValue(image, Tag.Columns, Integer.class);
-            if (allocated != null && sample != null && rows != null && columns != null) {
-                return (rows * columns * sample * allocated) / 8L;
-            }
-            return 0L;
-        }
-
-        private void loadArrays(DicomImageElement img, DataExplorerModel model) {
-            // Do not load an image if another process already loading it
-            if (preloading && !img.isLoading()) {
-                Boolean cache = (Boolean) img.getTagValue(TagW.ImageCache);
-                if (cache == null || !cache) {
-                    long start = System.currentTimeMillis();
-                    PlanarImage i = img.getImage();
-                    if (i != null) {
-                        int tymin = i.getMinTileY();
-                        int tymax = i.getMaxTileY();
-                        int txmin = i.getMinTileX();
-                        int txmax = i.getMaxTileX();
-                        for (int tj = tymin; tj <= tymax; tj++) {
-                            for (int ti = txmin; ti <= txmax; ti++) {
-                                try {
-                                    i.getTile(ti, tj);
-                                } catch (OutOfMemoryError e) {
-                                    LOGGER.error("Out of memory when loading image: {}", img, e); //$NON-NLS-1$
-                                    freeMemory();
-                                    return;
-                                }
-                            }
-                        }
-                    }
-                    long stop = System.currentTimeMillis();
-                    LOGGER.debug("Reading time: {} ms of image: {}", stop - start, img); //$NON-NLS-1$
-                    if (model != null) {
-                        model.firePropertyChange(new ObservableEvent(ObservableEvent.BasicAction.ADD, model, null,
-                            new SeriesEvent(SeriesEvent.Action.PRELOADING, series, img)));
-                    }
-                }
-            }
-        }
-
-        @Override
-        public void run() {
-            if (imageList != null) {
-                DataExplorerModel model = (DataExplorerModel) series.getTagValue(TagW.ExplorerModel);
-                int size = imageList.size();
-                if (model == null || index < 0 || index >= size) {
-                    return;
-                }
-                long imgSize = evaluateImageSize(imageList.get(index)) * size + 5000;
-                long heapSize = Runtime.getRuntime().totalMemory();
-                long heapFreeSize = Runtime.getRuntime().freeMemory();
-                if (imgSize > heapSize / 3) {
-                    if (imgSize > heapFreeSize) {
-                        freeMemory();
-                    }
-                    double val = (double) heapFreeSize / imgSize;
-                    int ajustSize = (int) (size * val) / 2;
-                    int start = index - ajustSize;
-                    if (start < 0) {
-                        ajustSize -= start;
-                        start = 0;
-                    }
-                    if (ajustSize > size) {
-                        ajustSize = size;
-                    }
-                    for (int i = start; i < ajustSize; i++) {
-                        loadArrays(imageList.get(i), model);
-                    }
-                } else {
-                    if (imgSize > heapFreeSize) {
-                        freeMemory();
-                    }
-                    for (DicomImageElement img : imageList) {
-                        loadArrays(img, model);
-                    }
-                }
-            }
-        }
+    public static void stopPreloading(DicomSeries series) {
+        PreloadingScheduler.stop(series);
     }
 }
@@ -0,0 +1,445 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.dicom.codec;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.BulkData;
+import org.dcm4che3.data.Fragments;
+import org.dcm4che3.data.Sequence;
+import org.dcm4che3.data.Tag;
+import org.dcm4che3.data.TagUtils;
+import org.dcm4che3.data.UID;
+import org.dcm4che3.data.VR;
+import org.dcm4che3.imageio.plugins.dcm.DicomMetaData;
+import org.dcm4che3.io.DicomInputStream;
+import org.dcm4che3.io.DicomOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.weasis.core.api.gui.util.AppProperties;
+import org.weasis.core.api.service.BundleTools;
+import org.weasis.core.api.util.FileUtil;
+import org.weasis.core.api.util.metrics.MetricsRegistry;
+import org.weasis.core.api.util.metrics.Timer;
+
+/**
+ * Persistent index of the headers of the local DICOM files, so reopening a folder does not require to read again the
+ * header of each file. There is one index file per folder, which stores for each file its size, its modification date,
+ * its transfer syntax and the part of its header required for building the tags and the DICOM model: the public
+ * attributes which are not sequences, the sequences of the image modules (functional groups, LUTs, radiopharmaceutical
+ * information) and no bulk data (pixel data, overlay data...). A file whose size or date has changed is read again. The
+ * whole header is read from the file only when it is required (e.g. when the image is displayed).
+ * <p>
+ * Only the images are indexed, the non-image objects (presentation states, key object selections, structured
+ * reports...) are always read from the file. The files which are not supported are also recorded, so they are not
+ * probed again.
+ * <p>
+ * The index is enabled by the property "weasis.dicom.local.index" (true by default). The files of a folder can be
+ * recorded concurrently, the headers are decoded and encoded outside the lock.
+ * <p>
+ * The index files not used since the number of days defined by "weasis.dicom.local.index.max.age" (90 by default, 0
+ * for no limit) are deleted. The total size of the index files (in MB) is limited by "weasis.dicom.local.index.size"
+ * (256 by default), the least recently used ones are deleted when it is exceeded.
+ */
+public final class LocalDicomIndex {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LocalDicomIndex.class);
+
+    public static final String P_LOCAL_INDEX = "weasis.dicom.local.index"; //$NON-NLS-1$
+    public static final String P_LOCAL_INDEX_SIZE = "weasis.dicom.local.index.size"; //$NON-NLS-1$
+    public static final String P_LOCAL_INDEX_MAX_AGE = "weasis.dicom.local.index.max.age"; //$NON-NLS-1$
+
+    private static final boolean ENABLED = BundleTools.SYSTEM_PREFERENCES.getBooleanProperty(P_LOCAL_INDEX, true);
+    private static final long MAX_BYTES =
+        Math.max(0L, BundleTools.SYSTEM_PREFERENCES.getLongProperty(P_LOCAL_INDEX_SIZE, 256L)) * 1024L * 1024L;
+    private static final long MAX_AGE = TimeUnit.DAYS
+        .toMillis(Math.max(0L, BundleTools.SYSTEM_PREFERENCES.getLongProperty(P_LOCAL_INDEX_MAX_AGE, 90L)));
+    private static final File INDEX_DIR =
+        new File(AppProperties.WEASIS_PATH + File.separator + "data", "dicom-index"); //$NON-NLS-1$ //$NON-NLS-2$
+
+    private static final int MAGIC = 0x57444c49; // WDLI
+    private static final int VERSION = 2;
+    private static final String EXTENSION = ".idx"; //$NON-NLS-1$
+    // The sequences read when building the tags of an image, sorted (see DicomMediaIO)
+    private static final int[] INDEXED_SEQUENCES = sortedTags(Tag.SharedFunctionalGroupsSequence,
+        Tag.ModalityLUTSequence, Tag.VOILUTSequence, Tag.PresentationLUTSequence,
+        Tag.RadiopharmaceuticalInformationSequence, Tag.IssuerOfAccessionNumberSequence);
+
+    // Size of the index files, updated when an index is written
+    private static long currentBytes = 0L;
+    private static boolean initialized = false;
+
+    private final File folder;
+    private final File indexFile;
+    private final Map<String, Record> records;
+    private final Set<String> visited = new HashSet<>();
+    private boolean modified = false;
+
+    private LocalDicomIndex(File folder, File indexFile, Map<String, Record> records) {
+        this.folder = folder;
+        this.indexFile = indexFile;
+        this.records = records;
+    }
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Loads the index of a folder.
+     *
+     * @param folder
+     *            the folder containing the files
+     * @return the index of the folder (empty when the folder has not been indexed), or null when the index is disabled
+     */
+    public static LocalDicomIndex open(File folder) {
+        if (!ENABLED || folder == null) {
+            return null;
+        }
+        init();
+        File dir = folder.getAbsoluteFile();
+        String path = dir.getPath();
+        File indexFile = new File(INDEX_DIR,
+            UUID.nameUUIDFromBytes(path.getBytes(StandardCharsets.UTF_8)).toString() + EXTENSION);
+        Map<String, Record> records = new HashMap<>();
+        if (indexFile.canRead()) {
+            Timer timer = MetricsRegistry.timer("dicom.index.load"); //$NON-NLS-1$
+            long start = timer.start();
+            try (DataInputStream in =
+                new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile), 65536))) {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION || !path.equals(in.readUTF())) {
+                    throw new IOException("Invalid index"); //$NON-NLS-1$
+                }
+                int size = in.readInt();
+                for (int i = 0; i < size; i++) {
+                    String name = in.readUTF();
+                    long length = in.readLong();
+                    long lastModified = in.readLong();
+                    String tsuid = in.readUTF();
+                    byte[] header = readBytes(in);
+                    records.put(name, new Record(length, lastModified, tsuid, header));
+                }
+                // The date of the index is the date of its last use
+                indexFile.setLastModified(System.currentTimeMillis());
+            } catch (IOException e) {
+                LOGGER.warn("Cannot read the DICOM index {}: {}", indexFile, e.getMessage()); //$NON-NLS-1$
+                records.clear();
+                FileUtil.delete(indexFile);
+            } finally {
+                timer.stop(start);
+            }
+        }
+        return new LocalDicomIndex(dir, indexFile, records);
+    }
+
+    /**
+     * @param file
+     *            a file of the folder
+     * @return a reader initialized with the header of the index, or null when the file is not indexed as an image or
+     *         has changed
+     */
+    public DicomMediaIO getReader(File file) {
+        Record record;
+        synchronized (this) {
+            record = getRecord(file);
+        }
+        if (record == null || record.header == null) {
+            return null;
+        }
+        try {
+            Attributes header = decode(record.header);
+            Attributes fmi = header.createFileMetaInformation(record.tsuid);
+            MetricsRegistry.counter("dicom.index.hit").increment(); //$NON-NLS-1$
+            return new DicomMediaIO(file, fmi, header);
+        } catch (IOException e) {
+            LOGGER.warn("Cannot read the indexed header of {}: {}", file, e.getMessage()); //$NON-NLS-1$
+            synchronized (this) {
+                records.remove(file.getName());
+                modified = true;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * @return true when the file has been recorded as not supported and has not changed
+     */
+    public synchronized boolean isUnsupported(File file) {
+        Record record = getRecord(file);
+        return record != null && record.header == null;
+    }
+
+    /**
+     * Records a file which cannot be displayed.
+     */
+    public synchronized void putUnsupported(File file) {
+        visited.add(file.getName());
+        records.put(file.getName(), new Record(file.length(), file.lastModified(), "", null)); //$NON-NLS-1$
+        modified = true;
+    }
+
+    /**
+     * Records the header of a file. Only the readable images are indexed.
+     *
+     * @param file
+     *            a file of the folder
+     * @param reader
+     *            the reader of the file
+     */
+    public void put(File file, DicomMediaIO reader) {
+        if (!reader.isReadableDicom()) {
+            putUnsupported(file);
+            return;
+        }
+        synchronized (this) {
+            visited.add(file.getName());
+        }
+        if (!DicomMediaIO.IMAGE_MIMETYPE.equals(reader.getMimeType())) {
+            return;
+        }
+        try {
+            DicomMetaData md = reader.getDicomMetaData();
+            Attributes ds = md.getAttributes();
+            Attributes fmi = md.getFileMetaInformation();
+            String tsuid = fmi == null ? null : fmi.getString(Tag.TransferSyntaxUID);
+            if (tsuid == null || ds.bigEndian()) {
+                return;
+            }
+            Record record = new Record(file.length(), file.lastModified(), tsuid, encode(selectHeader(ds)));
+            synchronized (this) {
+                records.put(file.getName(), record);
+                modified = true;
+            }
+        } catch (Exception e) {
+            LOGGER.warn("Cannot index the header of {}: {}", file, e.getMessage()); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Writes the index when it has been modified. The records of the files which no longer exist are removed.
+     */
+    public synchronized void save() {
+        for (Iterator<Entry<String, Record>> it = records.entrySet().iterator(); it.hasNext();) {
+            String name = it.next().getKey();
+            if (!visited.contains(name) && !new File(folder, name).exists()) {
+                it.remove();
+                modified = true;
+            }
+        }
+        if (!modified) {
+            return;
+        }
+        if (!INDEX_DIR.exists() && !INDEX_DIR.mkdirs()) {
+            LOGGER.error("Cannot create the DICOM index directory: {}", INDEX_DIR); //$NON-NLS-1$
+            return;
+        }
+        File tmp = new File(INDEX_DIR, indexFile.getName() + ".part"); //$NON-NLS-1$
+        try {
+            try (DataOutputStream out =
+                new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 65536))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(folder.getPath());
+                out.writeInt(records.size());
+                for (Entry<String, Record> entry : records.entrySet()) {
+                    Record record = entry.getValue();
+                    out.writeUTF(entry.getKey());
+                    out.writeLong(record.length);
+                    out.writeLong(record.lastModified);
+                    out.writeUTF(record.tsuid);
+                    writeBytes(out, record.header);
+                }
+            }
+            long oldLength = indexFile.length();
+            FileUtil.delete(indexFile);
+            if (!tmp.renameTo(indexFile)) {
+                throw new IOException("Cannot rename " + tmp); //$NON-NLS-1$
+            }
+            modified = false;
+            updateSize(indexFile, indexFile.length() - oldLength);
+        } catch (IOException e) {
+            LOGGER.warn("Cannot write the DICOM index {}: {}", indexFile, e.getMessage()); //$NON-NLS-1$
+            FileUtil.delete(tmp);
+        }
+    }
+
+    private static synchronized void init() {
+        if (initialized) {
+            return;
+        }
+        initialized = true;
+        File[] files = INDEX_DIR.listFiles();
+        if (files == null) {
+            return;
+        }
+        long expired = MAX_AGE > 0 ? System.currentTimeMillis() - MAX_AGE : Long.MIN_VALUE;
+        for (File f : files) {
+            if (!f.getName().endsWith(EXTENSION) || f.lastModified() < expired) {
+                // Incomplete or expired index
+                FileUtil.delete(f);
+            } else {
+                currentBytes += f.length();
+            }
+        }
+        evict(null);
+    }
+
+    private static synchronized void updateSize(File indexFile, long delta) {
+        currentBytes += delta;
+        evict(indexFile);
+    }
+
+    private static void evict(File keep) {
+        if (currentBytes <= MAX_BYTES) {
+            return;
+        }
+        File[] files = INDEX_DIR.listFiles((dir, name) -> name.endsWith(EXTENSION));
+        if (files == null) {
+            return;
+        }
+        // The least recently used first
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (int i = 0; i < files.length && currentBytes > MAX_BYTES; i++) {
+            if (!files[i].equals(keep)) {
+                long length = files[i].length();
+                if (files[i].delete()) {
+                    currentBytes -= length;
+                }
+            }
+        }
+    }
+
+    private Record getRecord(File file) {
+        Record record = records.get(file.getName());
+        visited.add(file.getName());
+        if (record != null && (record.length != file.length() || record.lastModified != file.lastModified())) {
+            records.remove(file.getName());
+            modified = true;
+            return null;
+        }
+        return record;
+    }
+
+    /**
+     * @return a copy of the attributes required for building the tags, the bulk data are replaced by empty values (so
+     *         their presence is kept)
+     */
+    static Attributes selectHeader(Attributes ds) throws Exception {
+        List<Integer> selection = new ArrayList<>();
+        ds.accept((attrs, tag, vr, value) -> {
+            if (!TagUtils.isPrivateGroup(tag)
+                && (!(value instanceof Sequence) || Arrays.binarySearch(INDEXED_SEQUENCES, tag) >= 0)) {
+                selection.add(tag);
+            }
+            return true;
+        }, false);
+        int[] tags = new int[selection.size()];
+        for (int i = 0; i < tags.length; i++) {
+            tags[i] = selection.get(i);
+        }
+        Attributes header = new Attributes(ds, tags);
+
+        // Only the first frame is read from the index, the other ones from the file
+        Sequence perFrame = ds.getSequence(Tag.PerFrameFunctionalGroupsSequence);
+        if (perFrame != null && !perFrame.isEmpty()) {
+            header.newSequence(Tag.PerFrameFunctionalGroupsSequence, 1).add(new Attributes(perFrame.get(0)));
+        }
+
+        // Also in the items of the sequences
+        List<Object[]> bulkData = new ArrayList<>();
+        header.accept((attrs, tag, vr, value) -> {
+            if (value instanceof BulkData || value instanceof Fragments) {
+                bulkData.add(new Object[] { attrs, tag, vr });
+            }
+            return true;
+        }, true);
+        for (Object[] item : bulkData) {
+            ((Attributes) item[0]).setNull((Integer) item[1], (VR) item[2]);
+        }
+        return header;
+    }
+
+    private static int[] sortedTags(int... tags) {
+        int[] sorted = tags.clone();
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    private static byte[] encode(Attributes attrs) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+        try (DicomOutputStream dos = new DicomOutputStream(out, UID.ExplicitVRLittleEndian)) {
+            dos.writeDataset(null, attrs);
+        }
+        return out.toByteArray();
+    }
+
+    private static Attributes decode(byte[] data) throws IOException {
+        try (DicomInputStream dis = new DicomInputStream(new ByteArrayInputStream(data), UID.ExplicitVRLittleEndian)) {
+            return dis.readDataset(-1, -1);
+        }
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] data = new byte[length];
+        in.readFully(data);
+        return data;
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] data) throws IOException {
+        if (data == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(data.length);
+            out.write(data);
+        }
+    }
+
+    private static final class Record {
+        private final long length;
+        private final long lastModified;
+        private final String tsuid;
+        // Null when the file is not supported
+        private final byte[] header;
+
+        Record(long length, long lastModified, String tsuid, byte[] header) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.tsuid = tsuid;
+            this.header = header;
+        }
+    }
+}
@@ -0,0 +1,340 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.dicom.codec;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import javax.media.jai.PlanarImage;
+
+import org.dcm4che3.data.Tag;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.weasis.core.api.explorer.ObservableEvent;
+import org.weasis.core.api.explorer.model.DataExplorerModel;
+import org.weasis.core.api.media.data.ImageElement;
+import org.weasis.core.api.media.data.ImageLoader;
+import org.weasis.core.api.media.data.SeriesEvent;
+import org.weasis.core.api.media.data.TagW;
+import org.weasis.core.api.service.BundleTools;
+import org.weasis.core.api.util.MemoryManager;
+
+/**
+ * Preloads the images of all the series displayed in the views. The memory budget (a percentage of the image cache)
+ * is shared between the series, and the images of each series are read from the current index of the view outward in
+ * both directions. The series are served in turn, so the series displayed side by side are preloaded together.
+ */
+public final class PreloadingScheduler {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PreloadingScheduler.class);
+
+    public static final String PRELOADING_BUDGET = "weasis.preloading.budget"; //$NON-NLS-1$
+    public static final String PRELOADING_MAX_SERIES = "weasis.preloading.max.series"; //$NON-NLS-1$
+
+    private static final int BUDGET_PERCENT =
+        Math.max(0, Math.min(100, BundleTools.SYSTEM_PREFERENCES.getIntProperty(PRELOADING_BUDGET, 80)));
+    private static final int MAX_SERIES =
+        Math.max(1, BundleTools.SYSTEM_PREFERENCES.getIntProperty(PRELOADING_MAX_SERIES, 4));
+
+    private static final long MIN_BACKOFF = 100L;
+    private static final long MAX_BACKOFF = 5000L;
+
+    // Access order: the series which has not been requested for the longest time is the first removed
+    private static final Map<DicomSeries, SeriesTask> tasks = new LinkedHashMap<>(8, 0.75f, true);
+    private static final Object lock = new Object();
+
+    private static Thread scheduler;
+    // Reduced after each out of memory error, restored when all the series have been preloaded
+    private static double budgetRatio = 1.0;
+    private static long backoff = MIN_BACKOFF;
+
+    private PreloadingScheduler() {
+    }
+
+    /**
+     * Starts or updates the preloading of a series. When the series is already preloaded, the images are read again
+     * from the new index.
+     *
+     * @param series
+     *            the series
+     * @param imageList
+     *            the images sorted and filtered as in the view
+     * @param currentIndex
+     *            the index of the image displayed in the view
+     */
+    public static void start(DicomSeries series, List<DicomImageElement> imageList, int currentIndex) {
+        if (series == null || imageList == null || currentIndex < 0 || currentIndex >= imageList.size()) {
+            return;
+        }
+        synchronized (lock) {
+            SeriesTask task = tasks.get(series);
+            if (task != null && task.isSameRequest(imageList, currentIndex)) {
+                return;
+            }
+            tasks.put(series, new SeriesTask(series, imageList, currentIndex));
+            Iterator<DicomSeries> iter = tasks.keySet().iterator();
+            while (tasks.size() > MAX_SERIES && iter.hasNext()) {
+                iter.next();
+                iter.remove();
+            }
+            if (scheduler == null) {
+                scheduler = new Thread(PreloadingScheduler::schedule, "Series Preloading"); //$NON-NLS-1$
+                scheduler.setDaemon(true);
+                scheduler.start();
+            }
+            lock.notifyAll();
+        }
+    }
+
+    public static void stop(DicomSeries series) {
+        synchronized (lock) {
+            tasks.remove(series);
+        }
+    }
+
+    public static boolean isPreloading(DicomSeries series) {
+        synchronized (lock) {
+            SeriesTask task = tasks.get(series);
+            return task != null && !task.isDone();
+        }
+    }
+
+    /**
+     * @return the memory (in bytes) available for preloading all the series
+     */
+    public static long getBudget() {
+        synchronized (lock) {
+            return (long) (ImageElement.getImageCache().getMaxBytes() * BUDGET_PERCENT / 100.0 * budgetRatio);
+        }
+    }
+
+    private static void schedule() {
+        Deque<Pending> pendings = new ArrayDeque<>();
+        while (true) {
+            Pending next;
+            try {
+                next = nextImage(pendings.isEmpty());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            if (next != null) {
+                pendings.add(next);
+            }
+            // Keep the threads of the loader busy without filling its queue
+            if (next == null || pendings.size() >= ImageElement.IMAGE_LOADER.getPoolSize()) {
+                Pending p = pendings.poll();
+                if (p != null && !complete(p)) {
+                    // Memory pressure: abandon the images not yet read and wait before going on
+                    for (Pending other : pendings) {
+                        ImageElement.IMAGE_LOADER.cancel(other.image, ImageLoader.Priority.PRELOAD);
+                    }
+                    pendings.clear();
+                    if (!backOff()) {
+                        break;
+                    }
+                }
+            }
+        }
+        synchronized (lock) {
+            scheduler = null;
+        }
+    }
+
+    /**
+     * @param wait
+     *            wait for a new request when there is no image to preload
+     * @return the next image to preload or null
+     */
+    private static Pending nextImage(boolean wait) throws InterruptedException {
+        synchronized (lock) {
+            while (true) {
+                long budget = getBudget() / Math.max(1, tasks.size());
+                List<SeriesTask> list = new ArrayList<>(tasks.values());
+                // Round robin between the series
+                list.sort((t1, t2) -> Integer.compare(t1.getNbSubmitted(), t2.getNbSubmitted()));
+                for (SeriesTask task : list) {
+                    DicomImageElement img = task.next(budget);
+                    if (img != null) {
+                        return new Pending(task, img, img.requestImage(ImageLoader.Priority.PRELOAD));
+                    }
+                }
+                if (!wait) {
+                    return null;
+                }
+                // All the series are preloaded
+                budgetRatio = 1.0;
+                lock.wait();
+            }
+        }
+    }
+
+    /**
+     * @return false when the image cannot be read due to a lack of memory
+     */
+    private static boolean complete(Pending p) {
+        long start = System.currentTimeMillis();
+        try {
+            PlanarImage i = p.future.get();
+            if (i != null) {
+                // Compute the tiles of the deferred operations
+                for (int tj = i.getMinTileY(); tj <= i.getMaxTileY(); tj++) {
+                    for (int ti = i.getMinTileX(); ti <= i.getMaxTileX(); ti++) {
+                        i.getTile(ti, tj);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return true;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof OutOfMemoryError) {
+                LOGGER.warn("Out of memory when preloading image: {}", p.image); //$NON-NLS-1$
+                return false;
+            }
+            LOGGER.error("Cannot preload image: {}", p.image, e); //$NON-NLS-1$
+            return true;
+        } catch (OutOfMemoryError e) {
+            LOGGER.warn("Out of memory when preloading image: {}", p.image); //$NON-NLS-1$
+            return false;
+        } catch (CancellationException e) {
+            return true;
+        }
+        LOGGER.debug("Reading time: {} ms of image: {}", System.currentTimeMillis() - start, p.image); //$NON-NLS-1$
+        synchronized (lock) {
+            backoff = MIN_BACKOFF;
+        }
+        DataExplorerModel model = (DataExplorerModel) p.task.series.getTagValue(TagW.ExplorerModel);
+        if (model != null) {
+            model.firePropertyChange(new ObservableEvent(ObservableEvent.BasicAction.ADD, model, null,
+                new SeriesEvent(SeriesEvent.Action.PRELOADING, p.task.series, p.image)));
+        }
+        return true;
+    }
+
+    private static boolean backOff() {
+        long wait;
+        synchronized (lock) {
+            // Reduce the budget and restart the series from their current index
+            budgetRatio /= 2.0;
+            wait = backoff;
+            backoff = Math.min(MAX_BACKOFF, backoff * 2);
+            for (SeriesTask task : tasks.values()) {
+                task.restart();
+            }
+        }
+        MemoryManager.releaseAfterOutOfMemory();
+        try {
+            Thread.sleep(wait);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return true;
+    }
+
+    static long evaluateImageSize(DicomImageElement image) {
+        Integer allocated = TagD.getTagValue(image, Tag.BitsAllocated, Integer.class);
+        Integer sample = TagD.getTagValue(image, Tag.SamplesPerPixel, Integer.class);
+        Integer rows = TagD.getTagValue(image, Tag.Rows, Integer.class);
+        Integer columns = TagD.getTagValue(image, Tag.Columns, Integer.class);
+        if (allocated != null && sample != null && rows != null && columns != null) {
+            return ((long) rows * columns * sample * allocated) / 8L;
+        }
+        return 0L;
+    }
+
+    private static class Pending {
+        private final SeriesTask task;
+        private final DicomImageElement image;
+        private final Future<PlanarImage> future;
+
+        Pending(SeriesTask task, DicomImageElement image, Future<PlanarImage> future) {
+            this.task = task;
+            this.image = image;
+            this.future = future;
+        }
+    }
+
+    /**
+     * Preloading state of a series. Accessed only with the lock of the scheduler.
+     */
+    private static class SeriesTask {
+        private final DicomSeries series;
+        private final List<DicomImageElement> imageList;
+        private final int index;
+        // Number of images visited from the current index (index, index + 1, index - 1, index + 2...)
+        private int step;
+        private long usedBytes;
+        private int nbSubmitted;
+        private boolean done;
+
+        SeriesTask(DicomSeries series, List<DicomImageElement> imageList, int index) {
+            this.series = series;
+            this.imageList = imageList;
+            this.index = index;
+        }
+
+        boolean isSameRequest(List<DicomImageElement> list, int currentIndex) {
+            return index == currentIndex && imageList.equals(list);
+        }
+
+        boolean isDone() {
+            return done;
+        }
+
+        int getNbSubmitted() {
+            return nbSubmitted;
+        }
+
+        void restart() {
+            step = 0;
+            usedBytes = 0;
+            done = false;
+        }
+
+        DicomImageElement next(long budget) {
+            int size = imageList.size();
+            while (!done) {
+                int offset = (step + 1) / 2;
+                int i = step % 2 == 0 ? index - offset : index + offset;
+                if (offset > index && offset >= size - index) {
+                    done = true;
+                    break;
+                }
+                step++;
+                if (i < 0 || i >= size) {
+                    continue;
+                }
+                DicomImageElement img = imageList.get(i);
+                long imgSize = evaluateImageSize(img);
+                if (usedBytes + imgSize > budget) {
+                    done = true;
+                    break;
+                }
+                // The images already in memory are also part of the budget
+                usedBytes += imgSize;
+                if (img.isReadable() && !img.isImageInCache() && !img.isLoading()) {
+                    nbSubmitted++;
+                    return img;
+                }
+            }
+            return null;
+        }
+    }
+}
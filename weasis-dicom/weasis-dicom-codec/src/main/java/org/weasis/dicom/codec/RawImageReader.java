@@ -40,11 +40,33 @@ public class RawImageReader extends ImageReader {
     /** The input stream where reads from */
     private RawImageInputStream iis = null;
 
+    /** The object synchronizing the reads of the stream */
+    private final Object streamLock;
+
     /**
      * Constructs <code>RawImageReader</code> from the provided <code>ImageReaderSpi</code>.
      */
     public RawImageReader(ImageReaderSpi originator) {
+        this(originator, null);
+    }
+
+    /**
+     * Constructs <code>RawImageReader</code> from the provided <code>ImageReaderSpi</code>.
+     *
+     * @param streamLock
+     *            the object synchronizing the other reads of the underlying stream, or null to synchronize only the
+     *            images of this reader
+     */
+    public RawImageReader(ImageReaderSpi originator, Object streamLock) {
         super(originator);
+        this.streamLock = streamLock == null ? this : streamLock;
+    }
+
+    /**
+     * @return the object synchronizing the reads of the stream by the images of this reader
+     */
+    public Object getStreamLock() {
+        return streamLock;
     }
 
     /**
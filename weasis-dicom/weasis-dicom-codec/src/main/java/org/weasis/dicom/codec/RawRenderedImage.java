@@ -34,11 +34,13 @@ import java.io.IOException;
 import javax.imageio.ImageReadParam;
 import javax.imageio.ImageTypeSpecifier;
 
+import org.weasis.core.api.image.util.ThreadSafeTileSource;
+
 import com.sun.media.imageio.stream.RawImageInputStream;
 import com.sun.media.imageioimpl.common.ImageUtil;
 import com.sun.media.imageioimpl.common.SimpleRenderedImage;
 
-public class RawRenderedImage extends SimpleRenderedImage {
+public class RawRenderedImage extends SimpleRenderedImage implements ThreadSafeTileSource {
     /** The sample model for the original image. */
     private SampleModel originalSampleModel;
 
@@ -181,8 +183,18 @@ public class RawRenderedImage extends SimpleRenderedImage {
         maxYTile = originalDimension.height / tileHeight;
     }
 
+    /**
+     * Reads a tile while holding the lock of the stream (see {@link RawImageReader#getStreamLock()}), so the tiles can
+     * be read by several threads and while the reader reads other frames.
+     */
     @Override
-    public synchronized Raster getTile(int tileX, int tileY) {
+    public Raster getTile(int tileX, int tileY) {
+        synchronized (reader.getStreamLock()) {
+            return readTile(tileX, tileY);
+        }
+    }
+
+    private Raster readTile(int tileX, int tileY) {
         if (currentTile != null && currentTileGrid.x == tileX && currentTileGrid.y == tileY) {
             return currentTile;
         }
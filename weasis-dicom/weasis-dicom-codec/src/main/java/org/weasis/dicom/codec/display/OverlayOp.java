@@ -107,4 +107,11 @@ public class OverlayOp extends AbstractOp {
 
         params.put(Param.OUTPUT_IMG, result);
     }
+
+    @Override
+    public boolean isResolutionIndependent() {
+        ImageElement image = (ImageElement) params.get(P_IMAGE_ELEMENT);
+        return !JMVUtils.getNULLtoFalse(params.get(P_SHOW)) || image == null
+            || !JMVUtils.getNULLtoFalse(image.getTagValue(TagW.HasOverlay));
+    }
 }
@@ -20,6 +20,7 @@ import java.awt.image.DataBuffer;
 import java.awt.image.MultiPixelPackedSampleModel;
 import java.awt.image.RenderedImage;
 import java.awt.image.SampleModel;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Optional;
 
@@ -44,6 +45,7 @@ import org.weasis.dicom.codec.PRSpecialElement;
 import org.weasis.dicom.codec.PresentationStateReader;
 import org.weasis.dicom.codec.TagD;
 import org.weasis.dicom.codec.utils.DicomMediaUtils;
+import org.weasis.dicom.codec.utils.OverlayCache;
 import org.weasis.dicom.codec.utils.OverlayUtils;
 
 public class ShutterOp extends AbstractOp {
@@ -126,7 +128,8 @@ public class ShutterOp extends AbstractOp {
                 result = ShutterDescriptor.create(source, new ROIShape(area), getShutterColor(), null);
             } else {
                 result = MergeImgOp.combineTwoImages(source,
-                    ImageFiler.getEmptyImage(color, source.getWidth(), source.getHeight()), getAsImage(area, source));
+                    ImageFiler.getEmptyImage(color, source.getWidth(), source.getHeight()),
+                    PlanarImage.wrapRenderedImage(getMask(area, source)));
             }
         }
 
@@ -190,6 +193,13 @@ public class ShutterOp extends AbstractOp {
         return true;
     }
 
+    private static RenderedImage getMask(Area shape, RenderedImage source) throws IOException {
+        // The shape is shared by the frames of the image or by the images of the presentation state
+        Object key = OverlayCache.buildKey("mask", shape, source.getMinX(), source.getMinY(), source.getWidth(), //$NON-NLS-1$
+            source.getHeight(), source.getTileGridXOffset(), source.getTileGridYOffset());
+        return OverlayCache.get(key, () -> getAsImage(shape, source));
+    }
+
     private static PlanarImage getAsImage(Area shape, RenderedImage source) {
         SampleModel sm =
             new MultiPixelPackedSampleModel(DataBuffer.TYPE_BYTE, source.getWidth(), source.getHeight(), 1);
@@ -202,4 +212,10 @@ public class ShutterOp extends AbstractOp {
         g2d.dispose();
         return ti;
     }
+
+    @Override
+    public boolean isResolutionIndependent() {
+        return !JMVUtils.getNULLtoFalse(params.get(P_SHOW))
+            || (params.get(P_SHAPE) == null && params.get(P_PS_VALUE) == null);
+    }
 }
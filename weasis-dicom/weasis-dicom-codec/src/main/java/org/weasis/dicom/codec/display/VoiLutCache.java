@@ -0,0 +1,147 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.dicom.codec.display;
+
+import javax.media.jai.LookupTableJAI;
+
+import org.weasis.core.api.image.LutShape;
+import org.weasis.core.api.util.metrics.MetricsRegistry;
+import org.weasis.dicom.codec.utils.DicomImageUtils;
+
+/**
+ * Recent VOI LUTs of a view, keyed by (window, level, shape, min, max). Toggling between presets returns the same
+ * tables and, when a new table is required, the table of the least recently used entry is recomputed in place if it
+ * has the same size. So dragging the window/level does not allocate a new table at each move.
+ * <p>
+ * As a table can be updated later, it must be used or copied immediately. A table passed to a rendering operation must
+ * be copied or composed into a new table (see CombinedLookupDescriptor.compose()), as the operation can be rendered
+ * again later.
+ */
+public final class VoiLutCache {
+
+    private static final int DEFAULT_SIZE = 8;
+
+    private final Entry[] entries;
+    private int size;
+
+    public VoiLutCache() {
+        this(DEFAULT_SIZE);
+    }
+
+    public VoiLutCache(int capacity) {
+        this.entries = new Entry[Math.max(1, capacity)];
+    }
+
+    /**
+     * @see DicomImageUtils#createWindowLevelLut(LutShape, double, double, int, int, int, boolean, boolean)
+     */
+    public synchronized LookupTableJAI getWindowLevelLut(LutShape lutShape, double window, double level,
+        int minValue, int maxValue, int bitsStored, boolean isSigned, boolean inverse) {
+        if (lutShape == null) {
+            return null;
+        }
+        int minInValue = Math.min(maxValue, minValue);
+        int maxInValue = Math.max(maxValue, minValue);
+        boolean byteData = bitsStored <= 8;
+
+        for (int i = 0; i < size; i++) {
+            Entry e = entries[i];
+            if (e.matches(lutShape, window, level, minInValue, maxInValue, byteData, isSigned, inverse)) {
+                moveToFront(i);
+                MetricsRegistry.counter("lut.voi.cache.hit").increment(); //$NON-NLS-1$
+                return e.table;
+            }
+        }
+
+        Entry e;
+        if (size < entries.length) {
+            e = new Entry();
+            entries[size] = e;
+            moveToFront(size);
+            size++;
+        } else {
+            e = entries[size - 1];
+            moveToFront(size - 1);
+        }
+        if (!e.update(lutShape, window, level, minInValue, maxInValue, bitsStored, byteData, isSigned, inverse)) {
+            return null;
+        }
+        return e.table;
+    }
+
+    public synchronized void clear() {
+        for (int i = 0; i < size; i++) {
+            entries[i] = null;
+        }
+        size = 0;
+    }
+
+    private void moveToFront(int index) {
+        Entry e = entries[index];
+        System.arraycopy(entries, 0, entries, 1, index);
+        entries[0] = e;
+    }
+
+    private static final class Entry {
+        private LutShape shape;
+        private double window;
+        private double level;
+        private int minInValue;
+        private int maxInValue;
+        private boolean byteData;
+        private boolean signed;
+        private boolean inverse;
+        private LookupTableJAI table;
+
+        boolean matches(LutShape lutShape, double window, double level, int minInValue, int maxInValue,
+            boolean byteData, boolean signed, boolean inverse) {
+            return table != null && this.window == window && this.level == level && this.minInValue == minInValue
+                && this.maxInValue == maxInValue && this.byteData == byteData && this.signed == signed
+                && this.inverse == inverse && lutShape.equals(shape);
+        }
+
+        boolean update(LutShape lutShape, double window, double level, int minInValue, int maxInValue,
+            int bitsStored, boolean byteData, boolean signed, boolean inverse) {
+            LookupTableJAI lut = table;
+            table = null;
+            int numEntries = maxInValue - minInValue + 1;
+            if (lut != null && this.byteData == byteData && this.signed == signed
+                && lut.getNumEntries() == numEntries) {
+                Object data = byteData ? lut.getByteData(0) : lut.getShortData(0);
+                if (!DicomImageUtils.setWindowLevelLut(lutShape, window, level, minInValue, data, signed, inverse)) {
+                    return false;
+                }
+                if (lut.getOffset() != minInValue) {
+                    // Only the wrapper is allocated, the data array is shared
+                    lut = byteData ? new LookupTableJAI((byte[]) data, minInValue)
+                        : new LookupTableJAI((short[]) data, minInValue, signed);
+                }
+            } else {
+                lut = DicomImageUtils.createWindowLevelLut(lutShape, window, level, minInValue, maxInValue,
+                    bitsStored, signed, inverse);
+                if (lut == null) {
+                    return false;
+                }
+            }
+
+            this.shape = lutShape;
+            this.window = window;
+            this.level = level;
+            this.minInValue = minInValue;
+            this.maxInValue = maxInValue;
+            this.byteData = byteData;
+            this.signed = signed;
+            this.inverse = inverse;
+            this.table = lut;
+            return true;
+        }
+    }
+}
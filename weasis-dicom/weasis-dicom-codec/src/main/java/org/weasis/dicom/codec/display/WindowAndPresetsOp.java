@@ -26,6 +26,30 @@ import org.weasis.dicom.codec.PresentationStateReader;
 public class WindowAndPresetsOp extends WindowOp {
 
     public static final String P_PR_ELEMENT = "pr.element"; //$NON-NLS-1$
+    public static final String P_VOI_LUT_CACHE = "voi.lut.cache"; //$NON-NLS-1$
+
+    public WindowAndPresetsOp() {
+        super();
+        // Not a display parameter, it does not change the version of the parameters
+        params.put(P_VOI_LUT_CACHE, new VoiLutCache());
+    }
+
+    public WindowAndPresetsOp(WindowAndPresetsOp op) {
+        super(op);
+        // Each view has its own cache
+        params.put(P_VOI_LUT_CACHE, new VoiLutCache());
+    }
+
+    @Override
+    public WindowAndPresetsOp copy() {
+        return new WindowAndPresetsOp(this);
+    }
+
+    @Override
+    public Object getOutputKey() {
+        // The cache of the LUTs has no effect on the output
+        return buildOutputKey(P_VOI_LUT_CACHE);
+    }
 
     @Override
     public void handleImageOpEvent(ImageOpEvent event) {
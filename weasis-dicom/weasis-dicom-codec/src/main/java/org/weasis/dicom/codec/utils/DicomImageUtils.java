@@ -31,6 +31,8 @@ import org.dcm4che3.imageio.codec.ImageReaderFactory.ImageReaderParam;
 import org.weasis.core.api.image.LutShape;
 import org.weasis.core.api.media.data.TagReadable;
 import org.weasis.core.api.media.data.TagW;
+import org.weasis.core.api.util.metrics.MetricsRegistry;
+import org.weasis.core.api.util.metrics.Timer;
 import org.weasis.dicom.codec.TagD;
 import org.weasis.dicom.codec.TransferSyntax;
 
@@ -99,19 +101,52 @@ public class DicomImageUtils {
         }
 
         int bStored = bitsStored > 16 ? 16 : (bitsStored < 1) ? 1 : bitsStored;
-        double win = window < 1.0 ? 1.0 : window;
-
-        int bitsAllocated = (bStored <= 8) ? 8 : 16;
-        int outRangeSize = (1 << bitsAllocated) - 1;
-        int maxOutValue = isSigned ? (1 << (bitsAllocated - 1)) - 1 : outRangeSize;
-        int minOutValue = isSigned ? -(maxOutValue + 1) : 0;
-
         int minInValue = Math.min(maxValue, minValue);
         int maxInValue = Math.max(maxValue, minValue);
 
         int numEntries = maxInValue - minInValue + 1;
         Object outLut = bStored <= 8 ? new byte[numEntries] : new short[numEntries];
 
+        if (!setWindowLevelLut(lutShape, window, level, minInValue, outLut, isSigned, inverse)) {
+            return null;
+        }
+
+        return (outLut instanceof byte[]) ? new LookupTableJAI((byte[]) outLut, minInValue) : //
+            new LookupTableJAI((short[]) outLut, minInValue, isSigned);
+    }
+
+    /**
+     * Computes the values of a window/level LUT in an existing table, which allows to update a LUT without allocating
+     * memory.
+     *
+     * @param lutShape
+     * @param window
+     * @param level
+     * @param minInValue
+     *            the input value of the first entry of the table
+     * @param outLut
+     *            the table to update, a byte[] for 8 bits output or a short[] for 16 bits output
+     * @param isSigned
+     * @param inverse
+     *
+     * @return false if the shape is not supported
+     */
+    public static boolean setWindowLevelLut(LutShape lutShape, double window, double level, int minInValue,
+        Object outLut, boolean isSigned, boolean inverse) {
+
+        if (lutShape == null) {
+            return false;
+        }
+
+        Timer timer = MetricsRegistry.timer("lut.build"); //$NON-NLS-1$
+        long start = timer.start();
+        double win = window < 1.0 ? 1.0 : window;
+
+        int bitsAllocated = (outLut instanceof byte[]) ? 8 : 16;
+        int outRangeSize = (1 << bitsAllocated) - 1;
+        int maxOutValue = isSigned ? (1 << (bitsAllocated - 1)) - 1 : outRangeSize;
+        int minOutValue = isSigned ? -(maxOutValue + 1) : 0;
+
         if (lutShape.getFunctionType() != null) {
             switch (lutShape.getFunctionType()) {
                 case LINEAR:
@@ -130,15 +165,15 @@ public class DicomImageUtils {
                     setWindowLevelExponentialLut(win, level, minInValue, outLut, minOutValue, maxOutValue, inverse);
                     break;
                 default:
-                    return null;
+                    return false;
             }
         } else {
+            int maxInValue = minInValue + Array.getLength(outLut) - 1;
             setWindowLevelSequenceLut(win, level, lutShape.getLookup(), minInValue, maxInValue, outLut, minOutValue,
                 maxOutValue, inverse);
         }
-
-        return (outLut instanceof byte[]) ? new LookupTableJAI((byte[]) outLut, minInValue) : //
-            new LookupTableJAI((short[]) outLut, minInValue, isSigned);
+        timer.stop(start);
+        return true;
     }
 
     /**
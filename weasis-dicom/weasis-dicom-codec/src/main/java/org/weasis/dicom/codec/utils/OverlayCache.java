@@ -0,0 +1,213 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.dicom.codec.utils;
+
+import java.awt.image.RenderedImage;
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.weasis.core.api.service.BundleTools;
+import org.weasis.core.api.util.MemoryManager;
+import org.weasis.core.api.util.metrics.MetricsRegistry;
+
+/**
+ * Cache of the binary images of the overlays and the shutters. The same mask is shared by the frames of a multi-frame
+ * image (when the overlay has a single frame) and by the images referencing the same presentation state, so a cine
+ * loop does not unpack the bit planes again for each frame.
+ * <p>
+ * The keys are made of the objects defining the mask: the DICOM attributes and the shapes are compared by identity
+ * (they are not modified), the strings, the numbers and the int arrays by value. The images must not be modified.
+ * <p>
+ * The objects compared by identity are weakly referenced, so a mask does not keep the header of its image in memory.
+ * The entry is removed once one of these objects has been garbage collected.
+ */
+public final class OverlayCache {
+
+    /**
+     * Maximum size of the cache in MB.
+     */
+    public static final String OVERLAY_CACHE_SIZE = "weasis.dicom.overlay.cache.size"; //$NON-NLS-1$
+    private static final long MAX_BYTES =
+        Math.max(0L, BundleTools.SYSTEM_PREFERENCES.getLongProperty(OVERLAY_CACHE_SIZE, 32L)) * 1024L * 1024L;
+
+    // Access order: the first entry is the least recently used
+    private static final Map<Key, RenderedImage> CACHE = new LinkedHashMap<>(64, 0.75f, true);
+    private static long currentBytes = 0L;
+    // The references of the keys whose attributes or shapes have been garbage collected
+    private static final ReferenceQueue<Object> STALE_PARTS = new ReferenceQueue<>();
+
+    static {
+        MemoryManager.register("DICOM overlays", OverlayCache::release); //$NON-NLS-1$
+    }
+
+    @FunctionalInterface
+    public interface MaskBuilder {
+        RenderedImage build() throws IOException;
+    }
+
+    private OverlayCache() {
+    }
+
+    public static Object buildKey(Object... parts) {
+        return new Key(parts);
+    }
+
+    /**
+     * @param key
+     *            the key built with {@link #buildKey(Object...)}
+     * @param builder
+     *            builds the mask when it is not in the cache
+     * @return the mask
+     */
+    public static RenderedImage get(Object key, MaskBuilder builder) throws IOException {
+        Key k = (Key) key;
+        synchronized (CACHE) {
+            RenderedImage img = CACHE.get(k);
+            if (img != null) {
+                MetricsRegistry.counter("overlay.cache.hit").increment(); //$NON-NLS-1$
+                return img;
+            }
+        }
+        MetricsRegistry.counter("overlay.cache.miss").increment(); //$NON-NLS-1$
+        RenderedImage img = builder.build();
+        if (img != null && MAX_BYTES > 0) {
+            long size = getSize(img);
+            synchronized (CACHE) {
+                expungeStaleEntries();
+                RenderedImage old = CACHE.put(k, img);
+                currentBytes += size - (old == null ? 0L : getSize(old));
+                evict(MAX_BYTES);
+            }
+        }
+        return img;
+    }
+
+    public static void clear() {
+        synchronized (CACHE) {
+            CACHE.clear();
+            currentBytes = 0L;
+        }
+    }
+
+    private static long release(long bytes) {
+        synchronized (CACHE) {
+            long before = currentBytes;
+            expungeStaleEntries();
+            evict(Math.max(0L, currentBytes - bytes));
+            return before - currentBytes;
+        }
+    }
+
+    private static void evict(long maxBytes) {
+        Iterator<Entry<Key, RenderedImage>> it = CACHE.entrySet().iterator();
+        while (currentBytes > maxBytes && it.hasNext()) {
+            currentBytes -= getSize(it.next().getValue());
+            it.remove();
+        }
+    }
+
+    private static void expungeStaleEntries() {
+        Reference<?> ref;
+        while ((ref = STALE_PARTS.poll()) != null) {
+            RenderedImage old = CACHE.remove(((IdentityPart) ref).key);
+            if (old != null) {
+                currentBytes -= getSize(old);
+            }
+        }
+    }
+
+    private static long getSize(RenderedImage img) {
+        int bits = img.getSampleModel().getSampleSize(0) * img.getSampleModel().getNumBands();
+        return ((long) img.getWidth() * bits + 7) / 8 * img.getHeight();
+    }
+
+    private static final class IdentityPart extends WeakReference<Object> {
+        private final Key key;
+
+        IdentityPart(Object referent, Key key) {
+            super(referent, STALE_PARTS);
+            this.key = key;
+        }
+    }
+
+    private static final class Key {
+        private final Object[] parts;
+        private final int hash;
+
+        Key(Object[] parts) {
+            this.parts = new Object[parts.length];
+            int h = 1;
+            for (int i = 0; i < parts.length; i++) {
+                Object p = parts[i];
+                h = 31 * h + hashCode(p);
+                this.parts[i] = p == null || isValue(p) || p instanceof int[] ? p : new IdentityPart(p, this);
+            }
+            this.hash = h;
+        }
+
+        private static boolean isValue(Object p) {
+            return p instanceof String || p instanceof Number || p instanceof Boolean;
+        }
+
+        private static int hashCode(Object p) {
+            if (p instanceof int[]) {
+                return Arrays.hashCode((int[]) p);
+            }
+            return isValue(p) ? p.hashCode() : System.identityHashCode(p);
+        }
+
+        private static boolean equals(Object p1, Object p2) {
+            if (p1 == p2) {
+                return true;
+            }
+            if (p1 instanceof int[] && p2 instanceof int[]) {
+                return Arrays.equals((int[]) p1, (int[]) p2);
+            }
+            if (p1 instanceof IdentityPart && p2 instanceof IdentityPart) {
+                Object r1 = ((IdentityPart) p1).get();
+                return r1 != null && r1 == ((IdentityPart) p2).get();
+            }
+            return isValue(p1) && p1.equals(p2);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            if (hash != other.hash || parts.length != other.parts.length) {
+                return false;
+            }
+            for (int i = 0; i < parts.length; i++) {
+                if (!equals(parts[i], other.parts[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
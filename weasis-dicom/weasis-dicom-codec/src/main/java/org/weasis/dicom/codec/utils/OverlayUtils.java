@@ -46,12 +46,46 @@ public class OverlayUtils {
 
     /**
      * Merge the overlays into the buffered image. This method apply only white pixel overlays.
+     * <p>
+     * The image is shared with the frames and the images having the same overlays (see {@link OverlayCache}), it must
+     * not be modified.
      *
      * @param params
      *
      */
     public static RenderedImage getBinaryOverlays(ImageElement image, Attributes attributes, int frameIndex, int width,
         int height, Map<String, Object> params) throws IOException {
+        Object pr = params.get(OverlayOp.P_PR_ELEMENT);
+        Attributes prAttributes =
+            pr instanceof PRSpecialElement ? ((PRSpecialElement) pr).getMediaReader().getDicomObject() : null;
+        Object key = OverlayCache.buildKey("overlays", attributes, getOverlayFrames(attributes, frameIndex), //$NON-NLS-1$
+            image.getTagValue(TagW.OverlayBurninDataPath), prAttributes, getOverlayFrames(prAttributes, frameIndex),
+            width, height);
+        return OverlayCache.get(key,
+            () -> buildBinaryOverlays(image, attributes, frameIndex, width, height, prAttributes));
+    }
+
+    /**
+     * @return the index of the overlay frame applied to the image frame for each active overlay group, -1 when the
+     *         overlay is not applied to this frame
+     */
+    private static int[] getOverlayFrames(Attributes attributes, int frameIndex) {
+        if (attributes == null) {
+            return null;
+        }
+        int[] groups = Overlays.getActiveOverlayGroupOffsets(attributes, 0xffff);
+        int[] frames = new int[groups.length];
+        for (int i = 0; i < groups.length; i++) {
+            int imageFrameOrigin = attributes.getInt(Tag.ImageFrameOrigin | groups[i], 1);
+            int framesInOverlay = attributes.getInt(Tag.NumberOfFramesInOverlay | groups[i], 1);
+            int ovlyFrameIndex = frameIndex - imageFrameOrigin + 1;
+            frames[i] = ovlyFrameIndex < 0 || ovlyFrameIndex >= framesInOverlay ? -1 : ovlyFrameIndex;
+        }
+        return frames;
+    }
+
+    private static RenderedImage buildBinaryOverlays(ImageElement image, Attributes attributes, int frameIndex,
+        int width, int height, Attributes prAttributes) throws IOException {
 
         // Default grayscale value for overlay
         int grayscaleValue = 0xFFFF;
@@ -96,9 +130,8 @@ public class OverlayUtils {
                 grayscaleValue >>> (16 - outBits), ovlyData);
         }
 
-        Object pr = params.get(OverlayOp.P_PR_ELEMENT);
-        if (pr instanceof PRSpecialElement) {
-            Attributes ovlyAttrs = ((PRSpecialElement) pr).getMediaReader().getDicomObject();
+        if (prAttributes != null) {
+            Attributes ovlyAttrs = prAttributes;
             overlayGroupOffsets = Overlays.getActiveOverlayGroupOffsets(ovlyAttrs, 0xffff);
             Integer shuttOverlayGroup =
                 DicomMediaUtils.getIntegerFromDicomElement(ovlyAttrs, Tag.ShutterOverlayGroup, Integer.MIN_VALUE);
@@ -117,11 +150,22 @@ public class OverlayUtils {
 
     public static RenderedImage getShutterOverlay(Attributes attributes, int frameIndex, int width, int height,
         int shuttOverlayGroup) throws IOException {
+        int gg0000 = shuttOverlayGroup - 0x6000;
+        int imageFrameOrigin = attributes.getInt(Tag.ImageFrameOrigin | gg0000, 1);
+        int framesInOverlay = attributes.getInt(Tag.NumberOfFramesInOverlay | gg0000, 1);
+        int ovlyFrameIndex = frameIndex - imageFrameOrigin + 1;
+        Object key = OverlayCache.buildKey("shutter", attributes, shuttOverlayGroup, //$NON-NLS-1$
+            ovlyFrameIndex < 0 || ovlyFrameIndex >= framesInOverlay ? -1 : ovlyFrameIndex, width, height);
+        return OverlayCache.get(key, () -> buildShutterOverlay(attributes, frameIndex, width, height, gg0000));
+    }
+
+    private static RenderedImage buildShutterOverlay(Attributes attributes, int frameIndex, int width, int height,
+        int gg0000) {
         IndexColorModel icm =
             new IndexColorModel(1, icmColorValues.length, icmColorValues, icmColorValues, icmColorValues, 0);
         BufferedImage overBi = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_BINARY, icm);
 
-        Overlays.applyOverlay(frameIndex, overBi.getRaster(), attributes, shuttOverlayGroup - 0x6000, 1, null);
+        Overlays.applyOverlay(frameIndex, overBi.getRaster(), attributes, gg0000, 1, null);
 
         return overBi;
     }
@@ -0,0 +1,67 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.dicom.codec;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.Fragments;
+import org.dcm4che3.data.Sequence;
+import org.dcm4che3.data.Tag;
+import org.dcm4che3.data.VR;
+import org.junit.Test;
+
+public class LocalDicomIndexTest {
+
+    private static Attributes item(int tag, String value) {
+        Attributes item = new Attributes();
+        item.setString(tag, VR.LO, value);
+        return item;
+    }
+
+    @Test
+    public void testSelectHeader() throws Exception {
+        Attributes ds = new Attributes();
+        ds.setString(Tag.PatientName, VR.PN, "Doe^John"); //$NON-NLS-1$
+        ds.setString(0x00090010, VR.LO, "PRIVATE"); //$NON-NLS-1$
+        ds.setString(0x00091001, VR.LO, "value"); //$NON-NLS-1$
+        ds.newSequence(Tag.ContentSequence, 1).add(item(Tag.CodeMeaning, "report")); //$NON-NLS-1$
+        Sequence perFrame = ds.newSequence(Tag.PerFrameFunctionalGroupsSequence, 3);
+        for (int i = 0; i < 3; i++) {
+            perFrame.add(item(Tag.FrameLabel, "frame" + i)); //$NON-NLS-1$
+        }
+        Attributes voi = item(Tag.LUTExplanation, "voi"); //$NON-NLS-1$
+        voi.newFragments(Tag.LUTData, VR.OW, 1).add(new byte[16]);
+        ds.newSequence(Tag.VOILUTSequence, 1).add(voi);
+        ds.newFragments(Tag.FloatPixelData, VR.OF, 1).add(new byte[16]);
+
+        Attributes header = LocalDicomIndex.selectHeader(ds);
+
+        assertThat(header.getString(Tag.PatientName)).isEqualTo("Doe^John"); //$NON-NLS-1$
+        assertThat(header.contains(0x00090010)).isFalse();
+        assertThat(header.contains(0x00091001)).isFalse();
+        assertThat(header.contains(Tag.ContentSequence)).isFalse();
+        assertThat(header.getSequence(Tag.PerFrameFunctionalGroupsSequence)).hasSize(1);
+        assertThat(header.getSequence(Tag.PerFrameFunctionalGroupsSequence).get(0).getString(Tag.FrameLabel))
+            .isEqualTo("frame0"); //$NON-NLS-1$
+
+        // The bulk data are empty, also in the sequences, but still present
+        Attributes voiItem = header.getNestedDataset(Tag.VOILUTSequence);
+        assertThat(voiItem.getString(Tag.LUTExplanation)).isEqualTo("voi"); //$NON-NLS-1$
+        assertThat(voiItem.contains(Tag.LUTData)).isTrue();
+        assertThat(voiItem.getValue(Tag.LUTData)).isNotInstanceOf(Fragments.class);
+        assertThat(header.getValue(Tag.FloatPixelData)).isNotNull().isNotInstanceOf(Fragments.class);
+
+        // The header of the reader is not modified
+        assertThat(ds.getNestedDataset(Tag.VOILUTSequence).getValue(Tag.LUTData)).isInstanceOf(Fragments.class);
+        assertThat(ds.getValue(Tag.FloatPixelData)).isInstanceOf(Fragments.class);
+    }
+}
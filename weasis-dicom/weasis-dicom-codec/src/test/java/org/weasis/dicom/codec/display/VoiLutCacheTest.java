@@ -0,0 +1,86 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.dicom.codec.display;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import javax.media.jai.LookupTableJAI;
+
+import org.junit.Test;
+import org.weasis.core.api.image.LutShape;
+import org.weasis.dicom.codec.utils.DicomImageUtils;
+
+public class VoiLutCacheTest {
+
+    private static void assertSameValues(LookupTableJAI actual, LookupTableJAI expected) {
+        assertThat(actual.getOffset()).isEqualTo(expected.getOffset());
+        assertThat(actual.getByteData(0)).containsExactly(expected.getByteData(0));
+    }
+
+    @Test
+    public void testHit() {
+        VoiLutCache cache = new VoiLutCache(2);
+        LookupTableJAI lut1 = cache.getWindowLevelLut(LutShape.LINEAR, 400.0, 40.0, -1024, 3071, 8, false, false);
+        LookupTableJAI lut2 = cache.getWindowLevelLut(LutShape.LINEAR, 1500.0, -600.0, -1024, 3071, 8, false, false);
+        assertThat(lut2).isNotSameAs(lut1);
+
+        // Toggling between the presets returns the same tables, without computing them again
+        assertThat(cache.getWindowLevelLut(LutShape.LINEAR, 400.0, 40.0, -1024, 3071, 8, false, false)).isSameAs(lut1);
+        assertThat(cache.getWindowLevelLut(LutShape.LINEAR, 1500.0, -600.0, -1024, 3071, 8, false, false))
+            .isSameAs(lut2);
+        assertSameValues(lut1,
+            DicomImageUtils.createWindowLevelLut(LutShape.LINEAR, 400.0, 40.0, -1024, 3071, 8, false, false));
+
+        // Any other parameter is a miss
+        assertSameValues(cache.getWindowLevelLut(LutShape.LINEAR, 400.0, 40.0, -1024, 3071, 8, false, true),
+            DicomImageUtils.createWindowLevelLut(LutShape.LINEAR, 400.0, 40.0, -1024, 3071, 8, false, true));
+        assertSameValues(cache.getWindowLevelLut(LutShape.SIGMOID, 400.0, 40.0, -1024, 3071, 8, false, false),
+            DicomImageUtils.createWindowLevelLut(LutShape.SIGMOID, 400.0, 40.0, -1024, 3071, 8, false, false));
+    }
+
+    @Test
+    public void testReuseInPlace() {
+        VoiLutCache cache = new VoiLutCache(1);
+        LookupTableJAI lut1 = cache.getWindowLevelLut(LutShape.LINEAR, 400.0, 40.0, -1024, 3071, 8, false, false);
+        byte[] data = lut1.getByteData(0);
+
+        // Same range: the least recently used table is recomputed in place
+        LookupTableJAI lut2 = cache.getWindowLevelLut(LutShape.LINEAR, 80.0, 40.0, -1024, 3071, 8, false, false);
+        assertThat(lut2.getByteData(0)).isSameAs(data);
+        assertSameValues(lut2,
+            DicomImageUtils.createWindowLevelLut(LutShape.LINEAR, 80.0, 40.0, -1024, 3071, 8, false, false));
+
+        // Different size: a new table is allocated
+        LookupTableJAI lut3 = cache.getWindowLevelLut(LutShape.LINEAR, 80.0, 40.0, 0, 4095 + 100, 8, false, false);
+        assertThat(lut3.getByteData(0)).isNotSameAs(data);
+        assertThat(lut3.getNumEntries()).isEqualTo(4196);
+    }
+
+    @Test
+    public void testOffsetChange() {
+        VoiLutCache cache = new VoiLutCache(1);
+        LookupTableJAI lut1 = cache.getWindowLevelLut(LutShape.LINEAR, 400.0, 40.0, -1024, 3071, 8, false, false);
+        byte[] data = lut1.getByteData(0);
+
+        // Same size but another range: the data are shared with a new offset
+        LookupTableJAI lut2 = cache.getWindowLevelLut(LutShape.LINEAR, 400.0, 40.0, 0, 4095, 8, false, false);
+        assertThat(lut2).isNotSameAs(lut1);
+        assertThat(lut2.getByteData(0)).isSameAs(data);
+        assertThat(lut2.getOffset()).isZero();
+        assertSameValues(lut2,
+            DicomImageUtils.createWindowLevelLut(LutShape.LINEAR, 400.0, 40.0, 0, 4095, 8, false, false));
+
+        // The previous range gets its values back
+        LookupTableJAI lut3 = cache.getWindowLevelLut(LutShape.LINEAR, 400.0, 40.0, -1024, 3071, 8, false, false);
+        assertSameValues(lut3,
+            DicomImageUtils.createWindowLevelLut(LutShape.LINEAR, 400.0, 40.0, -1024, 3071, 8, false, false));
+    }
+}
@@ -14,7 +14,19 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.dcm4che3.data.Tag;
 import org.slf4j.LoggerFactory;
@@ -30,7 +42,9 @@ import org.weasis.core.api.media.data.Series;
 import org.weasis.core.api.media.data.SeriesThumbnail;
 import org.weasis.core.api.media.data.TagW;
 import org.weasis.core.api.media.data.Thumbnail;
+import org.weasis.core.api.service.BundleTools;
 import org.weasis.core.api.util.FileUtil;
+import org.weasis.core.api.util.ThreadUtil;
 import org.weasis.core.ui.docking.UIManager;
 import org.weasis.core.ui.editor.SeriesViewerFactory;
 import org.weasis.core.ui.editor.ViewerPluginBuilder;
@@ -39,12 +53,25 @@ import org.weasis.core.ui.serialize.XmlSerializer;
 import org.weasis.dicom.codec.DicomCodec;
 import org.weasis.dicom.codec.DicomMediaIO;
 import org.weasis.dicom.codec.KOSpecialElement;
+import org.weasis.dicom.codec.LocalDicomIndex;
 import org.weasis.dicom.codec.TagD;
 import org.weasis.dicom.codec.TagD.Level;
 
 public class LoadLocalDicom extends ExplorerTask {
 
     private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(LoadLocalDicom.class);
+    /**
+     * Number of threads reading the headers of the files. With 1, the files are read in the loading thread. The default
+     * value is the number of processors.
+     */
+    public static final String P_IMPORT_THREADS = "weasis.dicom.import.threads"; //$NON-NLS-1$
+    private static final int NB_THREADS = Math.max(1, BundleTools.SYSTEM_PREFERENCES.getIntProperty(P_IMPORT_THREADS,
+        Runtime.getRuntime().availableProcessors()));
+    // Maximum number of files read in advance
+    private static final int MAX_PENDING = 64 * NB_THREADS;
+
+    private static ExecutorService parserPool;
+
     private final File[] files;
     private final DicomModel dicomModel;
     private final boolean recursive;
@@ -80,12 +107,26 @@ public class LoadLocalDicom extends ExplorerTask {
         if (file == null || file.length < 1) {
             return;
         }
-        final ArrayList<SeriesThumbnail> thumbs = new ArrayList<>();
+        ImportPipeline pipeline = new ImportPipeline();
+        try {
+            walk(file, firstLevel, pipeline);
+            pipeline.drain(0);
+        } finally {
+            pipeline.close();
+        }
+        pipeline.rebuildThumbnails();
+    }
+
+    private void walk(File[] file, boolean firstLevel, ImportPipeline pipeline) {
+        if (file == null || file.length < 1) {
+            return;
+        }
         final ArrayList<File> folders = new ArrayList<>();
+        final Set<FolderIndex> indexes = new HashSet<>();
 
         for (int i = 0; i < file.length; i++) {
             if (isCancelled()) {
-                return;
+                break;
             }
 
             if (file[i] == null) {
@@ -96,39 +137,72 @@ public class LoadLocalDicom extends ExplorerTask {
                 }
             } else {
                 if (file[i].canRead()) {
-                    if (FileUtil.isFileExtensionMatching(file[i], DicomCodec.FILE_EXTENSIONS)
-                        || MimeInspector.isMatchingMimeTypeFromMagicNumber(file[i], DicomMediaIO.MIMETYPE)) {
-                        DicomMediaIO loader = new DicomMediaIO(file[i]);
-                        if (loader.isReadableDicom()) {
-                            // Issue: must handle adding image to viewer and building thumbnail (middle image)
-                            SeriesThumbnail t = buildDicomStructure(loader, openPlugin);
-                            if (t != null) {
-                                thumbs.add(t);
-                            }
+                    FolderIndex index = pipeline.getIndex(file[i]);
+                    indexes.add(index);
+                    pipeline.submit(file[i], index);
+                }
+            }
+        }
+        // All the files of the folder have been submitted
+        for (FolderIndex index : indexes) {
+            index.walked = true;
+            pipeline.release(index, 0);
+        }
+        // Add the headers already read to the model before walking into the sub-folders
+        pipeline.drain(Integer.MAX_VALUE);
+        for (int i = 0; i < folders.size() && !isCancelled(); i++) {
+            walk(folders.get(i).listFiles(), false, pipeline);
+        }
+    }
 
-                            File gpxFile = new File(file[i].getPath() + ".xml"); //$NON-NLS-1$
-                            GraphicModel graphicModel = XmlSerializer.readPresentationModel(gpxFile);
-                            if (graphicModel != null) {
-                                loader.setTag(TagW.PresentationModel, graphicModel);
-                            }
-                        }
-                    }
+    private ParsedFile parse(File file, FolderIndex folderIndex) {
+        if (isCancelled()) {
+            return new ParsedFile(folderIndex, null);
+        }
+        try {
+            DicomMediaIO loader = getReader(file, folderIndex.index);
+            if (loader != null && loader.isReadableDicom()) {
+                File gpxFile = new File(file.getPath() + ".xml"); //$NON-NLS-1$
+                GraphicModel graphicModel = XmlSerializer.readPresentationModel(gpxFile);
+                if (graphicModel != null) {
+                    loader.setTag(TagW.PresentationModel, graphicModel);
                 }
+                return new ParsedFile(folderIndex, loader);
             }
+        } catch (Exception e) {
+            LOGGER.error("Cannot read {}", file, e); //$NON-NLS-1$
         }
-        for (final SeriesThumbnail t : thumbs) {
-            MediaSeries<MediaElement> series = t.getSeries();
-            // Avoid to rebuild most of CR series thumbnail
-            if (series != null && series.size(null) > 2) {
-                GuiExecutor.instance().execute(t::reBuildThumbnail);
+        return new ParsedFile(folderIndex, null);
+    }
+
+    private static DicomMediaIO getReader(File file, LocalDicomIndex index) {
+        if (index != null) {
+            // The header is read from the index when the file has not changed
+            DicomMediaIO loader = index.getReader(file);
+            if (loader != null) {
+                return loader;
+            }
+            if (index.isUnsupported(file)) {
+                return null;
             }
         }
-        for (int i = 0; i < folders.size(); i++) {
-            addSelectionAndnotify(folders.get(i).listFiles(), false);
+
+        if (FileUtil.isFileExtensionMatching(file, DicomCodec.FILE_EXTENSIONS)
+            || MimeInspector.isMatchingMimeTypeFromMagicNumber(file, DicomMediaIO.MIMETYPE)) {
+            DicomMediaIO loader = new DicomMediaIO(file);
+            if (index != null) {
+                // Reads the header
+                index.put(file, loader);
+            }
+            return loader;
+        }
+        if (index != null) {
+            index.putUnsupported(file);
         }
+        return null;
     }
 
-    private SeriesThumbnail buildDicomStructure(DicomMediaIO dicomReader, boolean open) {
+    private SeriesThumbnail buildDicomStructure(DicomMediaIO dicomReader, boolean open, Set<Series> updatedSeries) {
         SeriesThumbnail thumb = null;
         String studyUID = (String) dicomReader.getTagValue(TagD.getUID(Level.STUDY));
         String patientPseudoUID = (String) dicomReader.getTagValue(TagD.getUID(Level.PATIENT));
@@ -223,11 +297,6 @@ public class LoadLocalDicom extends ExplorerTask {
                     }
                     if (medias.length > 0) {
                         dicomSeries.setFileSize(dicomSeries.getFileSize() + medias[0].getLength());
-                        // Refresh the number of images on the thumbnail
-                        Thumbnail t = (Thumbnail) dicomSeries.getTagValue(TagW.Thumbnail);
-                        if (t != null) {
-                            t.repaint();
-                        }
                     }
 
                     if (DicomModel.isSpecialModality(dicomSeries)) {
@@ -237,12 +306,8 @@ public class LoadLocalDicom extends ExplorerTask {
                             new ObservableEvent(ObservableEvent.BasicAction.UPDATE, dicomModel, null, d)));
                     }
 
-                    // If Split series or special DICOM element update the explorer view and View2DContainer
-                    Integer splitNb = (Integer) dicomSeries.getTagValue(TagW.SplitSeriesNumber);
-                    if (splitNb != null) {
-                        dicomModel.firePropertyChange(
-                            new ObservableEvent(ObservableEvent.BasicAction.UPDATE, dicomModel, null, dicomSeries));
-                    }
+                    // Refresh the number of images on the thumbnail and update the split series once per batch
+                    updatedSeries.add(dicomSeries);
                 }
             }
         } catch (Exception e) {
@@ -278,4 +343,163 @@ public class LoadLocalDicom extends ExplorerTask {
         }
         return false;
     }
+
+    private static synchronized ExecutorService getParserPool() {
+        if (parserPool == null) {
+            parserPool = ThreadUtil.buildNewFixedThreadExecutor(NB_THREADS, "DICOM Header Parser"); //$NON-NLS-1$
+        }
+        return parserPool;
+    }
+
+    /**
+     * Index of a folder (null when the index is disabled) and the number of its files not yet added to the model.
+     */
+    private static final class FolderIndex {
+        private final LocalDicomIndex index;
+        private int pending;
+        private boolean walked;
+
+        FolderIndex(LocalDicomIndex index) {
+            this.index = index;
+        }
+    }
+
+    private static final class ParsedFile {
+        private final FolderIndex folderIndex;
+        private final DicomMediaIO loader;
+
+        ParsedFile(FolderIndex folderIndex, DicomMediaIO loader) {
+            this.folderIndex = folderIndex;
+            this.loader = loader;
+        }
+    }
+
+    /**
+     * The files are read concurrently by the parser pool and their headers are added to the model only by the loading
+     * thread, by batches of the files already read.
+     */
+    private final class ImportPipeline {
+        private final CompletionService<ParsedFile> parser =
+            NB_THREADS > 1 ? new ExecutorCompletionService<>(getParserPool()) : null;
+        private final Map<File, FolderIndex> indexes = new HashMap<>();
+        private final List<SeriesThumbnail> thumbs = new ArrayList<>();
+        private int pending;
+
+        FolderIndex getIndex(File file) {
+            return indexes.computeIfAbsent(file.getAbsoluteFile().getParentFile(),
+                f -> new FolderIndex(LocalDicomIndex.open(f)));
+        }
+
+        void submit(File file, FolderIndex folderIndex) {
+            folderIndex.pending++;
+            if (parser == null) {
+                addToModel(Collections.singletonList(parse(file, folderIndex)));
+                return;
+            }
+            parser.submit(() -> parse(file, folderIndex));
+            pending++;
+            if (pending >= MAX_PENDING) {
+                // Let the parser threads read ahead, but not the whole folder tree
+                drain(MAX_PENDING / 2);
+            }
+        }
+
+        /**
+         * Adds to the model the files already read, and waits for the files being read until there are no more than
+         * maxPending files pending.
+         */
+        void drain(int maxPending) {
+            while (pending > 0) {
+                List<ParsedFile> batch = new ArrayList<>();
+                try {
+                    Future<ParsedFile> future = pending > maxPending ? parser.take() : parser.poll();
+                    while (future != null) {
+                        pending--;
+                        batch.add(future.get());
+                        future = parser.poll();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    LOGGER.warn("Reading the DICOM files has been interrupted"); //$NON-NLS-1$
+                    return;
+                } catch (ExecutionException e) {
+                    // Cannot happen, parse() catches the exceptions
+                    LOGGER.error("Reading a DICOM file", e); //$NON-NLS-1$
+                }
+                if (batch.isEmpty()) {
+                    return;
+                }
+                addToModel(batch);
+            }
+        }
+
+        private void addToModel(List<ParsedFile> batch) {
+            Set<Series> updatedSeries = new LinkedHashSet<>();
+            for (ParsedFile parsed : batch) {
+                if (parsed.loader != null && !isCancelled()) {
+                    // Issue: must handle adding image to viewer and building thumbnail (middle image)
+                    SeriesThumbnail t = buildDicomStructure(parsed.loader, openPlugin, updatedSeries);
+                    if (t != null) {
+                        thumbs.add(t);
+                    }
+                }
+                release(parsed.folderIndex, 1);
+            }
+
+            for (Series series : updatedSeries) {
+                // Refresh the number of images on the thumbnail
+                Thumbnail t = (Thumbnail) series.getTagValue(TagW.Thumbnail);
+                if (t != null) {
+                    t.repaint();
+                }
+                // If Split series or special DICOM element update the explorer view and View2DContainer
+                if (series.getTagValue(TagW.SplitSeriesNumber) != null) {
+                    dicomModel.firePropertyChange(
+                        new ObservableEvent(ObservableEvent.BasicAction.UPDATE, dicomModel, null, series));
+                }
+            }
+        }
+
+        void release(FolderIndex folderIndex, int nbFiles) {
+            folderIndex.pending -= nbFiles;
+            if (folderIndex.walked && folderIndex.pending <= 0) {
+                // Write the index as soon as all the files of the folder have been read
+                if (folderIndex.index != null) {
+                    folderIndex.index.save();
+                }
+                indexes.values().remove(folderIndex);
+                // Most of the series are complete at the end of their folder
+                rebuildThumbnails();
+            }
+        }
+
+        /**
+         * Rebuilds the thumbnails of the new series having more than two images, the other ones are kept until they
+         * have more images or the end of the loading.
+         */
+        void rebuildThumbnails() {
+            for (Iterator<SeriesThumbnail> it = thumbs.iterator(); it.hasNext();) {
+                SeriesThumbnail t = it.next();
+                MediaSeries<MediaElement> series = t.getSeries();
+                // Avoid to rebuild most of CR series thumbnail
+                if (series != null && series.size(null) > 2) {
+                    GuiExecutor.instance().execute(t::reBuildThumbnail);
+                    it.remove();
+                }
+            }
+        }
+
+        void close() {
+            if (pending > 0 && parser != null) {
+                // Wait for the files being read, they are not added to the model when the task is cancelled
+                drain(0);
+            }
+            for (FolderIndex folderIndex : indexes.values()) {
+                if (folderIndex.index != null) {
+                    folderIndex.index.save();
+                }
+            }
+            indexes.clear();
+        }
+    }
 }
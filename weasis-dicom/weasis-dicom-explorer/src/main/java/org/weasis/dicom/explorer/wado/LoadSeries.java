@@ -59,6 +59,8 @@ import org.weasis.core.api.service.AuditLog;
 import org.weasis.core.api.util.FileUtil;
 import org.weasis.core.api.util.StringUtil;
 import org.weasis.core.api.util.ThreadUtil;
+import org.weasis.core.api.util.metrics.MetricsRegistry;
+import org.weasis.core.api.util.metrics.Timer;
 import org.weasis.core.ui.docking.UIManager;
 import org.weasis.core.ui.editor.SeriesViewerFactory;
 import org.weasis.core.ui.editor.ViewerPluginBuilder;
@@ -687,6 +689,8 @@ public class LoadSeries extends ExplorerTask implements SeriesImporter {
                 tempFile = File.createTempFile("image_", ".dcm", DICOM_TMP_DIR); //$NON-NLS-1$ //$NON-NLS-2$
             }
 
+            Timer timer = MetricsRegistry.timer("wado.download"); //$NON-NLS-1$
+            long start = timer.start();
             stream = httpCon.getInputStream();
             // Cannot resume with WADO because the stream is modified on the fly by the wado server. In dcm4chee, see
             // http://www.dcm4che.org/jira/browse/DCMEE-421
@@ -735,6 +739,8 @@ public class LoadSeries extends ExplorerTask implements SeriesImporter {
                             return false;
                         }
                     }
+                    timer.stop(start);
+                    MetricsRegistry.counter("wado.download.bytes").add(tempFile.length()); //$NON-NLS-1$
                     File renameFile = new File(DicomMediaIO.DICOM_EXPORT_DIR, tempFile.getName());
                     if (tempFile.renameTo(renameFile)) {
                         tempFile = renameFile;
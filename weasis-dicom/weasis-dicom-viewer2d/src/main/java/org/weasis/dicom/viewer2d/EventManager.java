@@ -70,6 +70,7 @@ import org.weasis.core.api.image.op.ByteLut;
 import org.weasis.core.api.image.op.ByteLutCollection;
 import org.weasis.core.api.image.util.KernelData;
 import org.weasis.core.api.image.util.Unit;
+import org.weasis.core.api.media.data.FramePrefetcher;
 import org.weasis.core.api.media.data.MediaSeries;
 import org.weasis.core.api.media.data.MediaSeries.MEDIA_POSITION;
 import org.weasis.core.api.media.data.Series;
@@ -237,6 +238,7 @@ public class EventManager extends ImageViewerEventManager<DicomImageElement> imp
         return new SliderCineListener(ActionW.SCROLL_SERIES, 1, 2, 1, speed, time, mouseSensivity) {
 
             protected CineThread currentCine;
+            private final FramePrefetcher<DicomImageElement> prefetcher = new FramePrefetcher<>();
 
             @Override
             public void stateChanged(BoundedRangeModel model) {
@@ -259,9 +261,11 @@ public class EventManager extends ImageViewerEventManager<DicomImageElement> imp
                     if (series != null) {
                         // Model contains display value, value-1 is the index value of a sequence
                         int index = model.getValue() - 1;
-                        image = series.getMedia(index,
-                            (Filter<DicomImageElement>) view2d.getActionValue(ActionW.FILTERED_SERIES.cmd()),
-                            view2d.getCurrentSortComparator());
+                        Filter<DicomImageElement> filter =
+                            (Filter<DicomImageElement>) view2d.getActionValue(ActionW.FILTERED_SERIES.cmd());
+                        image = series.getMedia(index, filter, view2d.getCurrentSortComparator());
+                        // Read the next frames according to the direction and the speed of the scrolling
+                        prefetcher.update(series, filter, view2d.getCurrentSortComparator(), index, isCining());
                         mediaEvent = new SynchCineEvent(view2d, image, index);
                         // Ensure to load image before calling the default preset (requires pixel min and max)
                         if (image != null && !image.isImageAvailable()) {
@@ -480,6 +484,8 @@ public class EventManager extends ImageViewerEventManager<DicomImageElement> imp
                 if (moribund != null) {
                     moribund.cining = false;
                     moribund.interrupt();
+                    // Log the frame rate sustained by the prefetching and start again the speed measure
+                    prefetcher.reset();
                 }
             }
 
@@ -79,6 +79,8 @@ import org.weasis.dicom.codec.display.CornerInfoData;
 import org.weasis.dicom.codec.display.Modality;
 import org.weasis.dicom.codec.display.ModalityInfoData;
 import org.weasis.dicom.codec.display.ModalityView;
+import org.weasis.dicom.codec.display.VoiLutCache;
+import org.weasis.dicom.codec.display.WindowAndPresetsOp;
 import org.weasis.dicom.codec.geometry.ImageOrientation;
 import org.weasis.dicom.codec.geometry.ImageOrientation.Label;
 import org.weasis.dicom.explorer.DicomModel;
@@ -819,7 +821,9 @@ public class InfoLayer extends DefaultUUID implements LayerAnnotation {
 
         LutShape lutShape = (LutShape) wlOp.getParam(ActionW.LUT_SHAPE.cmd());
 
-        LookupTableJAI lookup = image.getVOILookup(prReader, window, level, null, null, lutShape, true, pixelPadding);
+        VoiLutCache lutCache = (VoiLutCache) wlOp.getParam(WindowAndPresetsOp.P_VOI_LUT_CACHE);
+        LookupTableJAI lookup =
+            image.getVOILookup(prReader, window, level, null, null, lutShape, true, pixelPadding, lutCache);
         // Note : when fillLutOutside argument is true lookupTable returned is full range allocated
 
         final byte[] fullRangeVoiLUT = lookup.getByteData(0);
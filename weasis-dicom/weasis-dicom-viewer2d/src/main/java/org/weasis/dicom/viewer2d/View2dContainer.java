@@ -256,6 +256,17 @@ public class View2dContainer extends ImageViewerPlugin<DicomImageElement> implem
     @Override
     public void setSelectedImagePaneFromFocus(ViewCanvas<DicomImageElement> viewCanvas) {
         setSelectedImagePane(viewCanvas);
+        // Preload the series of all the views (e.g. comparison studies), the selected one is requested last to be
+        // kept when the number of preloaded series is limited
+        for (ViewCanvas<DicomImageElement> v : view2ds) {
+            if (v != viewCanvas) {
+                startPreloading(v);
+            }
+        }
+        startPreloading(viewCanvas);
+    }
+
+    private static void startPreloading(ViewCanvas<DicomImageElement> viewCanvas) {
         if (viewCanvas != null && viewCanvas.getSeries() instanceof DicomSeries) {
             DicomSeries series = (DicomSeries) viewCanvas.getSeries();
             DicomSeries.startPreloading(series,